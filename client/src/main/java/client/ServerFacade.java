@@ -5,6 +5,7 @@ import exception.ResponseException;
 import model.UserData;
 import model.AuthData;
 import model.GameData;
+import model.GameFilter;
 
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -12,10 +13,24 @@ import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class ServerFacade {
+    private static final int MAX_CACHED_RESPONSES = 32;
+
     private final String serverUrl;
     private final Gson gson = new Gson();
+    // Last validated GET responses, keyed by token and path, replayed on 304 Not Modified.
+    private final Map<String, CachedResponse> getCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+            return size() > MAX_CACHED_RESPONSES;
+        }
+    };
+
+    private record CachedResponse(String etag, Object body) {
+    }
 
     public ServerFacade(int port) {
         this.serverUrl = "http://localhost:" + port;
@@ -44,7 +59,20 @@ public class ServerFacade {
     }
 
     public GamesResult listGames(String authToken) throws ResponseException {
-        return makeRequest("GET", "/game", null, GamesResult.class, authToken);
+        return listGames(authToken, GameFilter.ALL, null);
+    }
+
+    public GamesResult listGames(String authToken, GameFilter filter, Integer after) throws ResponseException {
+        String path = "/game?filter=" + filter.name().toLowerCase();
+        if (after != null) {
+            path += "&after=" + after;
+        }
+        return makeRequest("GET", path, null, GamesResult.class, authToken);
+    }
+
+    /** The caller's own games, unfinished ones first. */
+    public GamesResult listMyGames(String authToken) throws ResponseException {
+        return makeRequest("GET", "/game/mine", null, GamesResult.class, authToken);
     }
 
     public GameResult createGame(String authToken, String gameName) throws ResponseException {
@@ -66,6 +94,14 @@ public class ServerFacade {
             if (authToken != null) {
                 http.addRequestProperty("Authorization", authToken);
             }
+            String cacheKey = authToken + " " + path;
+            CachedResponse cached = null;
+            if (method.equals("GET") && responseClass != null) {
+                cached = getCache.get(cacheKey);
+                if (cached != null) {
+                    http.addRequestProperty("If-None-Match", cached.etag());
+                }
+            }
             if (request != null) {
                 http.addRequestProperty("Content-Type", "application/json");
                 String reqJson = gson.toJson(request);
@@ -74,13 +110,22 @@ public class ServerFacade {
                 }
             }
             http.connect();
+            if (cached != null && http.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return responseClass.cast(cached.body());
+            }
             throwIfNotSuccessful(http);
 
             if (responseClass != null) {
+                T body;
                 try (InputStream is = http.getInputStream()) {
                     InputStreamReader reader = new InputStreamReader(is);
-                    return gson.fromJson(reader, responseClass);
+                    body = gson.fromJson(reader, responseClass);
+                }
+                String etag = http.getHeaderField("ETag");
+                if (method.equals("GET") && etag != null) {
+                    getCache.put(cacheKey, new CachedResponse(etag, body));
                 }
+                return body;
             }
             return null;
         } catch (ResponseException ex) {
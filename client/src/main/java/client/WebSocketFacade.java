@@ -3,6 +3,7 @@ package client;
 import chess.ChessGame;
 import chess.ChessMove;
 import com.google.gson.Gson;
+import websocket.BinaryProtocol;
 import websocket.commands.MakeMoveCommand;
 import websocket.commands.UserGameCommand;
 import websocket.messages.ErrorMessage;
@@ -13,12 +14,14 @@ import websocket.messages.ServerMessage;
 import javax.websocket.*;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
 
 @ClientEndpoint
 public class WebSocketFacade {
     private Session session;
     private final Gson gson = new Gson();
     private GameHandler gameHandler;
+    private volatile boolean binaryFrames;
 
     public WebSocketFacade(String url, GameHandler gameHandler) throws Exception {
         this.gameHandler = gameHandler;
@@ -36,41 +39,57 @@ public class WebSocketFacade {
     public void onMessage(String message) {
         ServerMessage serverMessage = gson.fromJson(message, ServerMessage.class);
         switch (serverMessage.getServerMessageType()) {
-            case LOAD_GAME -> {
-                LoadGameMessage loadGameMessage = gson.fromJson(message, LoadGameMessage.class);
-                gameHandler.updateGame(loadGameMessage.getGame());
-            }
-            case ERROR -> {
-                ErrorMessage errorMessage = gson.fromJson(message, ErrorMessage.class);
-                gameHandler.printMessage(errorMessage.getErrorMessage());
-            }
-            case NOTIFICATION -> {
-                NotificationMessage notificationMessage = gson.fromJson(message, NotificationMessage.class);
-                gameHandler.printMessage(notificationMessage.getMessage());
-            }
+            case LOAD_GAME -> handleMessage(gson.fromJson(message, LoadGameMessage.class));
+            case ERROR -> handleMessage(gson.fromJson(message, ErrorMessage.class));
+            case NOTIFICATION -> handleMessage(gson.fromJson(message, NotificationMessage.class));
         }
     }
 
+    /**
+     * A binary frame means the server accepted the binary protocol offered on
+     * CONNECT, so every later command is sent binary as well.
+     */
+    @OnMessage
+    public void onMessage(ByteBuffer frame) {
+        binaryFrames = true;
+        try {
+            handleMessage(BinaryProtocol.decodeMessage(frame));
+        } catch (IllegalArgumentException e) {
+            gameHandler.printMessage("Error: Unreadable message from server");
+        }
+    }
 
+    private void handleMessage(ServerMessage serverMessage) {
+        switch (serverMessage.getServerMessageType()) {
+            case LOAD_GAME -> gameHandler.updateGame(((LoadGameMessage) serverMessage).getGame());
+            case ERROR -> gameHandler.printMessage(((ErrorMessage) serverMessage).getErrorMessage());
+            case NOTIFICATION -> gameHandler.printMessage(((NotificationMessage) serverMessage).getMessage());
+        }
+    }
 
     public void connect(String authToken, Integer gameID) throws IOException {
-        UserGameCommand command = new UserGameCommand(UserGameCommand.CommandType.CONNECT, authToken, gameID);
+        UserGameCommand command = new UserGameCommand(UserGameCommand.CommandType.CONNECT, authToken, gameID, true);
         session.getBasicRemote().sendText(gson.toJson(command));
     }
 
     public void makeMove(String authToken, Integer gameID, ChessMove move) throws IOException {
-        MakeMoveCommand command = new MakeMoveCommand(authToken, gameID, move);
-        session.getBasicRemote().sendText(gson.toJson(command));
+        send(new MakeMoveCommand(authToken, gameID, move));
     }
 
     public void leave(String authToken, Integer gameID) throws IOException {
-        UserGameCommand command = new UserGameCommand(UserGameCommand.CommandType.LEAVE, authToken, gameID);
-        session.getBasicRemote().sendText(gson.toJson(command));
+        send(new UserGameCommand(UserGameCommand.CommandType.LEAVE, authToken, gameID));
     }
 
     public void resign(String authToken, Integer gameID) throws IOException {
-        UserGameCommand command = new UserGameCommand(UserGameCommand.CommandType.RESIGN, authToken, gameID);
-        session.getBasicRemote().sendText(gson.toJson(command));
+        send(new UserGameCommand(UserGameCommand.CommandType.RESIGN, authToken, gameID));
+    }
+
+    private void send(UserGameCommand command) throws IOException {
+        if (binaryFrames) {
+            session.getBasicRemote().sendBinary(ByteBuffer.wrap(BinaryProtocol.encodeCommand(command)));
+        } else {
+            session.getBasicRemote().sendText(gson.toJson(command));
+        }
     }
 
     public void close() {
@@ -71,7 +71,7 @@ public class BoardRenderer {
         }
         System.out.println();
 
-        System.out.println("Current turn: " + game.getTeamTurn());
+        System.out.println(game.getTeamTurn() == null ? "Game over" : "Current turn: " + game.getTeamTurn());
     }
 
     private static String getPieceSymbol(ChessPiece piece) {
@@ -2,24 +2,44 @@ package ui;
 
 import client.ServerFacade;
 import exception.ResponseException;
-import model.GameData;
+import model.GameFilter;
+import model.GameStatus;
+import model.GameSummary;
 import client.GameResult;
 import client.GamesResult;
 import chess.ChessGame;
 import ui.EscapeSequences;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 public class PostLoginLoop {
+    // The lobby is fetched a page at a time; game numbers index into what has been loaded so far.
+    private final List<GameSummary> listed = new ArrayList<>();
+    private GameFilter filter = GameFilter.ALL;
+    private Integer nextAfter;
+    private boolean loaded;
+
     public void run(Scanner scanner, ServerFacade facade, String authToken, String username) {
+        try {
+            // Games the user is already playing come before the rest of the lobby.
+            showMyGames(facade, authToken, false);
+        } catch (ResponseException e) {
+            System.out.println(EscapeSequences.SET_TEXT_COLOR_RED + "Error: " + e.getMessage() + EscapeSequences.RESET_TEXT_COLOR);
+        }
         while (true) {
             System.out.print("[" + username + "] > ");
             String input = scanner.nextLine().trim().toLowerCase();
             try {
                 if (input.equals("help") || input.equals("h")) {
                     printHelp();
-                } else if (input.equals("list games") || input.equals("lg")) {
-                    handleListGames(facade, authToken);
+                } else if (input.startsWith("list games") || input.equals("lg") || input.startsWith("lg ")) {
+                    handleListGames(facade, authToken, input);
+                } else if (input.equals("my games") || input.equals("my")) {
+                    showMyGames(facade, authToken, true);
+                } else if (input.equals("more") || input.equals("mg")) {
+                    handleMoreGames(facade, authToken);
                 } else if (input.equals("create game") || input.equals("cg")) {
                     handleCreateGame(scanner, facade, authToken);
                 } else if (input.startsWith("play ") || input.startsWith("p ") || input.startsWith("observe ") || input.startsWith("o ")) {
@@ -45,8 +65,14 @@ public class PostLoginLoop {
             "help" + EscapeSequences.SET_TEXT_COLOR_LIGHT_GREY + " (h)" + EscapeSequences.SET_TEXT_COLOR_WHITE + 
             " - Show this help message");
         System.out.println(EscapeSequences.SET_TEXT_COLOR_WHITE + "  " + EscapeSequences.SET_TEXT_COLOR_GREEN + 
-            "list games" + EscapeSequences.SET_TEXT_COLOR_LIGHT_GREY + " (lg)" + EscapeSequences.SET_TEXT_COLOR_WHITE + 
-            " - Show all available games");
+            "list games [all|open|active|finished|mine]" + EscapeSequences.SET_TEXT_COLOR_LIGHT_GREY + " (lg)" +
+            EscapeSequences.SET_TEXT_COLOR_WHITE + " - Show the first page of games");
+        System.out.println(EscapeSequences.SET_TEXT_COLOR_WHITE + "  " + EscapeSequences.SET_TEXT_COLOR_GREEN +
+            "my games" + EscapeSequences.SET_TEXT_COLOR_LIGHT_GREY + " (my)" + EscapeSequences.SET_TEXT_COLOR_WHITE +
+            " - Show the games you are playing, unfinished ones first");
+        System.out.println(EscapeSequences.SET_TEXT_COLOR_WHITE + "  " + EscapeSequences.SET_TEXT_COLOR_GREEN +
+            "more" + EscapeSequences.SET_TEXT_COLOR_LIGHT_GREY + " (mg)" + EscapeSequences.SET_TEXT_COLOR_WHITE +
+            " - Show the next page of games");
         System.out.println(EscapeSequences.SET_TEXT_COLOR_WHITE + "  " + EscapeSequences.SET_TEXT_COLOR_GREEN + 
             "create game" + EscapeSequences.SET_TEXT_COLOR_LIGHT_GREY + " (cg)" + EscapeSequences.SET_TEXT_COLOR_WHITE + 
             " - Create a new game");
@@ -61,19 +87,92 @@ public class PostLoginLoop {
             " - Log out and return to main menu");
     }
 
-    private void handleListGames(ServerFacade facade, String authToken) throws ResponseException {
-                    GamesResult games = facade.listGames(authToken);
-            if (games.games().isEmpty()) {
-                System.out.println(EscapeSequences.SET_TEXT_COLOR_YELLOW + "No games available." + EscapeSequences.RESET_TEXT_COLOR);
-            } else {
-                int index = 1;
-                for (GameData g : games.games()) {
-                System.out.printf(EscapeSequences.SET_TEXT_COLOR_GREEN + "%d" + EscapeSequences.SET_TEXT_COLOR_WHITE + ") " + 
-                    EscapeSequences.SET_TEXT_COLOR_BLUE + "%s" + EscapeSequences.SET_TEXT_COLOR_WHITE + " - " + 
-                    EscapeSequences.SET_TEXT_COLOR_YELLOW + "white: %s" + EscapeSequences.SET_TEXT_COLOR_WHITE + ", " + 
-                    EscapeSequences.SET_TEXT_COLOR_YELLOW + "black: %s" + EscapeSequences.RESET_TEXT_COLOR + "%n",
-                    index++, g.gameName(), g.whiteUsername(), g.blackUsername());
+    private void handleListGames(ServerFacade facade, String authToken, String input) throws ResponseException {
+        String[] parts = input.split("\\s+");
+        int filterIndex = parts[0].equals("lg") ? 1 : 2;
+        String filterName = parts.length > filterIndex ? parts[filterIndex] : "all";
+        GameFilter requested = switch (filterName) {
+            case "all" -> GameFilter.ALL;
+            case "open" -> GameFilter.OPEN;
+            case "active" -> GameFilter.IN_PROGRESS;
+            case "finished" -> GameFilter.FINISHED;
+            case "mine" -> GameFilter.MINE;
+            default -> null;
+        };
+        if (requested == null) {
+            System.out.println(EscapeSequences.SET_TEXT_COLOR_RED +
+                "Unknown filter '" + filterName + "'. Use all, open, active, finished or mine." +
+                EscapeSequences.RESET_TEXT_COLOR);
+            return;
+        }
+        filter = requested;
+        listed.clear();
+        nextAfter = null;
+        loaded = false;
+        int shown = loadNextPage(facade, authToken);
+        if (shown == 0) {
+            System.out.println(EscapeSequences.SET_TEXT_COLOR_YELLOW + "No games available." + EscapeSequences.RESET_TEXT_COLOR);
+        } else {
+            printGames(0);
+        }
+    }
+
+    /**
+     * Loads the user's own games as the current listing, so play and observe
+     * numbers refer to them. At login an empty list is not worth a line.
+     */
+    private void showMyGames(ServerFacade facade, String authToken, boolean reportEmpty) throws ResponseException {
+        GamesResult mine = facade.listMyGames(authToken);
+        filter = GameFilter.MINE;
+        listed.clear();
+        listed.addAll(mine.games());
+        nextAfter = null;
+        loaded = true;
+        if (listed.isEmpty()) {
+            if (reportEmpty) {
+                System.out.println(EscapeSequences.SET_TEXT_COLOR_YELLOW + "You are not playing any games." +
+                    EscapeSequences.RESET_TEXT_COLOR);
             }
+            return;
+        }
+        System.out.println(EscapeSequences.SET_TEXT_COLOR_YELLOW + EscapeSequences.SET_TEXT_BOLD + "Your games:" +
+            EscapeSequences.RESET_TEXT_COLOR);
+        printGames(0);
+    }
+
+    private void handleMoreGames(ServerFacade facade, String authToken) throws ResponseException {
+        if (loaded && nextAfter == null) {
+            System.out.println(EscapeSequences.SET_TEXT_COLOR_YELLOW + "No more games." + EscapeSequences.RESET_TEXT_COLOR);
+            return;
+        }
+        int from = listed.size();
+        loadNextPage(facade, authToken);
+        printGames(from);
+    }
+
+    /** Fetches the page after the last loaded game and returns how many games it added. */
+    private int loadNextPage(ServerFacade facade, String authToken) throws ResponseException {
+        GamesResult page = facade.listGames(authToken, filter, loaded ? nextAfter : null);
+        listed.addAll(page.games());
+        nextAfter = page.nextAfter();
+        loaded = true;
+        return page.games().size();
+    }
+
+    private void printGames(int from) {
+        for (int index = from; index < listed.size(); index++) {
+            GameSummary g = listed.get(index);
+            System.out.printf(EscapeSequences.SET_TEXT_COLOR_GREEN + "%d" + EscapeSequences.SET_TEXT_COLOR_WHITE + ") " +
+                EscapeSequences.SET_TEXT_COLOR_BLUE + "%s" + EscapeSequences.SET_TEXT_COLOR_WHITE + " - " +
+                EscapeSequences.SET_TEXT_COLOR_YELLOW + "white: %s" + EscapeSequences.SET_TEXT_COLOR_WHITE + ", " +
+                EscapeSequences.SET_TEXT_COLOR_YELLOW + "black: %s" + EscapeSequences.SET_TEXT_COLOR_LIGHT_GREY + "%s" +
+                EscapeSequences.RESET_TEXT_COLOR + "%n",
+                index + 1, g.gameName(), g.whiteUsername(), g.blackUsername(),
+                g.status() == GameStatus.FINISHED ? " (finished)" : "");
+        }
+        if (nextAfter != null) {
+            System.out.println(EscapeSequences.SET_TEXT_COLOR_LIGHT_GREY + "Type 'more' for more games." +
+                EscapeSequences.RESET_TEXT_COLOR);
         }
     }
 
@@ -81,14 +180,21 @@ public class PostLoginLoop {
         System.out.print("Game name: ");
         String name = scanner.nextLine().trim();
         GameResult result = facade.createGame(authToken, name);
-        
-        GamesResult games = facade.listGames(authToken);
-        int gamePosition = games.games().size();
-        
+
         System.out.println(EscapeSequences.SET_TEXT_COLOR_GREEN + "Created game '" + name + "' (ID " + 
             result.gameID() + ")" + EscapeSequences.RESET_TEXT_COLOR);
+
+        // New games sort last, so the number is only known once the whole list has been paged in.
+        if (!loaded || nextAfter != null || (filter != GameFilter.ALL && filter != GameFilter.OPEN)) {
+            System.out.println(EscapeSequences.SET_TEXT_COLOR_YELLOW + "Use " +
+                EscapeSequences.SET_TEXT_COLOR_GREEN + "list games" +
+                EscapeSequences.SET_TEXT_COLOR_YELLOW + " to find it" + EscapeSequences.RESET_TEXT_COLOR);
+            return;
+        }
+        listed.add(new GameSummary(result.gameID(), null, null, name, GameStatus.IN_PROGRESS,
+            ChessGame.TeamColor.WHITE, 0, null));
         System.out.println(EscapeSequences.SET_TEXT_COLOR_YELLOW + "Use command " + 
-            EscapeSequences.SET_TEXT_COLOR_GREEN + "play " + gamePosition + 
+            EscapeSequences.SET_TEXT_COLOR_GREEN + "play " + listed.size() + 
             EscapeSequences.SET_TEXT_COLOR_YELLOW + " to join" + 
             EscapeSequences.RESET_TEXT_COLOR);
     }
@@ -103,15 +209,20 @@ public class PostLoginLoop {
         try {
             int choice = Integer.parseInt(parts[1]) - 1;
             boolean isObserving = parts[0].equals("observe") || parts[0].equals("o");
-            GamesResult games = facade.listGames(authToken);
+            if (!loaded) {
+                loadNextPage(facade, authToken);
+            }
+            while (choice >= listed.size() && nextAfter != null) {
+                loadNextPage(facade, authToken);
+            }
 
-            if (choice < 0 || choice >= games.games().size()) {
+            if (choice < 0 || choice >= listed.size()) {
                 System.out.println("Error: Invalid game number. Use 'list games' to see available games.");
-                System.out.println("Available games: 1-" + games.games().size());
+                System.out.println("Available games: 1-" + listed.size());
                 return;
             }
 
-            GameData selected = games.games().get(choice);
+            GameSummary selected = listed.get(choice);
             ChessGame.TeamColor playerColor = null;
             
             if (isObserving) {
@@ -137,7 +248,7 @@ public class PostLoginLoop {
     }
 
     private ChessGame.TeamColor handlePlayerJoin(Scanner scanner, ServerFacade facade, String authToken, 
-            String username, GameData selected, int choice) throws ResponseException {
+            String username, GameSummary selected, int choice) throws ResponseException {
         
         // Check if user is already playing in this game
         ChessGame.TeamColor existingColor = checkExistingPlayer(username, selected);
@@ -149,7 +260,7 @@ public class PostLoginLoop {
         return handleColorSelection(scanner, facade, authToken, username, selected, choice);
     }
 
-    private ChessGame.TeamColor checkExistingPlayer(String username, GameData selected) {
+    private ChessGame.TeamColor checkExistingPlayer(String username, GameSummary selected) {
         if (username.equals(selected.whiteUsername())) {
             System.out.println(EscapeSequences.SET_TEXT_COLOR_YELLOW + 
                 "You are already playing in this game as " + 
@@ -167,7 +278,7 @@ public class PostLoginLoop {
     }
 
     private ChessGame.TeamColor handleColorSelection(Scanner scanner, ServerFacade facade, String authToken, 
-            String username, GameData selected, int choice) throws ResponseException {
+            String username, GameSummary selected, int choice) throws ResponseException {
         
         // Check if positions are already taken
         if (selected.whiteUsername() != null && selected.blackUsername() != null) {
@@ -79,6 +79,23 @@ public class ServerFacadeTests {
         Assertions.assertThrows(ResponseException.class, () -> facade.listGames(login.authToken()));
     }
 
+    @Test
+    public void listMyGamesPositive() throws Exception {
+        facade.register("user12", "pass12", "reggie12@example.com");
+        AuthData login = facade.login("user12", "pass12");
+        GameResult joined = facade.createGame(login.authToken(), "joined");
+        facade.createGame(login.authToken(), "not joined");
+        facade.joinGame(login.authToken(), String.valueOf(joined.gameID()), "WHITE");
+        GamesResult mine = facade.listMyGames(login.authToken());
+        Assertions.assertEquals(1, mine.games().size());
+        Assertions.assertEquals(joined.gameID(), mine.games().get(0).gameID());
+    }
+
+    @Test
+    public void listMyGamesNegative() {
+        Assertions.assertThrows(ResponseException.class, () -> facade.listMyGames("badToken"));
+    }
+
     @Test
     public void createGamePositive() throws Exception {
         facade.register("user7", "pass7", "reggie7@example.com");
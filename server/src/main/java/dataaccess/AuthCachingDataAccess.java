@@ -0,0 +1,202 @@
+package dataaccess;
+
+import model.AuthData;
+import model.GameData;
+import model.GameStatus;
+import model.GameSummary;
+import model.UserData;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers {@link #getAuth} from memory where it can, delegating everything else.
+ * <p>
+ * Valid tokens are cached for a few minutes; unknown tokens are remembered for a
+ * few seconds so a client retrying a bad token does not reach the database on
+ * every request. Logout and clear invalidate this server's cache immediately.
+ * Another server sharing the database only notices a logout once its own entry
+ * expires, so the positive TTL bounds how long a revoked token stays usable there.
+ * The same bound applies to a token reaching its expiry while cached. A cached
+ * token is renewed on the first lookup after its entry lapses, which for an
+ * active session is well inside the renewal interval.
+ * <p>
+ * A lookup that read a token just before a logout deleted it must not cache it
+ * afterwards. Logout marks the token unknown before its last invalidate, and a
+ * lookup drops what it cached if the token has been marked meanwhile, so
+ * whichever of the two finishes second removes the entry.
+ */
+public class AuthCachingDataAccess implements DataAccess {
+    private static final int MAX_TOKENS = 10_000;
+    private static final long TOKEN_TTL_SECONDS = 300;
+    private static final long UNKNOWN_TOKEN_TTL_SECONDS = 5;
+
+    private final DataAccess delegate;
+    private final BoundedCache<String, AuthData> tokens;
+    private final BoundedCache<String, Boolean> unknownTokens;
+    private final Runnable afterLookup;
+
+    public AuthCachingDataAccess(DataAccess delegate) {
+        this(delegate, () -> { });
+    }
+
+    /** @param afterLookup run by {@link #getAuth} between reading a token and caching it, for tests */
+    AuthCachingDataAccess(DataAccess delegate, Runnable afterLookup) {
+        this(delegate, new BoundedCache<>(MAX_TOKENS, TOKEN_TTL_SECONDS, TimeUnit.SECONDS),
+                new BoundedCache<>(MAX_TOKENS, UNKNOWN_TOKEN_TTL_SECONDS, TimeUnit.SECONDS), afterLookup);
+    }
+
+    AuthCachingDataAccess(DataAccess delegate, BoundedCache<String, AuthData> tokens,
+                          BoundedCache<String, Boolean> unknownTokens) {
+        this(delegate, tokens, unknownTokens, () -> { });
+    }
+
+    private AuthCachingDataAccess(DataAccess delegate, BoundedCache<String, AuthData> tokens,
+                                  BoundedCache<String, Boolean> unknownTokens, Runnable afterLookup) {
+        this.delegate = delegate;
+        this.tokens = tokens;
+        this.unknownTokens = unknownTokens;
+        this.afterLookup = afterLookup;
+    }
+
+    public BoundedCache.Stats stats() {
+        return tokens.stats();
+    }
+
+    @Override
+    public void clear() throws DataAccessException {
+        try {
+            delegate.clear();
+        } finally {
+            tokens.clear();
+            unknownTokens.clear();
+        }
+    }
+
+    @Override
+    public void createUser(UserData u) throws DataAccessException {
+        delegate.createUser(u);
+    }
+
+    @Override
+    public void createUsers(List<UserData> users) throws DataAccessException {
+        delegate.createUsers(users);
+    }
+
+    @Override
+    public UserData getUser(String username) throws DataAccessException {
+        return delegate.getUser(username);
+    }
+
+    @Override
+    public void updateUserPassword(String username, String passwordHash) throws DataAccessException {
+        delegate.updateUserPassword(username, passwordHash);
+    }
+
+    @Override
+    public GameData createGame(String gameName) throws DataAccessException {
+        return delegate.createGame(gameName);
+    }
+
+    @Override
+    public List<GameData> createGames(List<String> gameNames) throws DataAccessException {
+        return delegate.createGames(gameNames);
+    }
+
+    @Override
+    public GameData getGame(int gameID) throws DataAccessException {
+        return delegate.getGame(gameID);
+    }
+
+    @Override
+    public List<GameData> listGames() throws DataAccessException {
+        return delegate.listGames();
+    }
+
+    @Override
+    public List<GameSummary> listGameSummaries(GameQuery query) throws DataAccessException {
+        return delegate.listGameSummaries(query);
+    }
+
+    @Override
+    public void streamGameSummaries(GameQuery query, RowSink<GameSummary> sink)
+            throws DataAccessException, IOException {
+        delegate.streamGameSummaries(query, sink);
+    }
+
+    @Override
+    public List<GameSummary> listGamesForPlayer(String username, GameStatus status) throws DataAccessException {
+        return delegate.listGamesForPlayer(username, status);
+    }
+
+    @Override
+    public void updateGame(GameData updated) throws DataAccessException {
+        delegate.updateGame(updated);
+    }
+
+    @Override
+    public void saveGames(Collection<GameData> games) throws DataAccessException {
+        delegate.saveGames(games);
+    }
+
+    @Override
+    public AuthData createAuth(String username) throws DataAccessException {
+        AuthData auth = delegate.createAuth(username);
+        tokens.put(auth.authToken(), auth);
+        return auth;
+    }
+
+    @Override
+    public AuthData getAuth(String authToken) throws DataAccessException {
+        if (authToken == null) {
+            return delegate.getAuth(null);
+        }
+        AuthData cached = tokens.get(authToken);
+        if (cached != null) {
+            return cached;
+        }
+        if (unknownTokens.get(authToken) != null) {
+            throw new DataAccessException("Unauthorized");
+        }
+        try {
+            AuthData auth = delegate.getAuth(authToken);
+            afterLookup.run();
+            tokens.put(authToken, auth);
+            if (unknownTokens.get(authToken) != null) {
+                // Logged out since the read; the logout's own invalidate may already have run.
+                tokens.invalidate(authToken);
+            }
+            return auth;
+        } catch (DataAccessException e) {
+            // Only a clean "no such token" is worth remembering, never a database failure.
+            if (e.getCause() == null && "Unauthorized".equals(e.getMessage())) {
+                unknownTokens.put(authToken, Boolean.TRUE);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void deleteAuth(String authToken) throws DataAccessException {
+        if (authToken == null) {
+            delegate.deleteAuth(null);
+            return;
+        }
+        tokens.invalidate(authToken);
+        try {
+            delegate.deleteAuth(authToken);
+            // Marked before the last invalidate, so a lookup caching the token after that sees it.
+            unknownTokens.put(authToken, Boolean.TRUE);
+        } finally {
+            // A lookup racing the delete may have cached the token again in between.
+            tokens.invalidate(authToken);
+        }
+    }
+
+    @Override
+    public int deleteExpiredAuths(int limit) throws DataAccessException {
+        return delegate.deleteExpiredAuths(limit);
+    }
+}
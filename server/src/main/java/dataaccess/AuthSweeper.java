@@ -0,0 +1,63 @@
+package dataaccess;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes expired auth tokens in the background, so the table tracks the
+ * sessions in use rather than every login ever made.
+ * <p>
+ * Each pass deletes in small batches, each its own short statement, so no
+ * pass holds locks on a large range of the table. A pass stops at the first
+ * batch that comes back short.
+ */
+public class AuthSweeper implements AutoCloseable {
+    private final DataAccess dao;
+    private final int batchSize;
+    private final ScheduledExecutorService sweeper;
+
+    public AuthSweeper(DataAccess dao, long intervalSeconds, int batchSize) {
+        this.dao = dao;
+        this.batchSize = batchSize;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "auth-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweepQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Configured from {@code chess.auth.sweepSeconds} (default 60) and
+     * {@code chess.auth.sweepBatch} (default 500).
+     */
+    public static AuthSweeper fromProperties(DataAccess dao) {
+        return new AuthSweeper(dao, Long.getLong("chess.auth.sweepSeconds", 60),
+                Integer.getInteger("chess.auth.sweepBatch", 500));
+    }
+
+    /** Runs one pass now and returns how many tokens it deleted. */
+    public int sweep() throws DataAccessException {
+        int total = 0;
+        int deleted;
+        do {
+            deleted = dao.deleteExpiredAuths(batchSize);
+            total += deleted;
+        } while (deleted == batchSize && !Thread.currentThread().isInterrupted());
+        return total;
+    }
+
+    private void sweepQuietly() {
+        try {
+            sweep();
+        } catch (DataAccessException e) {
+            System.err.println("Auth sweep failed, retrying next interval: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+    }
+}
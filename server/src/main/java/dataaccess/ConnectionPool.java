@@ -0,0 +1,312 @@
+package dataaccess;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of physical JDBC connections.
+ * <p>
+ * A fair semaphore holds one permit per connection the pool may hand out, so
+ * borrowers queue in arrival order and give up after the acquire timeout. Every
+ * physical connection is opened by a permit holder, which keeps the number of
+ * open connections at or below {@code maxSize}. Callers get a proxy whose
+ * {@code close()} hands the physical connection back instead of closing it.
+ * <p>
+ * Idle connections are reused most-recently-returned first, so surplus ones sit
+ * at the tail of the idle deque until a housekeeping pass closes them.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private static final long HOUSEKEEPING_MILLIS = 5_000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    /**
+     * @param validateAfterIdleMillis borrowed connections that sat idle longer than this are
+     *                                checked with {@link Connection#isValid} first; 0 checks every borrow
+     * @param leakThresholdMillis     connections held longer than this are reported once; 0 disables
+     */
+    public record Config(int minIdle, int maxSize, long acquireTimeoutMillis, long idleTimeoutMillis,
+                         long validateAfterIdleMillis, long leakThresholdMillis) {
+        public Config {
+            if (maxSize < 1 || minIdle < 0 || minIdle > maxSize) {
+                throw new IllegalArgumentException("Pool needs 0 <= minIdle <= maxSize and maxSize >= 1");
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface ConnectionFactory {
+        Connection open() throws SQLException;
+    }
+
+    /**
+     * Point-in-time pool counters. Wait times cover every successful or timed
+     * out acquisition since the pool started.
+     */
+    public record PoolStats(int active, int idle, int waiters, long acquisitions, long timeouts,
+                            double meanWaitMillis, double maxWaitMillis) {
+    }
+
+    private record IdleConnection(Connection physical, long idleSince) {
+    }
+
+    private final Config config;
+    private final ConnectionFactory factory;
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<IdleConnection> idle = new ConcurrentLinkedDeque<>();
+    private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    public ConnectionPool(Config config, ConnectionFactory factory) {
+        this.config = config;
+        this.factory = factory;
+        this.permits = new Semaphore(config.maxSize(), true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        housekeeper.scheduleWithFixedDelay(this::housekeep, HOUSEKEEPING_MILLIS, HOUSEKEEPING_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public Connection borrow() throws DataAccessException {
+        if (closed) {
+            throw new DataAccessException("connection pool closed");
+        }
+        long start = System.nanoTime();
+        waiters.incrementAndGet();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(config.acquireTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("interrupted waiting for a connection", e);
+        } finally {
+            waiters.decrementAndGet();
+            long waited = System.nanoTime() - start;
+            totalWaitNanos.add(waited);
+            maxWaitNanos.accumulate(waited);
+        }
+        if (!acquired) {
+            timeouts.increment();
+            throw new DataAccessException("timed out waiting for a database connection");
+        }
+        acquisitions.increment();
+        try {
+            return lease(takeIdleOrOpen());
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw new DataAccessException("failed to get connection", e);
+        }
+    }
+
+    public PoolStats stats() {
+        long count = acquisitions.sum() + timeouts.sum();
+        double meanWait = count == 0 ? 0 : totalWaitNanos.sum() / 1e6 / count;
+        return new PoolStats(leases.size(), idleCount.get(), waiters.get(), acquisitions.sum(), timeouts.sum(),
+                meanWait, maxWaitNanos.get() / 1e6);
+    }
+
+    /**
+     * Stops handing out connections and closes the idle ones. Connections still
+     * on loan are closed as they come back.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        IdleConnection entry;
+        while ((entry = pollIdle(true)) != null) {
+            closeQuietly(entry.physical());
+        }
+    }
+
+    private Connection takeIdleOrOpen() throws SQLException {
+        long now = System.currentTimeMillis();
+        IdleConnection entry;
+        while ((entry = pollIdle(true)) != null) {
+            boolean stale = now - entry.idleSince() >= config.validateAfterIdleMillis();
+            if (!stale || isUsable(entry.physical())) {
+                return entry.physical();
+            }
+            closeQuietly(entry.physical());
+        }
+        return factory.open();
+    }
+
+    private Connection lease(Connection physical) {
+        Lease lease = new Lease(physical, config.leakThresholdMillis() > 0
+                ? new Throwable("Connection borrowed here") : null);
+        leases.add(lease);
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, lease);
+    }
+
+    private void giveBack(Lease lease) {
+        leases.remove(lease);
+        try {
+            Connection physical = lease.physical;
+            if (closed || lease.broken || physical.isClosed()) {
+                closeQuietly(physical);
+                return;
+            }
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            idle.offerFirst(new IdleConnection(physical, System.currentTimeMillis()));
+            idleCount.incrementAndGet();
+        } catch (SQLException e) {
+            closeQuietly(lease.physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Closes connections idle past the timeout while keeping {@code minIdle},
+     * tops the idle set back up to {@code minIdle} when permits allow, and
+     * reports connections held past the leak threshold.
+     */
+    void housekeep() {
+        long now = System.currentTimeMillis();
+        while (idleCount.get() > config.minIdle()) {
+            IdleConnection oldest = pollIdle(false);
+            if (oldest == null) {
+                break;
+            }
+            if (now - oldest.idleSince() < config.idleTimeoutMillis()) {
+                idle.offerLast(oldest);
+                idleCount.incrementAndGet();
+                break;
+            }
+            closeQuietly(oldest.physical());
+        }
+
+        while (!closed && idleCount.get() < config.minIdle() && permits.tryAcquire()) {
+            try {
+                idle.offerLast(new IdleConnection(factory.open(), now));
+                idleCount.incrementAndGet();
+            } catch (SQLException e) {
+                System.err.println("Connection pool could not open an idle connection: " + e.getMessage());
+                break;
+            } finally {
+                permits.release();
+            }
+        }
+
+        if (config.leakThresholdMillis() > 0) {
+            for (Lease lease : leases) {
+                if (!lease.reported && now - lease.borrowedAt > config.leakThresholdMillis()) {
+                    lease.reported = true;
+                    System.err.println("Possible connection leak: held for " + (now - lease.borrowedAt) + " ms");
+                    lease.origin.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private IdleConnection pollIdle(boolean newest) {
+        IdleConnection entry = newest ? idle.pollFirst() : idle.pollLast();
+        if (entry != null) {
+            idleCount.decrementAndGet();
+        }
+        return entry;
+    }
+
+    private static boolean isUsable(Connection physical) {
+        try {
+            return physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static void closeQuietly(Connection physical) {
+        try {
+            physical.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    /**
+     * The borrower's view of one physical connection. Closing it returns the
+     * connection to the pool exactly once; any later use fails as if closed.
+     */
+    private final class Lease implements InvocationHandler {
+        private final Connection physical;
+        private final Throwable origin;
+        private final long borrowedAt = System.currentTimeMillis();
+        private volatile boolean returned;
+        private volatile boolean broken;
+        private volatile boolean reported;
+
+        Lease(Connection physical, Throwable origin) {
+            this.physical = physical;
+            this.origin = origin;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!returned) {
+                        returned = true;
+                        giveBack(this);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    if (returned) {
+                        return true;
+                    }
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "Pooled" + physical;
+                }
+                default -> {
+                }
+            }
+            if (returned) {
+                throw new SQLException("Connection has been returned to the pool");
+            }
+            try {
+                return method.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                // SQLState class 08 is a connection exception; the socket is not worth reusing.
+                if (e.getCause() instanceof SQLException sql && sql.getSQLState() != null
+                        && sql.getSQLState().startsWith("08")) {
+                    broken = true;
+                }
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -2,19 +2,40 @@ package dataaccess;
 
 import model.AuthData;
 import model.GameData;
+import model.GameStatus;
+import model.GameSummary;
 import model.UserData;
 
+import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 
 public interface DataAccess {
     void clear() throws DataAccessException;
     void createUser(UserData u) throws DataAccessException;
+    /** Creates all the users or, if any username is taken, none of them. */
+    void createUsers(List<UserData> users) throws DataAccessException;
     UserData getUser(String username) throws DataAccessException;
+    void updateUserPassword(String username, String passwordHash) throws DataAccessException;
     GameData createGame(String gameName) throws DataAccessException;
+    /** Creates a game for each name, returned in the order the names were given. */
+    List<GameData> createGames(List<String> gameNames) throws DataAccessException;
     GameData getGame(int gameID) throws DataAccessException;
     List<GameData> listGames() throws DataAccessException;
+    List<GameSummary> listGameSummaries(GameQuery query) throws DataAccessException;
+    void streamGameSummaries(GameQuery query, RowSink<GameSummary> sink) throws DataAccessException, IOException;
+    /**
+     * The games in which {@code username} holds a seat, newest first, up to
+     * {@link GameQuery#MAX_LIMIT}; a null {@code status} matches every game.
+     */
+    List<GameSummary> listGamesForPlayer(String username, GameStatus status) throws DataAccessException;
     void updateGame(GameData updated) throws DataAccessException;
+    /** Stores each game as given, version included, without a version check; unknown games are skipped. */
+    void saveGames(Collection<GameData> games) throws DataAccessException;
     AuthData createAuth(String username) throws DataAccessException;
+    /** Looks up a live token, renewing its expiry as its {@link TokenLifetime} allows. */
     AuthData getAuth(String authToken) throws DataAccessException;
     void deleteAuth(String authToken) throws DataAccessException;
+    /** Deletes up to {@code limit} expired tokens and returns how many went. */
+    int deleteExpiredAuths(int limit) throws DataAccessException;
 }
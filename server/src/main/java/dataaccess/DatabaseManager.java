@@ -1,5 +1,9 @@
 package dataaccess;
 
+import chess.ChessGame;
+import com.google.gson.Gson;
+import model.GameStatus;
+
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
@@ -10,17 +14,57 @@ public class DatabaseManager {
     private static String dbUsername;
     private static String dbPassword;
     private static String connectionUrl;
+    private static ConnectionPool.Config poolConfig;
+    private static ConnectionPool pool;
+    private static String replicaUrl;
+    private static String replicaDatabaseName;
+    private static String replicaUsername;
+    private static String replicaPassword;
+    private static ConnectionPool replicaPool;
+    private static String[] shardUrls = new String[0];
+    private static String[] shardDatabaseNames = new String[0];
+    private static ConnectionPool[] shardPools = new ConnectionPool[0];
+
+    /**
+     * The version of the schema {@link #initSchema} builds. Bump it with any
+     * change to the DDL below; a database already at this version is left
+     * alone, which saves a restart the metadata round trips.
+     */
+    private static final int SCHEMA_VERSION = 1;
+    private static final int ER_NO_SUCH_TABLE = 1146;
+
+    private static final String CREATE_GAMES =
+            "CREATE TABLE IF NOT EXISTS Games (" +
+                    "  id BIGINT AUTO_INCREMENT PRIMARY KEY," +
+                    "  game_name VARCHAR(100) NOT NULL," +
+                    "  white_username VARCHAR(50) NULL," +
+                    "  black_username VARCHAR(50) NULL," +
+                    "  state_json TEXT NOT NULL," +
+                    "  status VARCHAR(16) NOT NULL DEFAULT 'IN_PROGRESS'," +
+                    "  side_to_move VARCHAR(5) NULL DEFAULT 'WHITE'," +
+                    "  ply_count INT NOT NULL DEFAULT 0," +
+                    "  last_move_at TIMESTAMP NULL," +
+                    "  version INT NOT NULL DEFAULT 0," +
+                    "  created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP" +
+                    ")";
 
     static {
         loadPropertiesFromResources();
     }
 
     /**
-     * Creates the database if it does not already exist.
+     * Creates the database, and any game shards, if they do not already exist.
      */
     public static void createDatabase() throws DataAccessException {
-        String sql = "CREATE DATABASE IF NOT EXISTS " + databaseName;
-        try (var conn = DriverManager.getConnection(connectionUrl, dbUsername, dbPassword);
+        createDatabase(connectionUrl, databaseName);
+        for (int shard = 0; shard < shardUrls.length; shard++) {
+            createDatabase(shardUrls[shard], shardDatabaseNames[shard]);
+        }
+    }
+
+    private static void createDatabase(String url, String name) throws DataAccessException {
+        String sql = "CREATE DATABASE IF NOT EXISTS " + name;
+        try (var conn = DriverManager.getConnection(url, dbUsername, dbPassword);
              var stmt = conn.prepareStatement(sql)) {
             stmt.executeUpdate();
         } catch (SQLException ex) {
@@ -30,6 +74,7 @@ public class DatabaseManager {
 
     /**
      * Initializes schema: creates necessary tables if they don't exist.
+     * Skipped for a database whose stored schema version is current.
      */
     public static void initSchema() throws DataAccessException {
         String createUsers =
@@ -40,41 +85,269 @@ public class DatabaseManager {
                         "  email VARCHAR(100) NOT NULL UNIQUE," +
                         "  created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP" +
                         ")";
-        String createGames =
-                "CREATE TABLE IF NOT EXISTS Games (" +
-                        "  id BIGINT AUTO_INCREMENT PRIMARY KEY," +
-                        "  game_name VARCHAR(100) NOT NULL," +
-                        "  white_username VARCHAR(50) NULL," +
-                        "  black_username VARCHAR(50) NULL," +
-                        "  state_json TEXT NOT NULL," +
-                        "  created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP" +
-                        ")";
         String createAuths =
                 "CREATE TABLE IF NOT EXISTS Auths (" +
                         "  token CHAR(36) PRIMARY KEY," +
                         "  username VARCHAR(50) NOT NULL," +
                         "  created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP," +
+                        "  expires_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP," +
                         "  FOREIGN KEY (username) REFERENCES Users(username)" +
                         ")";
 
-        try (var conn = getConnection();
-             var stmt = conn.createStatement()) {
-            stmt.executeUpdate(createUsers);
-            stmt.executeUpdate(createGames);
-            stmt.executeUpdate(createAuths);
+        try (var conn = getConnection()) {
+            if (storedSchemaVersion(conn) != SCHEMA_VERSION) {
+                try (var stmt = conn.createStatement()) {
+                    stmt.executeUpdate(createUsers);
+                    stmt.executeUpdate(CREATE_GAMES);
+                    stmt.executeUpdate(createAuths);
+                }
+                migrateGameSummaryColumns(conn);
+                addPlayerIndexes(conn);
+                migrateAuthExpiry(conn);
+                storeSchemaVersion(conn);
+            }
         } catch (SQLException ex) {
             throw new DataAccessException("failed to init schema", ex);
         }
+        for (int shard = 0; shard < shardPools.length; shard++) {
+            initShardSchema(shard);
+        }
     }
 
-    public static Connection getConnection() throws DataAccessException {
-        try {
-            var conn = DriverManager.getConnection(connectionUrl, dbUsername, dbPassword);
-            conn.setCatalog(databaseName);
-            return conn;
+    /** A shard holds only games, with the same columns and indexes as the main Games table. */
+    private static void initShardSchema(int shard) throws DataAccessException {
+        try (var conn = getShardConnection(shard)) {
+            if (storedSchemaVersion(conn) != SCHEMA_VERSION) {
+                try (var stmt = conn.createStatement()) {
+                    stmt.executeUpdate(CREATE_GAMES);
+                }
+                migrateGameSummaryColumns(conn);
+                addPlayerIndexes(conn);
+                storeSchemaVersion(conn);
+            }
+        } catch (SQLException ex) {
+            throw new DataAccessException("failed to init schema of shard " + shard, ex);
+        }
+    }
+
+    /**
+     * Brings a Games table created before the lobby summary columns existed up
+     * to date, filling them in once from each row's stored state.
+     */
+    private static void migrateGameSummaryColumns(Connection conn) throws SQLException {
+        boolean added = addColumnIfMissing(conn, "Games", "status", "VARCHAR(16) NOT NULL DEFAULT 'IN_PROGRESS'");
+        added |= addColumnIfMissing(conn, "Games", "side_to_move", "VARCHAR(5) NULL DEFAULT 'WHITE'");
+        added |= addColumnIfMissing(conn, "Games", "ply_count", "INT NOT NULL DEFAULT 0");
+        added |= addColumnIfMissing(conn, "Games", "last_move_at", "TIMESTAMP NULL");
+        addColumnIfMissing(conn, "Games", "version", "INT NOT NULL DEFAULT 0");
+        addIndexIfMissing(conn, "Games", "idx_games_summary",
+                "id, status, side_to_move, ply_count, last_move_at, white_username, black_username, game_name");
+        addIndexIfMissing(conn, "Games", "idx_games_status", "status, id");
+        addIndexIfMissing(conn, "Games", "idx_games_white", "white_username, id");
+        addIndexIfMissing(conn, "Games", "idx_games_black", "black_username, id");
+        if (added) {
+            backfillGameSummaries(conn);
+        }
+    }
+
+    /**
+     * Indexes for per-player game lookups, so they stay range scans however
+     * large the Games table grows.
+     */
+    private static void addPlayerIndexes(Connection conn) throws SQLException {
+        addIndexIfMissing(conn, "Games", "idx_games_white_status", "white_username, status, id");
+        addIndexIfMissing(conn, "Games", "idx_games_black_status", "black_username, status, id");
+    }
+
+    /**
+     * Adds token expiry to an Auths table from before it existed. Tokens
+     * already issued get a full lifetime from now rather than ending at once.
+     * Also indexes tokens by owner.
+     */
+    private static void migrateAuthExpiry(Connection conn) throws SQLException {
+        if (addColumnIfMissing(conn, "Auths", "expires_at", "TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP")) {
+            try (var ps = conn.prepareStatement(
+                    "UPDATE Auths SET expires_at = TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP)")) {
+                ps.setLong(1, TokenLifetime.fromProperties().ttlSeconds());
+                ps.executeUpdate();
+            }
+        }
+        addIndexIfMissing(conn, "Auths", "idx_auths_expires", "expires_at");
+        // InnoDB indexes the foreign key implicitly; naming the index keeps it if the key is ever dropped.
+        addIndexIfMissing(conn, "Auths", "idx_auths_username", "username");
+    }
+
+    private static void backfillGameSummaries(Connection conn) throws SQLException {
+        var gson = new Gson();
+        try (var select = conn.prepareStatement("SELECT id, state_json FROM Games");
+             var update = conn.prepareStatement(
+                     "UPDATE Games SET status = ?, side_to_move = ?, ply_count = ? WHERE id = ?");
+             var rs = select.executeQuery()) {
+            while (rs.next()) {
+                ChessGame game = gson.fromJson(rs.getString("state_json"), ChessGame.class);
+                update.setString(1, GameStatus.of(game).name());
+                update.setString(2, game.getTeamTurn() == null ? null : game.getTeamTurn().name());
+                update.setInt(3, game.getPlyCount());
+                update.setLong(4, rs.getLong("id"));
+                update.addBatch();
+            }
+            update.executeBatch();
+        }
+    }
+
+    /** The schema version recorded in {@code conn}'s database, or 0 if none has been. */
+    private static int storedSchemaVersion(Connection conn) throws SQLException {
+        try (var stmt = conn.createStatement();
+             var rs = stmt.executeQuery("SELECT version FROM SchemaVersion WHERE id = 1")) {
+            return rs.next() ? rs.getInt(1) : 0;
         } catch (SQLException ex) {
-            throw new DataAccessException("failed to get connection", ex);
+            if (ex.getErrorCode() == ER_NO_SUCH_TABLE) {
+                return 0;
+            }
+            throw ex;
+        }
+    }
+
+    private static void storeSchemaVersion(Connection conn) throws SQLException {
+        try (var stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS SchemaVersion (" +
+                    "  id INT PRIMARY KEY," +
+                    "  version INT NOT NULL" +
+                    ")");
+            stmt.executeUpdate("REPLACE INTO SchemaVersion (id, version) VALUES (1, " + SCHEMA_VERSION + ")");
+        }
+    }
+
+    private static boolean addColumnIfMissing(Connection conn, String table, String column, String definition)
+            throws SQLException {
+        try (var rs = conn.getMetaData().getColumns(conn.getCatalog(), null, table, column)) {
+            if (rs.next()) {
+                return false;
+            }
+        }
+        try (var stmt = conn.createStatement()) {
+            stmt.executeUpdate("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        }
+        return true;
+    }
+
+    private static void addIndexIfMissing(Connection conn, String table, String index, String columns)
+            throws SQLException {
+        try (var rs = conn.getMetaData().getIndexInfo(conn.getCatalog(), null, table, false, false)) {
+            while (rs.next()) {
+                if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return;
+                }
+            }
+        }
+        try (var stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE INDEX " + index + " ON " + table + " (" + columns + ")");
+        }
+    }
+
+    /**
+     * Borrows a pooled connection; closing it returns it to the pool.
+     */
+    public static Connection getConnection() throws DataAccessException {
+        return pool().borrow();
+    }
+
+    public static ConnectionPool.PoolStats poolStats() {
+        return pool().stats();
+    }
+
+    /** True if db.properties names a read replica with {@code db.replica.host}. */
+    public static boolean hasReplica() {
+        return replicaUrl != null;
+    }
+
+    /**
+     * Borrows a read-only connection to the replica. Its database, user and
+     * password default to the primary's unless {@code db.replica.name},
+     * {@code db.replica.user} or {@code db.replica.password} say otherwise.
+     * The pool shares the primary's sizing.
+     */
+    public static Connection getReplicaConnection() throws DataAccessException {
+        return replicaPool().borrow();
+    }
+
+    public static ConnectionPool.PoolStats replicaPoolStats() {
+        return replicaPool().stats();
+    }
+
+    /** Game shards named in db.properties by {@code db.shards}; zero when games are not sharded. */
+    public static int shardCount() {
+        return shardPools.length;
+    }
+
+    /**
+     * Borrows a connection to game shard {@code shard}. Shard {@code i} lives in
+     * database {@code db.shard.i.name} (default the main name plus
+     * {@code _shard<i>}) on {@code db.shard.i.host} and {@code db.shard.i.port},
+     * which default to the primary's, so every shard can share one local server.
+     */
+    public static Connection getShardConnection(int shard) throws DataAccessException {
+        return shardPool(shard).borrow();
+    }
+
+    /**
+     * Closes the pools' connections. The next {@link #getConnection()} starts a
+     * fresh pool.
+     */
+    public static synchronized void closePool() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+        if (replicaPool != null) {
+            replicaPool.close();
+            replicaPool = null;
+        }
+        for (int shard = 0; shard < shardPools.length; shard++) {
+            if (shardPools[shard] != null) {
+                shardPools[shard].close();
+                shardPools[shard] = null;
+            }
+        }
+    }
+
+    private static synchronized ConnectionPool pool() {
+        if (pool == null) {
+            pool = new ConnectionPool(poolConfig, () -> {
+                var conn = DriverManager.getConnection(connectionUrl, dbUsername, dbPassword);
+                conn.setCatalog(databaseName);
+                return conn;
+            });
         }
+        return pool;
+    }
+
+    private static synchronized ConnectionPool shardPool(int shard) {
+        if (shardPools[shard] == null) {
+            String url = shardUrls[shard];
+            String name = shardDatabaseNames[shard];
+            shardPools[shard] = new ConnectionPool(poolConfig, () -> {
+                var conn = DriverManager.getConnection(url, dbUsername, dbPassword);
+                conn.setCatalog(name);
+                return conn;
+            });
+        }
+        return shardPools[shard];
+    }
+
+    private static synchronized ConnectionPool replicaPool() {
+        if (replicaUrl == null) {
+            throw new IllegalStateException("No read replica configured");
+        }
+        if (replicaPool == null) {
+            replicaPool = new ConnectionPool(poolConfig, () -> {
+                var conn = DriverManager.getConnection(replicaUrl, replicaUsername, replicaPassword);
+                conn.setCatalog(replicaDatabaseName);
+                conn.setReadOnly(true);
+                return conn;
+            });
+        }
+        return replicaPool;
     }
 
     private static void loadPropertiesFromResources() {
@@ -97,6 +370,40 @@ public class DatabaseManager {
         
         var host = props.getProperty("db.host");
         var port = Integer.parseInt(props.getProperty("db.port"));
-        connectionUrl = String.format("jdbc:mysql://%s:%d", host, port);
+        // Lets the driver collapse batched INSERTs into multi-row statements.
+        connectionUrl = String.format("jdbc:mysql://%s:%d?rewriteBatchedStatements=true", host, port);
+
+        poolConfig = new ConnectionPool.Config(
+                Integer.parseInt(props.getProperty("db.pool.minIdle", "2")),
+                Integer.parseInt(props.getProperty("db.pool.maxSize", "16")),
+                Long.parseLong(props.getProperty("db.pool.acquireTimeoutMs", "5000")),
+                Long.parseLong(props.getProperty("db.pool.idleTimeoutMs", "300000")),
+                Long.parseLong(props.getProperty("db.pool.validateAfterIdleMs", "500")),
+                Long.parseLong(props.getProperty("db.pool.leakThresholdMs", "30000")));
+
+        var replicaHost = props.getProperty("db.replica.host");
+        if (replicaHost != null && !replicaHost.isBlank()) {
+            var replicaPort = Integer.parseInt(props.getProperty("db.replica.port", String.valueOf(port)));
+            replicaUrl = String.format("jdbc:mysql://%s:%d", replicaHost.trim(), replicaPort);
+            replicaDatabaseName = props.getProperty("db.replica.name", databaseName);
+            replicaUsername = props.getProperty("db.replica.user", dbUsername);
+            replicaPassword = props.getProperty("db.replica.password", dbPassword);
+        } else {
+            replicaUrl = null;
+        }
+
+        // Connections from the old settings must not outlive them.
+        closePool();
+        int shards = Integer.parseInt(props.getProperty("db.shards", "0"));
+        shardUrls = new String[shards];
+        shardDatabaseNames = new String[shards];
+        for (int shard = 0; shard < shards; shard++) {
+            String prefix = "db.shard." + shard + ".";
+            shardUrls[shard] = String.format("jdbc:mysql://%s:%d?rewriteBatchedStatements=true",
+                    props.getProperty(prefix + "host", host),
+                    Integer.parseInt(props.getProperty(prefix + "port", String.valueOf(port))));
+            shardDatabaseNames[shard] = props.getProperty(prefix + "name", databaseName + "_shard" + shard);
+        }
+        shardPools = new ConnectionPool[shards];
     }
 }
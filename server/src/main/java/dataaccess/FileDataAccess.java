@@ -0,0 +1,715 @@
+package dataaccess;
+
+import chess.ChessGame;
+import chess.ChessPacking;
+import model.AuthData;
+import model.GameData;
+import model.GameStatus;
+import model.GameSummary;
+import model.UserData;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * A store that needs no database: everything lives in an
+ * {@link InMemoryDataAccess}, and every change is appended to a journal file
+ * that is replayed on the next start.
+ * <p>
+ * The journal is memory-mapped, so an append is a copy into the page cache
+ * with no system call. A record survives a crash of this process as soon as
+ * the write returns; it reaches the disk when the operating system writes the
+ * page back, on {@link #close}, or at once with {@code syncWrites}.
+ * <p>
+ * The file starts with a magic number, then holds records of
+ * {@code [length][CRC-32C][type][fields]}, followed by zeros up to the end of
+ * the mapping. Replay stops at the first zero length. It also stops at a
+ * record that is cut short or fails its checksum, as after a crash in the
+ * middle of a write; that record and anything after it are dropped.
+ * <p>
+ * Records hold whole rows, not operations, so replay only has to put each row
+ * back. Once the journal has grown past {@code compactBytes} and to twice the
+ * size of its live rows, as measured on opening and after each compaction, it
+ * is rewritten as one record per live row. That runs on a background thread:
+ * the live rows are captured under the write lock, written and forced to disk
+ * outside it while writes carry on, and the records appended meanwhile are
+ * copied across under the lock just before the new file replaces the old one
+ * atomically. Expired tokens are neither journaled when swept nor restored,
+ * and compaction leaves them out.
+ * <p>
+ * Writes are serialized, so that the order of the journal is the order
+ * in which changes were made in memory. Reads go straight to memory. A write
+ * encodes its record and makes room for it before memory changes, so a value
+ * too long to journal or a full journal fails the write with nothing changed.
+ * A failed compaction is logged and tried again once the journal has grown by
+ * another quarter.
+ */
+public class FileDataAccess implements DataAccess, AutoCloseable {
+    private static final int MAGIC = 0x43484a31;
+    private static final int FILE_HEADER_BYTES = 4;
+    private static final int RECORD_HEADER_BYTES = 8;
+
+    private static final byte USER = 1;
+    private static final byte GAME = 2;
+    private static final byte AUTH = 3;
+    private static final byte DELETE_AUTH = 4;
+    private static final byte CLEAR = 5;
+
+    private final Path path;
+    private final InMemoryDataAccess memory;
+    private final long mapBytes;
+    private final long compactBytes;
+    private final boolean syncWrites;
+    private final Object writeLock = new Object();
+    private final ThreadPoolExecutor compactor;
+    private final Runnable beforeSwap;
+
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    /** Where the next record goes. */
+    private int position;
+    /** The size of a journal holding only the live rows, as of opening or the last compaction. */
+    private long liveBytes;
+    /** After a failed compaction, the size the journal must reach before the next attempt. */
+    private long compactRetryAt;
+    /** Whether a compaction has been handed to the compactor and not yet finished. */
+    private boolean compacting;
+
+    public FileDataAccess(Path path, TokenLifetime tokenLifetime, long mapBytes, long compactBytes,
+                          boolean syncWrites) throws DataAccessException {
+        this(path, new InMemoryDataAccess(tokenLifetime, System::currentTimeMillis), mapBytes, compactBytes,
+                syncWrites);
+    }
+
+    FileDataAccess(Path path, InMemoryDataAccess memory, long mapBytes, long compactBytes, boolean syncWrites)
+            throws DataAccessException {
+        this(path, memory, mapBytes, compactBytes, syncWrites, () -> { });
+    }
+
+    /** @param beforeSwap run by a compaction after writing its copy and before taking the write lock, for tests */
+    FileDataAccess(Path path, InMemoryDataAccess memory, long mapBytes, long compactBytes, boolean syncWrites,
+                   Runnable beforeSwap) throws DataAccessException {
+        this.path = path;
+        this.beforeSwap = beforeSwap;
+        this.memory = memory;
+        this.mapBytes = mapBytes;
+        this.compactBytes = compactBytes;
+        this.syncWrites = syncWrites;
+        this.compactor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "journal-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+        compactor.allowCoreThreadTimeOut(true);
+        try {
+            open();
+        } catch (IOException e) {
+            throw new DataAccessException("Failed to open journal " + path, e);
+        }
+    }
+
+    /**
+     * Journal at {@code chess.file.path}, default {@code chess.journal}. It is
+     * mapped {@code chess.file.mapBytes} at a time (default 16 MiB) and
+     * compacted past {@code chess.file.compactBytes} (default 64 MiB).
+     * {@code chess.file.syncWrites} forces every record to disk before the
+     * write returns.
+     */
+    public static FileDataAccess fromProperties() throws DataAccessException {
+        return new FileDataAccess(Path.of(System.getProperty("chess.file.path", "chess.journal")),
+                TokenLifetime.fromProperties(),
+                Long.getLong("chess.file.mapBytes", 16L << 20),
+                Long.getLong("chess.file.compactBytes", 64L << 20),
+                Boolean.getBoolean("chess.file.syncWrites"));
+    }
+
+    /** Lets a running compaction finish, then forces the journal to disk and closes it. */
+    @Override
+    public void close() throws DataAccessException {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (writeLock) {
+            try {
+                map.force();
+                channel.close();
+            } catch (IOException e) {
+                throw new DataAccessException("Failed to close journal " + path, e);
+            }
+        }
+    }
+
+    @Override
+    public void clear() throws DataAccessException {
+        synchronized (writeLock) {
+            byte[] record = new Record(CLEAR).bytes();
+            reserve(1, record.length);
+            memory.clear();
+            append(record);
+        }
+    }
+
+    @Override
+    public void createUser(UserData u) throws DataAccessException {
+        synchronized (writeLock) {
+            byte[] record = encode(() -> user(u));
+            reserve(1, record.length);
+            memory.createUser(u);
+            append(record);
+        }
+    }
+
+    @Override
+    public void createUsers(List<UserData> users) throws DataAccessException {
+        synchronized (writeLock) {
+            List<byte[]> records = new ArrayList<>(users.size());
+            long total = 0;
+            for (UserData u : users) {
+                records.add(encode(() -> user(u)));
+                total += records.get(records.size() - 1).length;
+            }
+            reserve(users.size(), total);
+            memory.createUsers(users);
+            for (byte[] record : records) {
+                append(record);
+            }
+        }
+    }
+
+    @Override
+    public UserData getUser(String username) throws DataAccessException {
+        return memory.getUser(username);
+    }
+
+    @Override
+    public void updateUserPassword(String username, String passwordHash) throws DataAccessException {
+        synchronized (writeLock) {
+            UserData current = memory.getUser(username);
+            byte[] record = encode(() -> user(new UserData(username, passwordHash, current.email())));
+            reserve(1, record.length);
+            memory.updateUserPassword(username, passwordHash);
+            append(record);
+        }
+    }
+
+    @Override
+    public GameData createGame(String gameName) throws DataAccessException {
+        synchronized (writeLock) {
+            reserve(1, gameBound(new GameData(0, null, null, gameName, new ChessGame())));
+            GameData created = memory.createGame(gameName);
+            append(encode(() -> game(created, null)));
+            return created;
+        }
+    }
+
+    @Override
+    public List<GameData> createGames(List<String> gameNames) throws DataAccessException {
+        synchronized (writeLock) {
+            long total = 0;
+            for (String name : gameNames) {
+                total += gameBound(new GameData(0, null, null, name, new ChessGame()));
+            }
+            reserve(gameNames.size(), total);
+            List<GameData> created = memory.createGames(gameNames);
+            for (GameData game : created) {
+                append(encode(() -> game(game, null)));
+            }
+            return created;
+        }
+    }
+
+    @Override
+    public GameData getGame(int gameID) throws DataAccessException {
+        return memory.getGame(gameID);
+    }
+
+    @Override
+    public List<GameData> listGames() {
+        return memory.listGames();
+    }
+
+    @Override
+    public List<GameSummary> listGameSummaries(GameQuery query) {
+        return memory.listGameSummaries(query);
+    }
+
+    @Override
+    public void streamGameSummaries(GameQuery query, RowSink<GameSummary> sink) throws IOException {
+        memory.streamGameSummaries(query, sink);
+    }
+
+    @Override
+    public List<GameSummary> listGamesForPlayer(String username, GameStatus status) {
+        return memory.listGamesForPlayer(username, status);
+    }
+
+    @Override
+    public void updateGame(GameData updated) throws DataAccessException {
+        synchronized (writeLock) {
+            GameData stored = new GameData(updated.gameID(), updated.whiteUsername(), updated.blackUsername(),
+                    updated.gameName(), updated.game(), updated.version() + 1);
+            reserve(1, gameBound(stored));
+            memory.updateGame(updated);
+            append(encode(() -> game(stored, memory.lastMoveAt(updated.gameID()))));
+        }
+    }
+
+    @Override
+    public void saveGames(Collection<GameData> games) throws DataAccessException {
+        synchronized (writeLock) {
+            long total = 0;
+            for (GameData saved : games) {
+                total += gameBound(saved);
+            }
+            reserve(games.size(), total);
+            memory.saveGames(games);
+            for (GameData saved : games) {
+                GameData stored;
+                try {
+                    stored = memory.getGame(saved.gameID());
+                } catch (DataAccessException missing) {
+                    // Saving a game that does not exist is a no-op, so there is nothing to journal.
+                    continue;
+                }
+                append(encode(() -> game(stored, memory.lastMoveAt(saved.gameID()))));
+            }
+        }
+    }
+
+    @Override
+    public AuthData createAuth(String username) throws DataAccessException {
+        synchronized (writeLock) {
+            AuthData created = memory.createAuth(username);
+            try {
+                append(encode(() -> auth(created, memory.expiresAt(created.authToken()))));
+            } catch (DataAccessException e) {
+                // The token is not known outside yet, so it can simply be forgotten.
+                memory.forgetAuth(created.authToken());
+                throw e;
+            }
+            return created;
+        }
+    }
+
+    /** Journals the new expiry if the lookup renewed the token, which happens at most once per renewal interval. */
+    @Override
+    public AuthData getAuth(String authToken) throws DataAccessException {
+        long before = memory.expiresAt(authToken);
+        AuthData found = memory.getAuth(authToken);
+        if (memory.expiresAt(authToken) > before) {
+            synchronized (writeLock) {
+                // Read again under the lock, in case a logout got in first.
+                long expiresAt = memory.expiresAt(authToken);
+                if (expiresAt != 0) {
+                    append(encode(() -> auth(found, expiresAt)));
+                }
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public void deleteAuth(String authToken) throws DataAccessException {
+        synchronized (writeLock) {
+            byte[] record = encode(() -> {
+                Record delete = new Record(DELETE_AUTH);
+                delete.string(authToken);
+                return delete;
+            });
+            reserve(1, record.length);
+            memory.deleteAuth(authToken);
+            append(record);
+        }
+    }
+
+    @Override
+    public int deleteExpiredAuths(int limit) {
+        // Replay and compaction both skip expired tokens, so the journal need not hear of this.
+        return memory.deleteExpiredAuths(limit);
+    }
+
+    /** Bytes of journal in use, header included. */
+    int journalBytes() {
+        synchronized (writeLock) {
+            return position;
+        }
+    }
+
+    /** Waits until no compaction is pending, for tests. */
+    void awaitCompaction() throws InterruptedException, ExecutionException {
+        while (true) {
+            compactor.submit(() -> { }).get();
+            synchronized (writeLock) {
+                if (!compacting) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void open() throws IOException, DataAccessException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long size = channel.size();
+        remap(Math.max(size, mapBytes));
+        if (size == 0) {
+            map.putInt(0, MAGIC);
+            position = FILE_HEADER_BYTES;
+        } else if (map.getInt(0) != MAGIC) {
+            channel.close();
+            throw new DataAccessException("Not a journal: " + path);
+        } else {
+            position = replay();
+        }
+        // The replayed journal may be mostly superseded rows, so measure what a compaction would keep.
+        liveBytes = liveSize();
+        compactIfDue();
+    }
+
+    /** Puts every intact record back into memory and returns where the next one goes. */
+    private int replay() throws IOException {
+        int at = FILE_HEADER_BYTES;
+        while (at + RECORD_HEADER_BYTES <= map.capacity()) {
+            int length = map.getInt(at);
+            if (length == 0) {
+                return at;
+            }
+            if (length < 0 || length > map.capacity() - at - RECORD_HEADER_BYTES) {
+                return dropDamaged(at);
+            }
+            byte[] body = new byte[length];
+            map.get(at + RECORD_HEADER_BYTES, body);
+            if (map.getInt(at + 4) != crc(body)) {
+                return dropDamaged(at);
+            }
+            apply(body);
+            at += RECORD_HEADER_BYTES + length;
+        }
+        return at;
+    }
+
+    private int dropDamaged(int at) {
+        System.err.println("Journal " + path + " has a damaged record at byte " + at + "; dropping the rest");
+        // Zero what follows, so that new records are not followed by fragments of the damaged one.
+        for (int i = at; i < map.capacity(); i++) {
+            map.put(i, (byte) 0);
+        }
+        return at;
+    }
+
+    private void apply(byte[] body) throws IOException {
+        var in = new DataInputStream(new ByteArrayInputStream(body));
+        switch (in.readByte()) {
+            case USER -> memory.restoreUser(new UserData(readString(in), readString(in), readString(in)));
+            case GAME -> {
+                int id = in.readInt();
+                String white = readString(in);
+                String black = readString(in);
+                String name = readString(in);
+                int version = in.readInt();
+                Long lastMoveAt = in.readBoolean() ? in.readLong() : null;
+                byte[] packed = new byte[in.readUnsignedShort()];
+                in.readFully(packed);
+                memory.restoreGame(new GameData(id, white, black, name, ChessPacking.unpackGame(packed), version),
+                        lastMoveAt);
+            }
+            case AUTH -> {
+                String token = readString(in);
+                String username = readString(in);
+                memory.restoreAuth(new AuthData(token, username), in.readLong());
+            }
+            case DELETE_AUTH -> memory.forgetAuth(readString(in));
+            case CLEAR -> memory.clear();
+            default -> throw new IOException("Unknown journal record type");
+        }
+    }
+
+    /** Builds a record body, failing as a write would if a value is too long to journal. */
+    private byte[] encode(Encoder encoder) throws DataAccessException {
+        try {
+            return encoder.encode().bytes();
+        } catch (IOException e) {
+            throw new DataAccessException("Value too long to journal", e);
+        }
+    }
+
+    /** The largest record {@code game} can take: the same record with a move time. */
+    private long gameBound(GameData game) throws DataAccessException {
+        return encode(() -> game(game, 0L)).length;
+    }
+
+    /** Maps enough of the journal for {@code records} more records with bodies totalling {@code bodyBytes}. */
+    private void reserve(int records, long bodyBytes) throws DataAccessException {
+        long needed = (long) position + (long) records * RECORD_HEADER_BYTES + bodyBytes;
+        if (needed <= map.capacity()) {
+            return;
+        }
+        try {
+            remap(Math.max(2L * map.capacity(), needed));
+        } catch (IOException e) {
+            throw new DataAccessException("Failed to grow journal " + path, e);
+        }
+    }
+
+    /** The size of the journal that {@link #compact} would write now. */
+    private long liveSize() throws IOException {
+        long size = FILE_HEADER_BYTES;
+        for (Encoder row : liveRows()) {
+            size += RECORD_HEADER_BYTES + row.encode().bytes().length;
+        }
+        return size;
+    }
+
+    /**
+     * Captures every live row, to be encoded later. Stored rows are never
+     * changed in place, so the capture stays as it was while writes go on.
+     */
+    private List<Encoder> liveRows() throws IOException {
+        List<Encoder> rows = new ArrayList<>();
+        memory.snapshot(new InMemoryDataAccess.SnapshotSink() {
+            @Override
+            public void user(UserData u) {
+                rows.add(() -> FileDataAccess.user(u));
+            }
+
+            @Override
+            public void game(GameData game, Long lastMoveAt) {
+                rows.add(() -> FileDataAccess.game(game, lastMoveAt));
+            }
+
+            @Override
+            public void auth(AuthData auth, long expiresAt) {
+                rows.add(() -> FileDataAccess.auth(auth, expiresAt));
+            }
+        });
+        return rows;
+    }
+
+    private void append(byte[] body) throws DataAccessException {
+        reserve(1, body.length);
+        int start = position;
+        int length = RECORD_HEADER_BYTES + body.length;
+        map.put(start + RECORD_HEADER_BYTES, body);
+        map.putInt(start + 4, crc(body));
+        // The length goes last: until it is written, replay sees the end of the journal here.
+        map.putInt(start, body.length);
+        if (syncWrites) {
+            map.force(start, length);
+        }
+        position = start + length;
+        compactIfDue();
+    }
+
+    private void remap(long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Journal " + path + " would exceed 2 GiB");
+        }
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /** Hands a compaction to the compactor if the journal has grown enough and none is under way. */
+    private void compactIfDue() {
+        if (compacting || compactor.isShutdown() || position < compactBytes || position < 2L * liveBytes
+                || position < compactRetryAt) {
+            return;
+        }
+        compacting = true;
+        compactor.execute(() -> {
+            try {
+                compact();
+            } catch (IOException | RuntimeException e) {
+                synchronized (writeLock) {
+                    compactRetryAt = position + position / 4;
+                    System.err.println("Failed to compact journal " + path + "; retrying past " + compactRetryAt
+                            + " bytes: " + e);
+                }
+            } finally {
+                synchronized (writeLock) {
+                    compacting = false;
+                    // Records copied across from meanwhile may already call for another pass.
+                    compactIfDue();
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes the live rows to a new file beside the journal, then swaps it in.
+     * Only capturing the rows and the swap itself hold the write lock.
+     */
+    private void compact() throws IOException {
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        List<Encoder> rows;
+        int snapshotAt;
+        synchronized (writeLock) {
+            rows = liveRows();
+            snapshotAt = position;
+        }
+        long written = FILE_HEADER_BYTES;
+        try {
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(compacted)))) {
+                out.writeInt(MAGIC);
+                for (Encoder row : rows) {
+                    written += write(out, row.encode());
+                }
+            }
+            try (var file = FileChannel.open(compacted, StandardOpenOption.WRITE)) {
+                file.force(true);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(compacted);
+            throw e;
+        }
+
+        beforeSwap.run();
+        // Records appended since the capture are already framed, so they follow the rows as they are. Bytes
+        // before the current position never change, so most of them can be copied without the lock.
+        MappedByteBuffer appended;
+        int copied;
+        synchronized (writeLock) {
+            appended = map;
+            copied = position;
+        }
+        try (var file = FileChannel.open(compacted, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            copy(appended, snapshotAt, copied, file);
+            file.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(compacted);
+            throw e;
+        }
+
+        synchronized (writeLock) {
+            try (var file = FileChannel.open(compacted, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                copy(map, copied, position, file);
+                if (syncWrites) {
+                    file.force(true);
+                }
+            } catch (IOException e) {
+                Files.deleteIfExists(compacted);
+                throw e;
+            }
+            channel.close();
+            try {
+                Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                // If the move failed this reopens the old journal, which the current mapping still writes to.
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            position = (int) channel.size();
+            liveBytes = written;
+            compactRetryAt = 0;
+            remap(Math.max(2L * position, mapBytes));
+        }
+    }
+
+    private static void copy(MappedByteBuffer from, int start, int end, FileChannel to) throws IOException {
+        ByteBuffer bytes = from.slice(start, end - start);
+        while (bytes.hasRemaining()) {
+            to.write(bytes);
+        }
+    }
+
+    /** Writes one framed record and returns its size. */
+    private static int write(DataOutputStream out, Record record) throws IOException {
+        byte[] body = record.bytes();
+        out.writeInt(body.length);
+        out.writeInt(crc(body));
+        out.write(body);
+        return RECORD_HEADER_BYTES + body.length;
+    }
+
+    private static Record user(UserData u) throws IOException {
+        Record record = new Record(USER);
+        record.string(u.username());
+        record.string(u.password());
+        record.string(u.email());
+        return record;
+    }
+
+    private static Record game(GameData game, Long lastMoveAt) throws IOException {
+        Record record = new Record(GAME);
+        byte[] packed = ChessPacking.packGame(game.game());
+        record.out.writeInt(game.gameID());
+        record.string(game.whiteUsername());
+        record.string(game.blackUsername());
+        record.string(game.gameName());
+        record.out.writeInt(game.version());
+        record.out.writeBoolean(lastMoveAt != null);
+        if (lastMoveAt != null) {
+            record.out.writeLong(lastMoveAt);
+        }
+        record.out.writeShort(packed.length);
+        record.out.write(packed);
+        return record;
+    }
+
+    private static Record auth(AuthData auth, long expiresAt) throws IOException {
+        Record record = new Record(AUTH);
+        record.string(auth.authToken());
+        record.string(auth.username());
+        record.out.writeLong(expiresAt);
+        return record;
+    }
+
+    private static int crc(byte[] body) {
+        var crc = new CRC32C();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    @FunctionalInterface
+    private interface Encoder {
+        Record encode() throws IOException;
+    }
+
+    /**
+     * One record's body, built in memory. Writing to a byte array fails only
+     * for a string longer than 64 KiB once encoded.
+     */
+    private static final class Record {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        private Record(byte type) {
+            bytes.write(type);
+        }
+
+        /** Writes a string that may be null. */
+        private void string(String value) throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null) {
+                out.writeUTF(value);
+            }
+        }
+
+        private byte[] bytes() {
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package dataaccess;
+
+import model.AuthData;
+import model.GameData;
+import model.GameStatus;
+import model.GameSummary;
+import model.UserData;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers {@link #getGame} from a bounded LRU cache of recently used games,
+ * delegating everything else.
+ * <p>
+ * Stored updates are written through, so the cache holds the version that was
+ * just written and the next read costs nothing. A cached entry is only ever
+ * replaced by a newer version, so a slow read cannot put back a game that an
+ * update has already moved past. If another server changed the game, the
+ * cached copy is stale: the next update is rejected by the version check, the
+ * entry is dropped and the caller's retry reads the row again. Callers always
+ * get their own copy of a cached game.
+ */
+public class GameCachingDataAccess implements DataAccess {
+    private final DataAccess delegate;
+    private final BoundedCache<Integer, GameData> games;
+
+    public GameCachingDataAccess(DataAccess delegate, int maxGames, long ttlSeconds) {
+        this(delegate, new BoundedCache<>(maxGames, ttlSeconds, TimeUnit.SECONDS));
+    }
+
+    GameCachingDataAccess(DataAccess delegate, BoundedCache<Integer, GameData> games) {
+        this.delegate = delegate;
+        this.games = games;
+    }
+
+    /**
+     * Sized from {@code chess.gameCache.size} (default 1000 games) and
+     * {@code chess.gameCache.ttlSeconds} (default 60).
+     */
+    public static GameCachingDataAccess fromProperties(DataAccess delegate) {
+        return new GameCachingDataAccess(delegate, Integer.getInteger("chess.gameCache.size", 1000),
+                Long.getLong("chess.gameCache.ttlSeconds", 60));
+    }
+
+    public BoundedCache.Stats stats() {
+        return games.stats();
+    }
+
+    @Override
+    public void clear() throws DataAccessException {
+        try {
+            delegate.clear();
+        } finally {
+            games.clear();
+        }
+    }
+
+    @Override
+    public void createUser(UserData u) throws DataAccessException {
+        delegate.createUser(u);
+    }
+
+    @Override
+    public void createUsers(List<UserData> users) throws DataAccessException {
+        delegate.createUsers(users);
+    }
+
+    @Override
+    public UserData getUser(String username) throws DataAccessException {
+        return delegate.getUser(username);
+    }
+
+    @Override
+    public void updateUserPassword(String username, String passwordHash) throws DataAccessException {
+        delegate.updateUserPassword(username, passwordHash);
+    }
+
+    @Override
+    public GameData createGame(String gameName) throws DataAccessException {
+        GameData created = delegate.createGame(gameName);
+        cache(created);
+        return created;
+    }
+
+    @Override
+    public List<GameData> createGames(List<String> gameNames) throws DataAccessException {
+        List<GameData> created = delegate.createGames(gameNames);
+        for (GameData game : created) {
+            cache(game);
+        }
+        return created;
+    }
+
+    @Override
+    public GameData getGame(int gameID) throws DataAccessException {
+        GameData cached = games.get(gameID);
+        if (cached != null) {
+            return cached.copy();
+        }
+        GameData loaded = delegate.getGame(gameID);
+        cache(loaded);
+        return loaded;
+    }
+
+    @Override
+    public List<GameData> listGames() throws DataAccessException {
+        return delegate.listGames();
+    }
+
+    @Override
+    public List<GameSummary> listGameSummaries(GameQuery query) throws DataAccessException {
+        return delegate.listGameSummaries(query);
+    }
+
+    @Override
+    public void streamGameSummaries(GameQuery query, RowSink<GameSummary> sink)
+            throws DataAccessException, IOException {
+        delegate.streamGameSummaries(query, sink);
+    }
+
+    @Override
+    public List<GameSummary> listGamesForPlayer(String username, GameStatus status) throws DataAccessException {
+        return delegate.listGamesForPlayer(username, status);
+    }
+
+    @Override
+    public void updateGame(GameData updated) throws DataAccessException {
+        try {
+            delegate.updateGame(updated);
+        } catch (DataAccessException e) {
+            // Stale or missing: whatever we hold for this game is not worth trusting.
+            games.invalidate(updated.gameID());
+            throw e;
+        }
+        cache(new GameData(updated.gameID(), updated.whiteUsername(), updated.blackUsername(),
+                updated.gameName(), updated.game(), updated.version() + 1));
+    }
+
+    @Override
+    public void saveGames(Collection<GameData> saved) throws DataAccessException {
+        try {
+            delegate.saveGames(saved);
+        } finally {
+            // Versions are written as given and need not increase, so drop rather than compare.
+            for (GameData game : saved) {
+                games.invalidate(game.gameID());
+            }
+        }
+    }
+
+    @Override
+    public AuthData createAuth(String username) throws DataAccessException {
+        return delegate.createAuth(username);
+    }
+
+    @Override
+    public AuthData getAuth(String authToken) throws DataAccessException {
+        return delegate.getAuth(authToken);
+    }
+
+    @Override
+    public void deleteAuth(String authToken) throws DataAccessException {
+        delegate.deleteAuth(authToken);
+    }
+
+    @Override
+    public int deleteExpiredAuths(int limit) throws DataAccessException {
+        return delegate.deleteExpiredAuths(limit);
+    }
+
+    private void cache(GameData game) {
+        games.putUnless(game.gameID(), game.copy(), (held, offered) -> held.version() >= offered.version());
+    }
+}
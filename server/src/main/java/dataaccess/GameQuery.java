@@ -0,0 +1,31 @@
+package dataaccess;
+
+import model.GameFilter;
+import model.GameStatus;
+import model.GameSummary;
+
+/**
+ * One keyset page of the lobby listing: up to {@code limit} games with IDs
+ * greater than {@code afterId}, in ID order.
+ *
+ * @param username the caller, consulted only by {@link GameFilter#MINE}
+ */
+public record GameQuery(GameFilter filter, String username, int afterId, int limit) {
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 200;
+
+    public boolean matches(GameSummary game) {
+        if (game.gameID() <= afterId) {
+            return false;
+        }
+        boolean seatOpen = game.whiteUsername() == null || game.blackUsername() == null;
+        return switch (filter) {
+            case ALL -> true;
+            case OPEN -> game.status() == GameStatus.IN_PROGRESS && seatOpen;
+            case IN_PROGRESS -> game.status() == GameStatus.IN_PROGRESS && !seatOpen;
+            case FINISHED -> game.status() == GameStatus.FINISHED;
+            case MINE -> username != null &&
+                    (username.equals(game.whiteUsername()) || username.equals(game.blackUsername()));
+        };
+    }
+}
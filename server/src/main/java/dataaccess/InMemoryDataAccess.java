@@ -3,30 +3,95 @@ package dataaccess;
 import model.UserData;
 import model.GameData;
 import model.AuthData;
+import model.GameFilter;
+import model.GameStatus;
+import model.GameSummary;
 import chess.ChessGame;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
 
+/**
+ * A complete store held in memory, safe to share between request threads.
+ * <p>
+ * Each game changes inside {@link ConcurrentHashMap#compute} on its ID, so the
+ * version check and the write are one step and updates to different games never
+ * wait for each other. Games are copied on the way in and out; callers never
+ * share a board with the store. Two secondary indexes, games by player and
+ * tokens by username, are kept in step with the rows they point at.
+ */
 public class InMemoryDataAccess implements DataAccess {
-    private final Map<String, UserData> users = new HashMap<>();
-    private final Map<Integer,GameData> games = new HashMap<>();
-    private final Map<String,AuthData> auths = new HashMap<>();
-    private int gameId = 1;
+    private final ConcurrentHashMap<String, UserData> users = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, StoredGame> games = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Integer> gameIds = new ConcurrentSkipListSet<>();
+    private final ConcurrentHashMap<String, Set<Integer>> gamesByPlayer = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, StoredAuth> auths = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> tokensByUser = new ConcurrentHashMap<>();
+    private final AtomicInteger nextGameId = new AtomicInteger(1);
+    private final TokenLifetime tokenLifetime;
+    private final LongSupplier clock;
+
+    /** @param lastMoveAt epoch milliseconds of the latest move, or null before the first */
+    private record StoredGame(GameData data, Long lastMoveAt) {
+    }
+
+    /** @param expiresAt epoch milliseconds after which the token is no longer accepted */
+    private record StoredAuth(AuthData auth, long expiresAt) {
+    }
+
+    public InMemoryDataAccess() {
+        this(TokenLifetime.fromProperties(), System::currentTimeMillis);
+    }
+
+    /** @param clock epoch milliseconds, for token expiry */
+    InMemoryDataAccess(TokenLifetime tokenLifetime, LongSupplier clock) {
+        this.tokenLifetime = tokenLifetime;
+        this.clock = clock;
+    }
 
     @Override
     public void clear() {
         users.clear();
         games.clear();
+        gameIds.clear();
+        gamesByPlayer.clear();
         auths.clear();
-        gameId = 1;
+        tokensByUser.clear();
+        nextGameId.set(1);
     }
 
     @Override
     public void createUser(UserData u) throws DataAccessException {
-        if (users.containsKey(u.username())) {
+        if (users.putIfAbsent(u.username(), u) != null) {
             throw new DataAccessException("Username already Taken");
         }
-        users.put(u.username(), u);
+    }
+
+    @Override
+    public void createUsers(List<UserData> batch) throws DataAccessException {
+        List<String> added = new ArrayList<>(batch.size());
+        for (UserData u : batch) {
+            if (users.putIfAbsent(u.username(), u) != null) {
+                // All or nothing, as with one database transaction.
+                for (String name : added) {
+                    users.remove(name);
+                }
+                throw new DataAccessException("Username already Taken");
+            }
+            added.add(u.username());
+        }
+    }
+
+    @Override
+    public void updateUserPassword(String username, String passwordHash) throws DataAccessException {
+        UserData updated = users.computeIfPresent(username, (name, u) -> new UserData(name, passwordHash, u.email()));
+        if (updated == null) {
+            throw new DataAccessException("User not found");
+        }
     }
 
     @Override
@@ -40,55 +105,338 @@ public class InMemoryDataAccess implements DataAccess {
 
     @Override
     public GameData createGame(String gameName) {
-        int id = gameId++;
+        int id = nextGameId.getAndIncrement();
         GameData g = new GameData(id, null, null, gameName, new ChessGame());
-        games.put(id, g);
-        return g;
+        games.put(id, new StoredGame(g, null));
+        gameIds.add(id);
+        return g.copy();
+    }
+
+    @Override
+    public List<GameData> createGames(List<String> gameNames) {
+        List<GameData> created = new ArrayList<>(gameNames.size());
+        for (String name : gameNames) {
+            created.add(createGame(name));
+        }
+        return created;
     }
 
     @Override
     public GameData getGame(int gameID) throws DataAccessException {
-        GameData g = games.get(gameID);
-        if (g == null) {
+        StoredGame stored = games.get(gameID);
+        if (stored == null) {
             throw new DataAccessException("Game not found");
         }
-        return g;
+        return stored.data().copy();
     }
 
     @Override
     public List<GameData> listGames() {
-        return new ArrayList<>(games.values());
+        List<GameData> result = new ArrayList<>();
+        for (Integer id : gameIds) {
+            StoredGame stored = games.get(id);
+            if (stored != null) {
+                result.add(stored.data().copy());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<GameSummary> listGameSummaries(GameQuery query) {
+        // A player's own games come straight from the index instead of a scan over every game.
+        Collection<Integer> candidates = query.filter() == GameFilter.MINE
+                ? new TreeSet<>(gamesOf(query.username())).tailSet(query.afterId(), false)
+                : gameIds.tailSet(query.afterId(), false);
+        List<GameSummary> result = new ArrayList<>();
+        for (Integer id : candidates) {
+            StoredGame stored = games.get(id);
+            if (stored == null) {
+                continue;
+            }
+            GameSummary summary = GameSummary.of(stored.data(), stored.lastMoveAt());
+            if (query.matches(summary)) {
+                result.add(summary);
+                if (result.size() == query.limit()) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void streamGameSummaries(GameQuery query, RowSink<GameSummary> sink) throws IOException {
+        for (GameSummary summary : listGameSummaries(query)) {
+            sink.accept(summary);
+        }
+    }
+
+    @Override
+    public List<GameSummary> listGamesForPlayer(String username, GameStatus status) {
+        List<GameSummary> result = new ArrayList<>();
+        for (Integer id : new TreeSet<>(gamesOf(username)).descendingSet()) {
+            StoredGame stored = games.get(id);
+            if (stored == null) {
+                continue;
+            }
+            GameSummary summary = GameSummary.of(stored.data(), stored.lastMoveAt());
+            if (status == null || summary.status() == status) {
+                result.add(summary);
+                if (result.size() == GameQuery.MAX_LIMIT) {
+                    break;
+                }
+            }
+        }
+        return result;
     }
 
     @Override
     public void updateGame(GameData updated) throws DataAccessException {
-        if (!games.containsKey(updated.gameID())) {
+        GameData incoming = updated.copy();
+        boolean[] found = {false};
+        boolean[] stale = {false};
+        games.computeIfPresent(updated.gameID(), (id, current) -> {
+            found[0] = true;
+            if (current.data().version() != updated.version()) {
+                stale[0] = true;
+                return current;
+            }
+            return replace(current, new GameData(id, incoming.whiteUsername(), incoming.blackUsername(),
+                    incoming.gameName(), incoming.game(), updated.version() + 1));
+        });
+        if (!found[0]) {
             throw new DataAccessException("Game not found");
         }
-        games.put(updated.gameID(), updated);
+        if (stale[0]) {
+            throw new StaleGameException(updated.gameID());
+        }
+    }
+
+    @Override
+    public void saveGames(Collection<GameData> updates) throws DataAccessException {
+        for (GameData updated : updates) {
+            GameData incoming = updated.copy();
+            games.computeIfPresent(updated.gameID(), (id, current) -> replace(current, incoming));
+        }
     }
 
     @Override
     public AuthData createAuth(String username) {
         String token = UUID.randomUUID().toString();
         AuthData a = new AuthData(token, username);
-        auths.put(token, a);
+        auths.put(token, new StoredAuth(a, clock.getAsLong() + tokenLifetime.ttlSeconds() * 1000));
+        tokensByUser.compute(username, (name, tokens) -> {
+            tokens = tokens == null ? ConcurrentHashMap.newKeySet() : tokens;
+            tokens.add(token);
+            return tokens;
+        });
         return a;
     }
 
     @Override
     public AuthData getAuth(String authToken) throws DataAccessException {
-        AuthData a = auths.get(authToken);
-        if (a == null) {
+        StoredAuth stored = authToken == null ? null : auths.get(authToken);
+        long now = clock.getAsLong();
+        if (stored == null || stored.expiresAt() <= now) {
             throw new DataAccessException("Unauthorized");
         }
-        return a;
+        if (tokenLifetime.renewalDue((stored.expiresAt() - now) / 1000)) {
+            // Losing this race to a logout or another renewal is fine; either way the token was valid.
+            auths.replace(authToken, stored,
+                    new StoredAuth(stored.auth(), now + tokenLifetime.ttlSeconds() * 1000));
+        }
+        return stored.auth();
     }
 
     @Override
     public void deleteAuth(String authToken) throws DataAccessException {
-        if (auths.remove(authToken) == null) {
+        StoredAuth removed = authToken == null ? null : auths.remove(authToken);
+        if (removed == null) {
             throw new DataAccessException("Unauthorized");
         }
+        unindexAuth(removed.auth());
+    }
+
+    @Override
+    public int deleteExpiredAuths(int limit) {
+        long now = clock.getAsLong();
+        int deleted = 0;
+        for (var entry : auths.entrySet()) {
+            if (deleted == limit) {
+                break;
+            }
+            StoredAuth stored = entry.getValue();
+            // Conditional on the value, so a token renewed since it was read survives.
+            if (stored.expiresAt() <= now && auths.remove(entry.getKey(), stored)) {
+                unindexAuth(stored.auth());
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    private void unindexAuth(AuthData auth) {
+        tokensByUser.computeIfPresent(auth.username(), (name, tokens) -> {
+            tokens.remove(auth.authToken());
+            return tokens.isEmpty() ? null : tokens;
+        });
+    }
+
+    /** Every unexpired token issued to {@code username}. */
+    public List<AuthData> authsFor(String username) {
+        long now = clock.getAsLong();
+        List<AuthData> result = new ArrayList<>();
+        for (String token : tokensByUser.getOrDefault(username, Set.of())) {
+            StoredAuth stored = auths.get(token);
+            if (stored != null && stored.expiresAt() > now) {
+                result.add(stored.auth());
+            }
+        }
+        return result;
+    }
+
+    // Restore and snapshot hooks for FileDataAccess, which keeps its state here.
+
+    /** Puts back a user as journaled, replacing any earlier copy. */
+    void restoreUser(UserData u) {
+        users.put(u.username(), u);
+    }
+
+    /** Puts back a game as journaled, version and all; later new games are numbered after it. */
+    void restoreGame(GameData game, Long lastMoveAt) {
+        games.compute(game.gameID(), (id, current) -> {
+            if (current != null) {
+                return replace(current, game.copy(), lastMoveAt);
+            }
+            for (String name : players(game)) {
+                gamesByPlayer.compute(name, (n, ids) -> {
+                    ids = ids == null ? ConcurrentHashMap.newKeySet() : ids;
+                    ids.add(id);
+                    return ids;
+                });
+            }
+            return new StoredGame(game.copy(), lastMoveAt);
+        });
+        gameIds.add(game.gameID());
+        nextGameId.accumulateAndGet(game.gameID() + 1, Math::max);
+    }
+
+    /** Puts back a token unless it has already expired. */
+    void restoreAuth(AuthData auth, long expiresAt) {
+        if (expiresAt <= clock.getAsLong()) {
+            forgetAuth(auth.authToken());
+            return;
+        }
+        StoredAuth previous = auths.put(auth.authToken(), new StoredAuth(auth, expiresAt));
+        if (previous == null) {
+            tokensByUser.compute(auth.username(), (name, tokens) -> {
+                tokens = tokens == null ? ConcurrentHashMap.newKeySet() : tokens;
+                tokens.add(auth.authToken());
+                return tokens;
+            });
+        }
+    }
+
+    /** Like {@link #deleteAuth}, but a missing token is not an error. */
+    void forgetAuth(String authToken) {
+        StoredAuth removed = auths.remove(authToken);
+        if (removed != null) {
+            unindexAuth(removed.auth());
+        }
+    }
+
+    /** When {@code authToken} expires, in epoch milliseconds, or 0 if it is unknown. */
+    long expiresAt(String authToken) {
+        StoredAuth stored = authToken == null ? null : auths.get(authToken);
+        return stored == null ? 0 : stored.expiresAt();
+    }
+
+    /** When game {@code gameID} last had a move made, or null if never or unknown. */
+    Long lastMoveAt(int gameID) {
+        StoredGame stored = games.get(gameID);
+        return stored == null ? null : stored.lastMoveAt();
+    }
+
+    /** Receives the whole store, one row at a time, for {@link #snapshot}. */
+    interface SnapshotSink {
+        void user(UserData u) throws IOException;
+
+        void game(GameData game, Long lastMoveAt) throws IOException;
+
+        void auth(AuthData auth, long expiresAt) throws IOException;
+    }
+
+    /**
+     * Hands every user, game and unexpired token to {@code sink}. Only
+     * consistent if nothing writes to the store meanwhile.
+     */
+    void snapshot(SnapshotSink sink) throws IOException {
+        for (UserData u : users.values()) {
+            sink.user(u);
+        }
+        for (Integer id : gameIds) {
+            StoredGame stored = games.get(id);
+            if (stored != null) {
+                sink.game(stored.data(), stored.lastMoveAt());
+            }
+        }
+        long now = clock.getAsLong();
+        for (StoredAuth stored : auths.values()) {
+            if (stored.expiresAt() > now) {
+                sink.auth(stored.auth(), stored.expiresAt());
+            }
+        }
+    }
+
+    private Set<Integer> gamesOf(String username) {
+        return username == null ? Set.of() : gamesByPlayer.getOrDefault(username, Set.of());
+    }
+
+    /**
+     * Builds the stored row that follows {@code current}, moving the player index
+     * with any change of seats. Runs under the game's lock in {@link ConcurrentHashMap#compute}.
+     */
+    private StoredGame replace(StoredGame current, GameData next) {
+        int plyCount = next.game().getPlyCount();
+        Long lastMoveAt = plyCount != current.data().game().getPlyCount() ? Long.valueOf(System.currentTimeMillis())
+                : current.lastMoveAt();
+        return replace(current, next, lastMoveAt);
+    }
+
+    /** As above, with the move time given rather than worked out. */
+    private StoredGame replace(StoredGame current, GameData next, Long lastMoveAt) {
+        GameData previous = current.data();
+        Set<String> before = players(previous);
+        Set<String> after = players(next);
+        for (String name : before) {
+            if (!after.contains(name)) {
+                gamesByPlayer.computeIfPresent(name, (n, ids) -> {
+                    ids.remove(previous.gameID());
+                    return ids.isEmpty() ? null : ids;
+                });
+            }
+        }
+        for (String name : after) {
+            if (!before.contains(name)) {
+                gamesByPlayer.compute(name, (n, ids) -> {
+                    ids = ids == null ? ConcurrentHashMap.newKeySet() : ids;
+                    ids.add(previous.gameID());
+                    return ids;
+                });
+            }
+        }
+        return new StoredGame(next, lastMoveAt);
+    }
+
+    private static Set<String> players(GameData game) {
+        Set<String> names = new HashSet<>(2);
+        if (game.whiteUsername() != null) {
+            names.add(game.whiteUsername());
+        }
+        if (game.blackUsername() != null) {
+            names.add(game.blackUsername());
+        }
+        return names;
     }
 }
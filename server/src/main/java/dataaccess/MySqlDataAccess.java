@@ -3,13 +3,17 @@ package dataaccess;
 import model.UserData;
 import model.GameData;
 import model.AuthData;
+import model.GameFilter;
+import model.GameStatus;
+import model.GameSummary;
 import chess.ChessGame;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
-import org.mindrot.jbcrypt.BCrypt;
+import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -17,9 +21,56 @@ public class MySqlDataAccess implements DataAccess {
 
     private static final Gson GSON = new GsonBuilder().serializeNulls().create();
 
+    /**
+     * Connector/J's row-streaming fetch size: rows are read off the socket one
+     * at a time instead of buffering the whole result set in memory.
+     */
+    private static final int STREAMING_FETCH_SIZE = Integer.MIN_VALUE;
+
+    /** MySQL's error code for a unique key violation. */
+    private static final int ER_DUP_ENTRY = 1062;
+
+    /**
+     * Everything an update writes except the version. last_move_at is assigned
+     * before ply_count so it still compares against the old count.
+     */
+    private static final String GAME_COLUMNS = "white_username = ?, black_username = ?, state_json = ?, " +
+            "status = ?, side_to_move = ?, " +
+            "last_move_at = IF(ply_count <> ?, CURRENT_TIMESTAMP, last_move_at), ply_count = ?";
+
+    /**
+     * Reads only the lobby summary columns, which idx_games_summary covers, so
+     * listings never touch state_json.
+     */
+    private static final String SUMMARY_SELECT = "SELECT id, game_name, white_username, black_username, " +
+            "status, side_to_move, ply_count, last_move_at FROM Games";
+
+    /** Where statements get their connection; closing the connection hands it back. */
+    @FunctionalInterface
+    public interface ConnectionSource {
+        Connection get() throws DataAccessException;
+    }
+
+    private final TokenLifetime tokenLifetime;
+    private final ConnectionSource connections;
+
+    public MySqlDataAccess() {
+        this(TokenLifetime.fromProperties());
+    }
+
+    public MySqlDataAccess(TokenLifetime tokenLifetime) {
+        this(tokenLifetime, DatabaseManager::getConnection);
+    }
+
+    /** Runs against another database, such as a read replica, with the primary's schema. */
+    public MySqlDataAccess(TokenLifetime tokenLifetime, ConnectionSource connections) {
+        this.tokenLifetime = tokenLifetime;
+        this.connections = connections;
+    }
+
     @Override
     public void clear() throws DataAccessException {
-        try (var conn = DatabaseManager.getConnection();
+        try (var conn = connections.get();
              var stmt = conn.createStatement()) {
             stmt.execute("DELETE FROM Auths");
             stmt.execute("DELETE FROM Games");
@@ -32,11 +83,10 @@ public class MySqlDataAccess implements DataAccess {
     @Override
     public void createUser(UserData u) throws DataAccessException {
         String sql = "INSERT INTO Users (username, password, email) VALUES (?, ?, ?)";
-        try (var conn = DatabaseManager.getConnection();
+        try (var conn = connections.get();
              var ps = conn.prepareStatement(sql)) {
             ps.setString(1, u.username());
-            String hashedPassword = BCrypt.hashpw(u.password(), BCrypt.gensalt());
-            ps.setString(2, hashedPassword);
+            ps.setString(2, u.password());
             ps.setString(3, u.email());
             ps.executeUpdate();
         } catch (SQLException ex) {
@@ -44,10 +94,55 @@ public class MySqlDataAccess implements DataAccess {
         }
     }
 
+    /**
+     * One transaction of batched inserts. With rewriteBatchedStatements on the
+     * connection URL, the driver sends them as a few multi-row INSERTs.
+     */
+    @Override
+    public void createUsers(List<UserData> users) throws DataAccessException {
+        if (users.isEmpty()) {
+            return;
+        }
+        String sql = "INSERT INTO Users (username, password, email) VALUES (?, ?, ?)";
+        try (var conn = connections.get()) {
+            conn.setAutoCommit(false);
+            try (var ps = conn.prepareStatement(sql)) {
+                for (UserData u : users) {
+                    ps.setString(1, u.username());
+                    ps.setString(2, u.password());
+                    ps.setString(3, u.email());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            conn.commit();
+        } catch (SQLException ex) {
+            if (isDuplicateKey(ex)) {
+                throw new DataAccessException("Username already Taken");
+            }
+            throw new DataAccessException("Failed to create users", ex);
+        }
+    }
+
+    @Override
+    public void updateUserPassword(String username, String passwordHash) throws DataAccessException {
+        String sql = "UPDATE Users SET password = ? WHERE username = ?";
+        try (var conn = connections.get();
+             var ps = conn.prepareStatement(sql)) {
+            ps.setString(1, passwordHash);
+            ps.setString(2, username);
+            if (ps.executeUpdate() == 0) {
+                throw new DataAccessException("User not found");
+            }
+        } catch (SQLException ex) {
+            throw new DataAccessException("Failed to update password", ex);
+        }
+    }
+
     @Override
     public UserData getUser(String username) throws DataAccessException {
         String sql = "SELECT username, password, email FROM Users WHERE username = ?";
-        try (var conn = DatabaseManager.getConnection();
+        try (var conn = connections.get();
              var ps = conn.prepareStatement(sql)) {
             ps.setString(1, username);
             try (var rs = ps.executeQuery()) {
@@ -71,7 +166,7 @@ public class MySqlDataAccess implements DataAccess {
         ChessGame game = new ChessGame();
         String stateJson = GSON.toJson(game);
         String sql = "INSERT INTO Games (game_name, white_username, black_username, state_json) VALUES (?, ?, ?, ?)";
-        try (var conn = DatabaseManager.getConnection();
+        try (var conn = connections.get();
              var ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             ps.setString(1, gameName);
             ps.setNull(2, Types.VARCHAR);
@@ -91,10 +186,47 @@ public class MySqlDataAccess implements DataAccess {
         }
     }
 
+    @Override
+    public List<GameData> createGames(List<String> gameNames) throws DataAccessException {
+        if (gameNames.isEmpty()) {
+            return List.of();
+        }
+        List<ChessGame> boards = new ArrayList<>(gameNames.size());
+        String sql = "INSERT INTO Games (game_name, white_username, black_username, state_json) VALUES (?, ?, ?, ?)";
+        try (var conn = connections.get()) {
+            conn.setAutoCommit(false);
+            List<GameData> created = new ArrayList<>(gameNames.size());
+            try (var ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                for (String gameName : gameNames) {
+                    ChessGame game = new ChessGame();
+                    boards.add(game);
+                    ps.setString(1, gameName);
+                    ps.setNull(2, Types.VARCHAR);
+                    ps.setNull(3, Types.VARCHAR);
+                    ps.setString(4, GSON.toJson(game));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                try (var rs = ps.getGeneratedKeys()) {
+                    for (int i = 0; i < gameNames.size(); i++) {
+                        if (!rs.next()) {
+                            throw new DataAccessException("Failed to retrieve generated game ID");
+                        }
+                        created.add(new GameData(rs.getInt(1), null, null, gameNames.get(i), boards.get(i)));
+                    }
+                }
+            }
+            conn.commit();
+            return created;
+        } catch (SQLException ex) {
+            throw new DataAccessException("Failed to create games", ex);
+        }
+    }
+
     @Override
     public GameData getGame(int gameID) throws DataAccessException {
-        String sql = "SELECT game_name, white_username, black_username, state_json FROM Games WHERE id = ?";
-        try (var conn = DatabaseManager.getConnection();
+        String sql = "SELECT game_name, white_username, black_username, state_json, version FROM Games WHERE id = ?";
+        try (var conn = connections.get();
              var ps = conn.prepareStatement(sql)) {
             ps.setInt(1, gameID);
             try (var rs = ps.executeQuery()) {
@@ -103,7 +235,7 @@ public class MySqlDataAccess implements DataAccess {
                     String white = rs.getString("white_username");
                     String black = rs.getString("black_username");
                     ChessGame game = GSON.fromJson(rs.getString("state_json"), ChessGame.class);
-                    return new GameData(gameID, white, black, name, game);
+                    return new GameData(gameID, white, black, name, game, rs.getInt("version"));
                 } else {
                     throw new DataAccessException("Game not found");
                 }
@@ -115,9 +247,9 @@ public class MySqlDataAccess implements DataAccess {
 
     @Override
     public List<GameData> listGames() throws DataAccessException {
-        String sql = "SELECT id, game_name, white_username, black_username, state_json FROM Games";
+        String sql = "SELECT id, game_name, white_username, black_username, state_json, version FROM Games";
         List<GameData> result = new ArrayList<>();
-        try (var conn = DatabaseManager.getConnection();
+        try (var conn = connections.get();
              var ps = conn.prepareStatement(sql);
              var rs = ps.executeQuery()) {
             while (rs.next()) {
@@ -126,7 +258,99 @@ public class MySqlDataAccess implements DataAccess {
                 String white = rs.getString("white_username");
                 String black = rs.getString("black_username");
                 ChessGame game = GSON.fromJson(rs.getString("state_json"), ChessGame.class);
-                result.add(new GameData(id, white, black, name, game));
+                result.add(new GameData(id, white, black, name, game, rs.getInt("version")));
+            }
+            return result;
+        } catch (SQLException ex) {
+            throw new DataAccessException("Failed to list games", ex);
+        }
+    }
+
+    @Override
+    public List<GameSummary> listGameSummaries(GameQuery query) throws DataAccessException {
+        List<GameSummary> result = new ArrayList<>();
+        try {
+            streamGameSummaries(query, result::add);
+        } catch (IOException ex) {
+            throw new DataAccessException("Failed to list games", ex);
+        }
+        return result;
+    }
+
+    @Override
+    public void streamGameSummaries(GameQuery query, RowSink<GameSummary> sink)
+            throws DataAccessException, IOException {
+        try (var conn = connections.get();
+             var ps = prepareSummaryQuery(conn, query)) {
+            ps.setFetchSize(STREAMING_FETCH_SIZE);
+            try (var rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    sink.accept(readSummary(rs));
+                }
+            }
+        } catch (SQLException ex) {
+            throw new DataAccessException("Failed to list games", ex);
+        }
+    }
+
+    /**
+     * Every filter is a keyset range scan on one of the (column, id) indexes.
+     * MINE unions the white-seat and black-seat scans rather than OR-ing them,
+     * so each side can use its own index.
+     */
+    private static PreparedStatement prepareSummaryQuery(Connection conn, GameQuery query) throws SQLException {
+        String where = switch (query.filter()) {
+            case ALL, MINE -> "";
+            case OPEN -> "status = 'IN_PROGRESS' AND (white_username IS NULL OR black_username IS NULL) AND ";
+            case IN_PROGRESS -> "status = 'IN_PROGRESS' AND white_username IS NOT NULL " +
+                    "AND black_username IS NOT NULL AND ";
+            case FINISHED -> "status = 'FINISHED' AND ";
+        };
+        String page = " id > ? ORDER BY id LIMIT ?";
+        if (query.filter() != GameFilter.MINE) {
+            var ps = conn.prepareStatement(SUMMARY_SELECT + " WHERE " + where + page,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setInt(1, query.afterId());
+            ps.setInt(2, query.limit());
+            return ps;
+        }
+        String sql = "(" + SUMMARY_SELECT + " WHERE white_username = ? AND" + page + ") UNION (" +
+                SUMMARY_SELECT + " WHERE black_username = ? AND" + page + ") ORDER BY id LIMIT ?";
+        var ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        ps.setString(1, query.username());
+        ps.setInt(2, query.afterId());
+        ps.setInt(3, query.limit());
+        ps.setString(4, query.username());
+        ps.setInt(5, query.afterId());
+        ps.setInt(6, query.limit());
+        ps.setInt(7, query.limit());
+        return ps;
+    }
+
+    /**
+     * One backward range scan per seat, on idx_games_white_status and
+     * idx_games_black_status, merged newest first.
+     */
+    @Override
+    public List<GameSummary> listGamesForPlayer(String username, GameStatus status) throws DataAccessException {
+        String where = status == null ? " = ?" : " = ? AND status = ?";
+        String page = " ORDER BY id DESC LIMIT " + GameQuery.MAX_LIMIT;
+        String sql = "(" + SUMMARY_SELECT + " WHERE white_username" + where + page + ") UNION (" +
+                SUMMARY_SELECT + " WHERE black_username" + where + page + ")" + page;
+        List<GameSummary> result = new ArrayList<>();
+        try (var conn = connections.get();
+             var ps = conn.prepareStatement(sql)) {
+            int param = 1;
+            for (int seat = 0; seat < 2; seat++) {
+                ps.setString(param++, username);
+                if (status != null) {
+                    ps.setString(param++, status.name());
+                }
+            }
+            try (var rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(readSummary(rs));
+                }
             }
             return result;
         } catch (SQLException ex) {
@@ -134,42 +358,127 @@ public class MySqlDataAccess implements DataAccess {
         }
     }
 
+    private static DataAccessException missingOrStale(Connection conn, int gameID) throws SQLException {
+        try (var ps = conn.prepareStatement("SELECT 1 FROM Games WHERE id = ?")) {
+            ps.setInt(1, gameID);
+            try (var rs = ps.executeQuery()) {
+                return rs.next() ? new StaleGameException(gameID) : new DataAccessException("Game not found for update");
+            }
+        }
+    }
+
+    private static GameSummary readSummary(ResultSet rs) throws SQLException {
+        String sideToMove = rs.getString("side_to_move");
+        Timestamp lastMoveAt = rs.getTimestamp("last_move_at");
+        return new GameSummary(
+                rs.getInt("id"),
+                rs.getString("white_username"),
+                rs.getString("black_username"),
+                rs.getString("game_name"),
+                GameStatus.valueOf(rs.getString("status")),
+                sideToMove == null ? null : ChessGame.TeamColor.valueOf(sideToMove),
+                rs.getInt("ply_count"),
+                lastMoveAt == null ? null : lastMoveAt.getTime()
+        );
+    }
+
+    /**
+     * Stores {@code updated} only if the row is still at {@code updated.version()},
+     * bumping the version, and throws {@link StaleGameException} if it is not.
+     */
     @Override
     public void updateGame(GameData updated) throws DataAccessException {
-        ChessGame game = updated.game();  // adjust if your getter differs
-        String stateJson = GSON.toJson(game);
-        String sql = "UPDATE Games SET white_username = ?, black_username = ?, state_json = ? WHERE id = ?";
-        try (var conn = DatabaseManager.getConnection();
+        ChessGame game = updated.game();
+        if (game == null) {
+            throw new DataAccessException("Game state missing for update");
+        }
+        String sql = "UPDATE Games SET " + GAME_COLUMNS + ", version = version + 1 WHERE id = ? AND version = ?";
+        try (var conn = connections.get();
              var ps = conn.prepareStatement(sql)) {
-            if (updated.whiteUsername() != null) {
-                ps.setString(1, updated.whiteUsername());
-            } else {
-                ps.setNull(1, Types.VARCHAR);
-            }
-            if (updated.blackUsername() != null) {
-                ps.setString(2, updated.blackUsername());
-            } else {
-                ps.setNull(2, Types.VARCHAR);
-            }
-            ps.setString(3, stateJson);
-            ps.setInt(4, updated.gameID());
+            bindGameColumns(ps, updated);
+            ps.setInt(8, updated.gameID());
+            ps.setInt(9, updated.version());
             int count = ps.executeUpdate();
             if (count == 0) {
-                throw new DataAccessException("Game not found for update");
+                throw missingOrStale(conn, updated.gameID());
             }
         } catch (SQLException ex) {
             throw new DataAccessException("Failed to update game", ex);
         }
     }
 
+    /** Writes all the games in one batched transaction. */
+    @Override
+    public void saveGames(Collection<GameData> games) throws DataAccessException {
+        if (games.isEmpty()) {
+            return;
+        }
+        String sql = "UPDATE Games SET " + GAME_COLUMNS + ", version = ? WHERE id = ?";
+        try (var conn = connections.get()) {
+            conn.setAutoCommit(false);
+            try (var ps = conn.prepareStatement(sql)) {
+                for (GameData game : games) {
+                    if (game.game() == null) {
+                        throw new DataAccessException("Game state missing for update");
+                    }
+                    bindGameColumns(ps, game);
+                    ps.setInt(8, game.version());
+                    ps.setInt(9, game.gameID());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            // An uncommitted transaction is rolled back when the pool takes the connection back.
+            conn.commit();
+        } catch (SQLException ex) {
+            throw new DataAccessException("Failed to save games", ex);
+        }
+    }
+
+    /** True if {@code ex}, or a cause the driver wrapped it in, is a duplicate-key error. */
+    private static boolean isDuplicateKey(SQLException ex) {
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t instanceof SQLException sql && sql.getErrorCode() == ER_DUP_ENTRY) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Binds {@link #GAME_COLUMNS} to parameters 1 through 7. */
+    private static void bindGameColumns(PreparedStatement ps, GameData updated) throws SQLException {
+        ChessGame game = updated.game();
+        if (updated.whiteUsername() != null) {
+            ps.setString(1, updated.whiteUsername());
+        } else {
+            ps.setNull(1, Types.VARCHAR);
+        }
+        if (updated.blackUsername() != null) {
+            ps.setString(2, updated.blackUsername());
+        } else {
+            ps.setNull(2, Types.VARCHAR);
+        }
+        ps.setString(3, GSON.toJson(game));
+        ps.setString(4, GameStatus.of(game).name());
+        if (game.getTeamTurn() != null) {
+            ps.setString(5, game.getTeamTurn().name());
+        } else {
+            ps.setNull(5, Types.VARCHAR);
+        }
+        ps.setInt(6, game.getPlyCount());
+        ps.setInt(7, game.getPlyCount());
+    }
+
     @Override
     public AuthData createAuth(String username) throws DataAccessException {
         String token = UUID.randomUUID().toString();
-        String sql = "INSERT INTO Auths (token, username) VALUES (?, ?)";
-        try (var conn = DatabaseManager.getConnection();
+        String sql = "INSERT INTO Auths (token, username, expires_at) " +
+                "VALUES (?, ?, TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP))";
+        try (var conn = connections.get();
              var ps = conn.prepareStatement(sql)) {
             ps.setString(1, token);
             ps.setString(2, username);
+            ps.setLong(3, tokenLifetime.ttlSeconds());
             ps.executeUpdate();
             return new AuthData(token, username);
         } catch (SQLException ex) {
@@ -179,26 +488,60 @@ public class MySqlDataAccess implements DataAccess {
 
     @Override
     public AuthData getAuth(String authToken) throws DataAccessException {
-        String sql = "SELECT username FROM Auths WHERE token = ?";
-        try (var conn = DatabaseManager.getConnection();
-             var ps = conn.prepareStatement(sql)) {
-            ps.setString(1, authToken);
-            try (var rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return new AuthData(authToken, rs.getString("username"));
-                } else {
-                    throw new DataAccessException("Unauthorized");
+        // Expiry is judged by the database clock, so every server sharing it agrees.
+        String sql = "SELECT username, TIMESTAMPDIFF(SECOND, CURRENT_TIMESTAMP, expires_at) AS remaining " +
+                "FROM Auths WHERE token = ? AND expires_at > CURRENT_TIMESTAMP";
+        try (var conn = connections.get()) {
+            AuthData auth;
+            long remaining;
+            try (var ps = conn.prepareStatement(sql)) {
+                ps.setString(1, authToken);
+                try (var rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        throw new DataAccessException("Unauthorized");
+                    }
+                    auth = new AuthData(authToken, rs.getString("username"));
+                    remaining = rs.getLong("remaining");
                 }
             }
+            if (tokenLifetime.renewalDue(remaining)) {
+                renewAuth(conn, authToken);
+            }
+            return auth;
         } catch (SQLException ex) {
             throw new DataAccessException("Failed to get auth", ex);
         }
     }
 
+    /** Best effort: the token is still valid for now, so a failed renewal must not fail the request. */
+    private void renewAuth(Connection conn, String authToken) {
+        String sql = "UPDATE Auths SET expires_at = TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP) WHERE token = ?";
+        try (var ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, tokenLifetime.ttlSeconds());
+            ps.setString(2, authToken);
+            ps.executeUpdate();
+        } catch (SQLException ex) {
+            System.err.println("Skipped token renewal: " + ex.getMessage());
+        }
+    }
+
+    /** Oldest first along idx_auths_expires, so each batch is a short range at the front of the index. */
+    @Override
+    public int deleteExpiredAuths(int limit) throws DataAccessException {
+        String sql = "DELETE FROM Auths WHERE expires_at <= CURRENT_TIMESTAMP ORDER BY expires_at LIMIT ?";
+        try (var conn = connections.get();
+             var ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, limit);
+            return ps.executeUpdate();
+        } catch (SQLException ex) {
+            throw new DataAccessException("Failed to delete expired auths", ex);
+        }
+    }
+
     @Override
     public void deleteAuth(String authToken) throws DataAccessException {
         String sql = "DELETE FROM Auths WHERE token = ?";
-        try (var conn = DatabaseManager.getConnection();
+        try (var conn = connections.get();
              var ps = conn.prepareStatement(sql)) {
             ps.setString(1, authToken);
             int count = ps.executeUpdate();
@@ -0,0 +1,219 @@
+package dataaccess;
+
+import model.AuthData;
+import model.GameData;
+import model.GameStatus;
+import model.GameSummary;
+import model.UserData;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends lobby and player listings, and user lookups, to a read replica and
+ * everything else to the primary.
+ * <p>
+ * Tokens and games are always read from the primary: a token lookup may renew
+ * the token, and a game read feeds a versioned write that a lagging copy would
+ * only make fail. A user missing from the replica is looked up again on the
+ * primary, since it may just have registered.
+ * <p>
+ * Reads are consistent with the caller's own writes. The request thread binds
+ * its session, the caller's auth token, with {@link #bindSession}; once that
+ * session writes, its reads go to the primary for the next
+ * {@code stickyMillis}, which should exceed the replica's usual lag. A token
+ * created by a write counts as having written, so a newly logged-in client
+ * also reads its own writes. The websocket workers bind the token of the
+ * command they run. Threads with no session bound read listings from the
+ * replica.
+ */
+public class RoutingDataAccess implements DataAccess {
+    private static final int MAX_STICKY_SESSIONS = 100_000;
+
+    private final DataAccess primary;
+    private final DataAccess replica;
+    private final BoundedCache<String, Boolean> recentWriters;
+    private final ThreadLocal<Session> session = new ThreadLocal<>();
+
+    /** The bound session's key, and whether the current request has written. */
+    private static final class Session {
+        private final String key;
+        private boolean wrote;
+
+        private Session(String key) {
+            this.key = key;
+        }
+    }
+
+    public RoutingDataAccess(DataAccess primary, DataAccess replica, long stickyMillis) {
+        this(primary, replica, new BoundedCache<>(MAX_STICKY_SESSIONS, stickyMillis, TimeUnit.MILLISECONDS));
+    }
+
+    RoutingDataAccess(DataAccess primary, DataAccess replica, BoundedCache<String, Boolean> recentWriters) {
+        this.primary = primary;
+        this.replica = replica;
+        this.recentWriters = recentWriters;
+    }
+
+    /** Sticky for {@code chess.replica.stickyMillis}, default 5000. */
+    public static RoutingDataAccess fromProperties(DataAccess primary, DataAccess replica) {
+        return new RoutingDataAccess(primary, replica, Long.getLong("chess.replica.stickyMillis", 5000));
+    }
+
+    /** Binds the calling thread to a session until {@link #unbindSession}; a null key binds an anonymous one. */
+    public void bindSession(String key) {
+        session.set(new Session(key));
+    }
+
+    public void unbindSession() {
+        session.remove();
+    }
+
+    /**
+     * Marks the bound session as having written, for a write that reaches the
+     * primary later from another thread, such as a game held by write-behind.
+     */
+    public void markWritten() {
+        wrote(null);
+    }
+
+    @Override
+    public void clear() throws DataAccessException {
+        wrote(null);
+        primary.clear();
+    }
+
+    @Override
+    public void createUser(UserData u) throws DataAccessException {
+        wrote(null);
+        primary.createUser(u);
+    }
+
+    @Override
+    public void createUsers(List<UserData> users) throws DataAccessException {
+        wrote(null);
+        primary.createUsers(users);
+    }
+
+    @Override
+    public UserData getUser(String username) throws DataAccessException {
+        if (readsPrimary()) {
+            return primary.getUser(username);
+        }
+        try {
+            return replica.getUser(username);
+        } catch (DataAccessException e) {
+            if (e.getMessage() == null || !e.getMessage().contains("not found")) {
+                throw e;
+            }
+            return primary.getUser(username);
+        }
+    }
+
+    @Override
+    public void updateUserPassword(String username, String passwordHash) throws DataAccessException {
+        wrote(null);
+        primary.updateUserPassword(username, passwordHash);
+    }
+
+    @Override
+    public GameData createGame(String gameName) throws DataAccessException {
+        wrote(null);
+        return primary.createGame(gameName);
+    }
+
+    @Override
+    public List<GameData> createGames(List<String> gameNames) throws DataAccessException {
+        wrote(null);
+        return primary.createGames(gameNames);
+    }
+
+    @Override
+    public GameData getGame(int gameID) throws DataAccessException {
+        return primary.getGame(gameID);
+    }
+
+    @Override
+    public List<GameData> listGames() throws DataAccessException {
+        return reads().listGames();
+    }
+
+    @Override
+    public List<GameSummary> listGameSummaries(GameQuery query) throws DataAccessException {
+        return reads().listGameSummaries(query);
+    }
+
+    @Override
+    public void streamGameSummaries(GameQuery query, RowSink<GameSummary> sink)
+            throws DataAccessException, IOException {
+        reads().streamGameSummaries(query, sink);
+    }
+
+    @Override
+    public List<GameSummary> listGamesForPlayer(String username, GameStatus status) throws DataAccessException {
+        return reads().listGamesForPlayer(username, status);
+    }
+
+    @Override
+    public void updateGame(GameData updated) throws DataAccessException {
+        wrote(null);
+        primary.updateGame(updated);
+    }
+
+    @Override
+    public void saveGames(Collection<GameData> games) throws DataAccessException {
+        wrote(null);
+        primary.saveGames(games);
+    }
+
+    @Override
+    public AuthData createAuth(String username) throws DataAccessException {
+        wrote(null);
+        AuthData created = primary.createAuth(username);
+        // The client will present this token next, as a session of its own.
+        wrote(created.authToken());
+        return created;
+    }
+
+    @Override
+    public AuthData getAuth(String authToken) throws DataAccessException {
+        return primary.getAuth(authToken);
+    }
+
+    @Override
+    public void deleteAuth(String authToken) throws DataAccessException {
+        wrote(null);
+        primary.deleteAuth(authToken);
+    }
+
+    @Override
+    public int deleteExpiredAuths(int limit) throws DataAccessException {
+        return primary.deleteExpiredAuths(limit);
+    }
+
+    private DataAccess reads() {
+        return readsPrimary() ? primary : replica;
+    }
+
+    private boolean readsPrimary() {
+        Session current = session.get();
+        if (current == null) {
+            return false;
+        }
+        return current.wrote || (current.key != null && recentWriters.get(current.key) != null);
+    }
+
+    /** Marks {@code key}, or the bound session when null, as having just written. */
+    private void wrote(String key) {
+        Session current = session.get();
+        if (key == null && current != null) {
+            current.wrote = true;
+            key = current.key;
+        }
+        if (key != null) {
+            recentWriters.put(key, Boolean.TRUE);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package dataaccess;
+
+import java.io.IOException;
+
+/**
+ * Receives rows one at a time from a streaming query, so callers can write
+ * them out without collecting the whole result first.
+ */
+@FunctionalInterface
+public interface RowSink<T> {
+    void accept(T row) throws IOException;
+}
@@ -0,0 +1,319 @@
+package dataaccess;
+
+import model.AuthData;
+import model.GameData;
+import model.GameStatus;
+import model.GameSummary;
+import model.UserData;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spreads games over several stores by game ID, keeping users and tokens on
+ * a single global store.
+ * <p>
+ * Each shard numbers its own games from 1. Local game {@code l} of shard
+ * {@code s}, out of {@code n}, is seen by callers as game
+ * {@code (l - 1) * n + s + 1}, so IDs never collide, every ID names its shard,
+ * and IDs from all shards interleave in creation order. New games go to the
+ * shards in turn.
+ * <p>
+ * Listings ask every shard at once and merge the results. A lobby page asks
+ * each shard for a full page past the same cursor, translated into the
+ * shard's own numbering, and keeps the lowest IDs; a shard can be asked for
+ * more than it contributes, but never for less.
+ */
+public class ShardedDataAccess implements DataAccess, AutoCloseable {
+    private final DataAccess global;
+    private final List<DataAccess> shards;
+    private final ExecutorService executor;
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    public ShardedDataAccess(DataAccess global, List<DataAccess> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("at least one shard is required");
+        }
+        this.global = global;
+        this.shards = List.copyOf(shards);
+        var count = new AtomicInteger();
+        var pool = new ThreadPoolExecutor(shards.size(), shards.size(), 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "shard-query-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = pool;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    @Override
+    public void clear() throws DataAccessException {
+        global.clear();
+        scatter((shard, store) -> {
+            store.clear();
+            return null;
+        });
+    }
+
+    @Override
+    public void createUser(UserData u) throws DataAccessException {
+        global.createUser(u);
+    }
+
+    @Override
+    public void createUsers(List<UserData> users) throws DataAccessException {
+        global.createUsers(users);
+    }
+
+    @Override
+    public UserData getUser(String username) throws DataAccessException {
+        return global.getUser(username);
+    }
+
+    @Override
+    public void updateUserPassword(String username, String passwordHash) throws DataAccessException {
+        global.updateUserPassword(username, passwordHash);
+    }
+
+    @Override
+    public GameData createGame(String gameName) throws DataAccessException {
+        int shard = Math.floorMod(nextShard.getAndIncrement(), shards.size());
+        return toGlobal(shard, shards.get(shard).createGame(gameName));
+    }
+
+    /**
+     * Deals the names out to the shards in turn and creates each shard's share
+     * in parallel. A failure on one shard does not undo the games created on
+     * the others.
+     */
+    @Override
+    public List<GameData> createGames(List<String> gameNames) throws DataAccessException {
+        int n = shards.size();
+        int first = Math.floorMod(nextShard.getAndAdd(gameNames.size()), n);
+        List<List<String>> perShard = new ArrayList<>();
+        for (int s = 0; s < n; s++) {
+            perShard.add(new ArrayList<>());
+        }
+        for (int i = 0; i < gameNames.size(); i++) {
+            perShard.get((first + i) % n).add(gameNames.get(i));
+        }
+        List<List<GameData>> created = scatter((shard, store) ->
+                perShard.get(shard).isEmpty() ? List.of() : store.createGames(perShard.get(shard)));
+
+        int[] taken = new int[n];
+        List<GameData> result = new ArrayList<>(gameNames.size());
+        for (int i = 0; i < gameNames.size(); i++) {
+            int shard = (first + i) % n;
+            result.add(toGlobal(shard, created.get(shard).get(taken[shard]++)));
+        }
+        return result;
+    }
+
+    @Override
+    public GameData getGame(int gameID) throws DataAccessException {
+        int shard = shardOf(gameID);
+        return toGlobal(shard, shards.get(shard).getGame(localId(gameID)));
+    }
+
+    @Override
+    public List<GameData> listGames() throws DataAccessException {
+        List<GameData> merged = new ArrayList<>();
+        List<List<GameData>> perShard = scatter((shard, store) -> store.listGames().stream()
+                .map(game -> toGlobal(shard, game))
+                .toList());
+        perShard.forEach(merged::addAll);
+        merged.sort(Comparator.comparingInt(GameData::gameID));
+        return merged;
+    }
+
+    @Override
+    public List<GameSummary> listGameSummaries(GameQuery query) throws DataAccessException {
+        List<List<GameSummary>> perShard = scatter((shard, store) -> {
+            var local = new GameQuery(query.filter(), query.username(), localCursor(shard, query.afterId()),
+                    query.limit());
+            return store.listGameSummaries(local).stream()
+                    .map(summary -> toGlobal(shard, summary))
+                    .toList();
+        });
+        return merge(perShard, Comparator.comparingInt(GameSummary::gameID), query.limit());
+    }
+
+    @Override
+    public void streamGameSummaries(GameQuery query, RowSink<GameSummary> sink)
+            throws DataAccessException, IOException {
+        // A page is at most GameQuery.MAX_LIMIT rows, and merging needs every shard's first row anyway.
+        for (GameSummary summary : listGameSummaries(query)) {
+            sink.accept(summary);
+        }
+    }
+
+    @Override
+    public List<GameSummary> listGamesForPlayer(String username, GameStatus status) throws DataAccessException {
+        List<List<GameSummary>> perShard = scatter((shard, store) -> store.listGamesForPlayer(username, status)
+                .stream()
+                .map(summary -> toGlobal(shard, summary))
+                .toList());
+        return merge(perShard, Comparator.comparingInt(GameSummary::gameID).reversed(), GameQuery.MAX_LIMIT);
+    }
+
+    @Override
+    public void updateGame(GameData updated) throws DataAccessException {
+        int shard = shardOf(updated.gameID());
+        try {
+            shards.get(shard).updateGame(toLocal(updated));
+        } catch (StaleGameException e) {
+            // The shard's message names its own ID, which means nothing to the caller.
+            throw new StaleGameException(updated.gameID());
+        }
+    }
+
+    @Override
+    public void saveGames(Collection<GameData> games) throws DataAccessException {
+        if (games.isEmpty()) {
+            return;
+        }
+        List<List<GameData>> perShard = new ArrayList<>();
+        for (int s = 0; s < shards.size(); s++) {
+            perShard.add(new ArrayList<>());
+        }
+        for (GameData game : games) {
+            perShard.get(shardOf(game.gameID())).add(toLocal(game));
+        }
+        scatter((shard, store) -> {
+            if (!perShard.get(shard).isEmpty()) {
+                store.saveGames(perShard.get(shard));
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public AuthData createAuth(String username) throws DataAccessException {
+        return global.createAuth(username);
+    }
+
+    @Override
+    public AuthData getAuth(String authToken) throws DataAccessException {
+        return global.getAuth(authToken);
+    }
+
+    @Override
+    public void deleteAuth(String authToken) throws DataAccessException {
+        global.deleteAuth(authToken);
+    }
+
+    @Override
+    public int deleteExpiredAuths(int limit) throws DataAccessException {
+        return global.deleteExpiredAuths(limit);
+    }
+
+    int shardOf(int gameID) {
+        return Math.floorMod(gameID - 1, shards.size());
+    }
+
+    private int localId(int gameID) {
+        return Math.floorDiv(gameID - 1, shards.size()) + 1;
+    }
+
+    private int globalId(int shard, int localId) {
+        return (localId - 1) * shards.size() + shard + 1;
+    }
+
+    /** The highest local ID on {@code shard} that is not after global ID {@code afterId}. */
+    private int localCursor(int shard, int afterId) {
+        return Math.max(0, Math.floorDiv(afterId - shard - 1, shards.size()) + 1);
+    }
+
+    private GameData toGlobal(int shard, GameData game) {
+        return new GameData(globalId(shard, game.gameID()), game.whiteUsername(), game.blackUsername(),
+                game.gameName(), game.game(), game.version());
+    }
+
+    private GameSummary toGlobal(int shard, GameSummary s) {
+        return new GameSummary(globalId(shard, s.gameID()), s.whiteUsername(), s.blackUsername(), s.gameName(),
+                s.status(), s.sideToMove(), s.plyCount(), s.lastMoveAt());
+    }
+
+    private GameData toLocal(GameData game) {
+        return new GameData(localId(game.gameID()), game.whiteUsername(), game.blackUsername(),
+                game.gameName(), game.game(), game.version());
+    }
+
+    /** Merges lists each already sorted by {@code order}, keeping the first {@code limit}. */
+    private static List<GameSummary> merge(List<List<GameSummary>> sorted, Comparator<GameSummary> order,
+                                           int limit) {
+        int[] next = new int[sorted.size()];
+        List<GameSummary> result = new ArrayList<>();
+        while (result.size() < limit) {
+            int best = -1;
+            for (int s = 0; s < sorted.size(); s++) {
+                if (next[s] < sorted.get(s).size() && (best < 0 ||
+                        order.compare(sorted.get(s).get(next[s]), sorted.get(best).get(next[best])) < 0)) {
+                    best = s;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            result.add(sorted.get(best).get(next[best]++));
+        }
+        return result;
+    }
+
+    @FunctionalInterface
+    private interface ShardCall<T> {
+        T call(int shard, DataAccess store) throws DataAccessException;
+    }
+
+    /**
+     * Runs {@code call} against every shard at once and returns the results in
+     * shard order. Every call is waited for before the first failure is thrown.
+     */
+    private <T> List<T> scatter(ShardCall<T> call) throws DataAccessException {
+        List<Future<T>> pending = new ArrayList<>();
+        for (int s = 0; s < shards.size(); s++) {
+            int shard = s;
+            pending.add(executor.submit(() -> call.call(shard, shards.get(shard))));
+        }
+        Object[] results = new Object[pending.size()];
+        DataAccessException failure = null;
+        for (int s = 0; s < pending.size(); s++) {
+            try {
+                results[s] = pending.get(s).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                pending.forEach(f -> f.cancel(true));
+                throw new DataAccessException("Interrupted waiting for shard " + s, e);
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof DataAccessException dae
+                            ? dae
+                            : new DataAccessException("Shard " + s + " failed", e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        @SuppressWarnings("unchecked")
+        List<T> list = (List<T>) Arrays.asList(results);
+        return list;
+    }
+}
@@ -0,0 +1,11 @@
+package dataaccess;
+
+/**
+ * Thrown by {@link DataAccess#updateGame} when the game changed after the
+ * caller read it. The caller should read the game again and redo its change.
+ */
+public class StaleGameException extends DataAccessException {
+    public StaleGameException(int gameID) {
+        super("Game " + gameID + " was modified concurrently");
+    }
+}
@@ -0,0 +1,24 @@
+package dataaccess;
+
+/**
+ * How long an auth token lives. Each use pushes expiry back to a full
+ * {@code ttlSeconds} away, but the new expiry is only written once the last
+ * write is {@code renewAfterSeconds} old, so a busy session costs one write
+ * per interval instead of one per request.
+ */
+public record TokenLifetime(long ttlSeconds, long renewAfterSeconds) {
+
+    /**
+     * Read from {@code chess.auth.ttlSeconds} (default one day) and
+     * {@code chess.auth.renewSeconds} (default 15 minutes).
+     */
+    public static TokenLifetime fromProperties() {
+        return new TokenLifetime(Long.getLong("chess.auth.ttlSeconds", 86_400),
+                Long.getLong("chess.auth.renewSeconds", 900));
+    }
+
+    /** True once a token with {@code remainingSeconds} left was last renewed at least an interval ago. */
+    public boolean renewalDue(long remainingSeconds) {
+        return remainingSeconds <= ttlSeconds - renewAfterSeconds;
+    }
+}
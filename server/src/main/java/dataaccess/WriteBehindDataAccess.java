@@ -0,0 +1,406 @@
+package dataaccess;
+
+import model.AuthData;
+import model.GameData;
+import model.GameStatus;
+import model.GameSummary;
+import model.UserData;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps games in memory as the authoritative copy and writes changed games to
+ * the wrapped store in the background, many games per transaction, so a move
+ * does not wait for the database.
+ * <p>
+ * Changes the lobby can see, seats and whether the game is over, are flushed
+ * before {@link #updateGame} returns, so a listing fetched afterwards shows
+ * them. If that flush fails, the change waits for the writer like any other,
+ * and the listener given to {@link #onLobbySaved} runs once it is saved, so
+ * that listings cached in the meantime can be invalidated. Moves within a
+ * game reach the database on the next flush.
+ * <p>
+ * Unsaved changes are bounded in count and age: once {@code maxDirty} games
+ * are waiting, or the last successful flush is older than {@code maxLagMillis},
+ * an update first flushes itself and fails if that flush fails. {@link #close}
+ * stops the writer and flushes what is left.
+ * <p>
+ * Games stay in memory once read, up to {@code maxResident} of them; past
+ * that, each flush drops the least recently used games that have nothing
+ * waiting to be written, to be read again from the store when next wanted.
+ * Only one server may write to the database in this mode, since it never
+ * rereads a game it already holds.
+ */
+public class WriteBehindDataAccess implements DataAccess, AutoCloseable {
+    private static final int DEFAULT_MAX_RESIDENT = 10_000;
+
+    private final DataAccess delegate;
+    private final ConcurrentHashMap<Integer, Held> games = new ConcurrentHashMap<>();
+    private final Set<Integer> dirty = ConcurrentHashMap.newKeySet();
+    /** Games whose lobby-visible change is held in memory because its own flush failed. */
+    private final Set<Integer> lobbyUnsaved = ConcurrentHashMap.newKeySet();
+    private volatile Runnable lobbySaved = () -> { };
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final int maxDirty;
+    private final int maxResident;
+    private final long maxLagNanos;
+    private final ScheduledExecutorService writer;
+    private volatile long lastFlushNanos = System.nanoTime();
+    private volatile boolean closed;
+    private boolean failing;
+
+    /** A game held in memory, and when it was last read or written. */
+    private static final class Held {
+        private final GameData data;
+        private volatile long lastUsedNanos = System.nanoTime();
+
+        private Held(GameData data) {
+            this.data = data;
+        }
+
+        private GameData touch() {
+            lastUsedNanos = System.nanoTime();
+            return data;
+        }
+    }
+
+    public WriteBehindDataAccess(DataAccess delegate, long flushIntervalMillis, int maxDirty, long maxLagMillis) {
+        this(delegate, flushIntervalMillis, maxDirty, maxLagMillis, DEFAULT_MAX_RESIDENT);
+    }
+
+    /**
+     * @param flushIntervalMillis pause between background flushes; zero or less
+     *                            starts no writer, leaving flushing to the caller
+     */
+    public WriteBehindDataAccess(DataAccess delegate, long flushIntervalMillis, int maxDirty, long maxLagMillis,
+                                 int maxResident) {
+        this.delegate = delegate;
+        this.maxDirty = maxDirty;
+        this.maxResident = maxResident;
+        this.maxLagNanos = TimeUnit.MILLISECONDS.toNanos(maxLagMillis);
+        if (flushIntervalMillis > 0) {
+            writer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "game-writer");
+                t.setDaemon(true);
+                return t;
+            });
+            writer.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            writer = null;
+        }
+    }
+
+    /**
+     * Configured from {@code chess.writeBehind.intervalMillis} (default 10),
+     * {@code chess.writeBehind.maxDirty} (default 1000),
+     * {@code chess.writeBehind.maxLagMillis} (default 1000) and
+     * {@code chess.writeBehind.maxResident} (default 10000).
+     */
+    public static WriteBehindDataAccess fromProperties(DataAccess delegate) {
+        return new WriteBehindDataAccess(delegate, Long.getLong("chess.writeBehind.intervalMillis", 10),
+                Integer.getInteger("chess.writeBehind.maxDirty", 1000),
+                Long.getLong("chess.writeBehind.maxLagMillis", 1000),
+                Integer.getInteger("chess.writeBehind.maxResident", DEFAULT_MAX_RESIDENT));
+    }
+
+    /** Runs {@code listener} after a flush saves a lobby change that {@link #updateGame} could not. */
+    public void onLobbySaved(Runnable listener) {
+        lobbySaved = listener;
+    }
+
+    /** Number of games changed in memory but not yet written. */
+    public int pending() {
+        return dirty.size();
+    }
+
+    /** Number of games held in memory. */
+    public int residentCount() {
+        return games.size();
+    }
+
+    /** Writes every changed game in one batch, then trims the games held to {@code maxResident}. */
+    public void flush() throws DataAccessException {
+        boolean lobbyChanged = false;
+        flushLock.lock();
+        try {
+            List<GameData> batch = new ArrayList<>();
+            for (Integer id : dirty) {
+                Held held = games.get(id);
+                if (held != null) {
+                    batch.add(held.data);
+                } else {
+                    dirty.remove(id);
+                }
+            }
+            delegate.saveGames(batch);
+            for (GameData written : batch) {
+                lobbyChanged |= lobbyUnsaved.remove(written.gameID());
+                // Still dirty if it changed again while the batch was being written.
+                games.computeIfPresent(written.gameID(), (id, current) -> {
+                    if (current.data.version() == written.version()) {
+                        dirty.remove(id);
+                    }
+                    return current;
+                });
+            }
+            lastFlushNanos = System.nanoTime();
+            evictClean();
+        } finally {
+            flushLock.unlock();
+        }
+        if (lobbyChanged) {
+            lobbySaved.run();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (writer != null) {
+            writer.shutdown();
+            try {
+                writer.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            flush();
+        } catch (DataAccessException e) {
+            System.err.println("Could not save " + dirty.size() + " games on shutdown: " + e.getMessage());
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+            if (failing) {
+                System.err.println("Write-behind flushes are succeeding again");
+                failing = false;
+            }
+        } catch (DataAccessException | RuntimeException e) {
+            // Logged once per outage; the writer keeps retrying on schedule.
+            if (!failing) {
+                System.err.println("Write-behind flush failed: " + e.getMessage());
+                failing = true;
+            }
+        }
+    }
+
+    @Override
+    public void clear() throws DataAccessException {
+        flushLock.lock();
+        try {
+            games.clear();
+            dirty.clear();
+            lobbyUnsaved.clear();
+            delegate.clear();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public void createUser(UserData u) throws DataAccessException {
+        delegate.createUser(u);
+    }
+
+    @Override
+    public void createUsers(List<UserData> users) throws DataAccessException {
+        delegate.createUsers(users);
+    }
+
+    @Override
+    public UserData getUser(String username) throws DataAccessException {
+        return delegate.getUser(username);
+    }
+
+    @Override
+    public void updateUserPassword(String username, String passwordHash) throws DataAccessException {
+        delegate.updateUserPassword(username, passwordHash);
+    }
+
+    @Override
+    public GameData createGame(String gameName) throws DataAccessException {
+        return delegate.createGame(gameName);
+    }
+
+    @Override
+    public List<GameData> createGames(List<String> gameNames) throws DataAccessException {
+        return delegate.createGames(gameNames);
+    }
+
+    @Override
+    public GameData getGame(int gameID) throws DataAccessException {
+        if (closed) {
+            return delegate.getGame(gameID);
+        }
+        return resident(gameID).touch().copy();
+    }
+
+    @Override
+    public List<GameData> listGames() throws DataAccessException {
+        List<GameData> stored = delegate.listGames();
+        List<GameData> result = new ArrayList<>(stored.size());
+        for (GameData game : stored) {
+            Held held = games.get(game.gameID());
+            result.add(held != null ? held.data.copy() : game);
+        }
+        return result;
+    }
+
+    /** Lobby rows come from the store; only a game's move count and side to move can lag behind. */
+    @Override
+    public List<GameSummary> listGameSummaries(GameQuery query) throws DataAccessException {
+        return delegate.listGameSummaries(query);
+    }
+
+    @Override
+    public void streamGameSummaries(GameQuery query, RowSink<GameSummary> sink)
+            throws DataAccessException, IOException {
+        delegate.streamGameSummaries(query, sink);
+    }
+
+    @Override
+    public List<GameSummary> listGamesForPlayer(String username, GameStatus status) throws DataAccessException {
+        return delegate.listGamesForPlayer(username, status);
+    }
+
+    @Override
+    public void updateGame(GameData updated) throws DataAccessException {
+        if (closed) {
+            delegate.updateGame(updated);
+            return;
+        }
+        if (dirty.size() >= maxDirty || (!dirty.isEmpty() && System.nanoTime() - lastFlushNanos > maxLagNanos)) {
+            // Over the durability bound: catch up first, and refuse the update if the store is down.
+            flush();
+        }
+        GameData stored = updated.copy();
+        boolean[] outcome = new boolean[2];
+        Held result;
+        do {
+            // A game not held is read back; an evicted game was clean, so the store has all it held.
+            GameData loaded = games.containsKey(updated.gameID()) ? null : delegate.getGame(updated.gameID());
+            // Null only if the game was evicted between the check and the compute.
+            result = games.compute(updated.gameID(), (id, held) -> apply(id, held, loaded, updated, stored, outcome));
+        } while (result == null);
+        if (!outcome[0]) {
+            throw new StaleGameException(updated.gameID());
+        }
+        if (outcome[1]) {
+            try {
+                flush();
+            } catch (DataAccessException e) {
+                // The change is held in memory and the writer will retry it like any other. The caller
+                // marks the lobby changed now, so the writer marks it again once the change is visible.
+                lobbyUnsaved.add(updated.gameID());
+                System.err.println("Could not flush lobby change to game " + updated.gameID() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void saveGames(Collection<GameData> saved) throws DataAccessException {
+        flushLock.lock();
+        try {
+            for (GameData game : saved) {
+                games.computeIfPresent(game.gameID(), (id, current) -> {
+                    dirty.remove(id);
+                    return new Held(game.copy());
+                });
+            }
+            delegate.saveGames(saved);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public AuthData createAuth(String username) throws DataAccessException {
+        return delegate.createAuth(username);
+    }
+
+    @Override
+    public AuthData getAuth(String authToken) throws DataAccessException {
+        return delegate.getAuth(authToken);
+    }
+
+    @Override
+    public void deleteAuth(String authToken) throws DataAccessException {
+        delegate.deleteAuth(authToken);
+    }
+
+    @Override
+    public int deleteExpiredAuths(int limit) throws DataAccessException {
+        return delegate.deleteExpiredAuths(limit);
+    }
+
+    /** The body of {@link #updateGame}'s compute: the version check and the change, under the game's lock. */
+    private Held apply(int id, Held held, GameData loaded, GameData updated, GameData stored, boolean[] outcome) {
+        GameData current = held != null ? held.data : loaded;
+        if (current == null) {
+            return null;
+        }
+        if (current.version() != updated.version()) {
+            return held != null ? held : new Held(current);
+        }
+        outcome[0] = true;
+        outcome[1] = !Objects.equals(current.whiteUsername(), stored.whiteUsername())
+                || !Objects.equals(current.blackUsername(), stored.blackUsername())
+                || GameStatus.of(current.game()) != GameStatus.of(stored.game());
+        dirty.add(id);
+        return new Held(new GameData(id, stored.whiteUsername(), stored.blackUsername(), stored.gameName(),
+                stored.game(), stored.version() + 1));
+    }
+
+    private Held resident(int gameID) throws DataAccessException {
+        Held held = games.get(gameID);
+        if (held != null) {
+            return held;
+        }
+        Held loaded = new Held(delegate.getGame(gameID));
+        held = games.putIfAbsent(gameID, loaded);
+        return held != null ? held : loaded;
+    }
+
+    /**
+     * Drops the least recently used clean games beyond {@code maxResident}.
+     * Runs under the flush lock; a game that changes meanwhile is kept, since
+     * each removal checks, under the game's own lock, that it is still the
+     * same clean copy.
+     */
+    private void evictClean() {
+        int excess = games.size() - maxResident;
+        if (excess <= 0) {
+            return;
+        }
+        List<Map.Entry<Integer, Held>> clean = new ArrayList<>();
+        for (var entry : games.entrySet()) {
+            if (!dirty.contains(entry.getKey())) {
+                clean.add(entry);
+            }
+        }
+        clean.sort(Comparator.comparingLong(entry -> entry.getValue().lastUsedNanos));
+        for (var entry : clean.subList(0, Math.min(excess, clean.size()))) {
+            Held seen = entry.getValue();
+            games.computeIfPresent(entry.getKey(), (id, held) -> held == seen && !dirty.contains(id) ? null : held);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package server;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import dataaccess.RowSink;
+import model.GameSummary;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the {"games": [...]} body of GET /game straight to the response
+ * stream as rows arrive. Nothing is written before the first row, so an
+ * authorization failure can still produce a normal error response.
+ */
+class GameListWriter implements RowSink<GameSummary> {
+    private final Gson gson;
+    private final HttpServletResponse response;
+    private JsonWriter writer;
+
+    GameListWriter(Gson gson, HttpServletResponse response) {
+        this.gson = gson;
+        this.response = response;
+    }
+
+    @Override
+    public void accept(GameSummary game) throws IOException {
+        open();
+        gson.toJson(game, GameSummary.class, writer);
+    }
+
+    boolean isStarted() {
+        return writer != null;
+    }
+
+    void finish(Integer nextAfter) throws IOException {
+        open();
+        writer.endArray();
+        if (nextAfter != null) {
+            writer.name("nextAfter").value(nextAfter);
+        }
+        writer.endObject();
+        writer.flush();
+    }
+
+    private void open() throws IOException {
+        if (writer == null) {
+            writer = new JsonWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+            writer.beginObject().name("games").beginArray();
+        }
+    }
+}
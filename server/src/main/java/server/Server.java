@@ -2,71 +2,353 @@ package server;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
+import dataaccess.AuthCachingDataAccess;
+import dataaccess.AuthSweeper;
 import dataaccess.DataAccess;
 import dataaccess.DataAccessException;
+import dataaccess.FileDataAccess;
 import dataaccess.MySqlDataAccess;
+import dataaccess.RoutingDataAccess;
+import dataaccess.ShardedDataAccess;
+import dataaccess.TokenLifetime;
+import dataaccess.WriteBehindDataAccess;
 import dataaccess.DatabaseManager;
+import dataaccess.GameCachingDataAccess;
+import dataaccess.GameQuery;
+import model.GameFilter;
+import model.GameStatus;
+import service.BatchCreateGamesRequest;
+import service.BatchRegisterRequest;
 import service.CreateGameRequest;
 import service.CreateGameResult;
 import service.GameService;
 import service.GamesResult;
 import service.JoinGameRequest;
+import service.LobbyVersion;
+import service.PasswordHasher;
 import service.LoginRequest;
 import service.LoginResult;
 import service.RegisterRequest;
 import service.UserService;
+import spark.Request;
+import spark.Route;
 import spark.Spark;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
+import server.metrics.InstrumentedDataAccess;
+import server.metrics.LatencyHistogram;
+import server.metrics.MetricsRegistry;
+import server.metrics.TraceRecorder;
 import server.websocket.WebSocketHandler;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static spark.Spark.*;
 
 public class Server {
+    /** Set to true to run handlers on virtual threads; see {@link VirtualThreadJettyFactory}. */
+    public static final String VIRTUAL_THREADS_PROPERTY = "chess.virtualThreads";
+    /** Token that admin endpoints expect in the Authorization header; they are closed while it is unset. */
+    public static final String ADMIN_TOKEN_PROPERTY = "chess.admin.token";
+    /** Set to true to hold games in memory and save them in the background; see {@link WriteBehindDataAccess}. */
+    public static final String WRITE_BEHIND_PROPERTY = "chess.writeBehind";
+    /** Set to a file to keep all data in memory, journaled there, instead of in MySQL; see {@link FileDataAccess}. */
+    public static final String FILE_STORE_PROPERTY = "chess.file.path";
+    /**
+     * Set to true to exercise move handling for {@code chess.warmup.millis}
+     * (default 500) at startup; GET /ready answers 503 until it is done.
+     */
+    public static final String WARMUP_PROPERTY = "chess.warmup";
+
     private final Gson gson = new Gson();
-    private final DataAccess dao = new MySqlDataAccess();
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final MetricsRegistry.Histograms routeLatency = metrics.histograms("chess_http_request_seconds",
+            "Time to handle an HTTP request, by route.", "route");
+    private final TraceRecorder traces = TraceRecorder.fromProperties(metrics);
+    private final FileDataAccess fileStore = System.getProperty(FILE_STORE_PROPERTY) != null ? openFileStore() : null;
+    private final ShardedDataAccess sharded = fileStore == null && DatabaseManager.shardCount() > 0
+            ? shardedStore()
+            : null;
+    private final RoutingDataAccess routing = fileStore == null && sharded == null && DatabaseManager.hasReplica()
+            ? RoutingDataAccess.fromProperties(new MySqlDataAccess(),
+                    new MySqlDataAccess(TokenLifetime.fromProperties(), DatabaseManager::getReplicaConnection))
+            : null;
+    private final DataAccess store = new InstrumentedDataAccess(backingStore(), metrics);
+    // The file store already holds everything in memory, so it needs neither write-behind nor a game cache.
+    private final WriteBehindDataAccess writeBehind = Boolean.getBoolean(WRITE_BEHIND_PROPERTY) && fileStore == null
+            ? WriteBehindDataAccess.fromProperties(store)
+            : null;
+    // Write-behind already holds the games in use, so the game cache only fronts the database directly.
+    private final GameCachingDataAccess gameCache = writeBehind == null && fileStore == null
+            ? GameCachingDataAccess.fromProperties(store)
+            : null;
+    private final AuthCachingDataAccess authCache = new AuthCachingDataAccess(
+            writeBehind != null ? writeBehind : gameCache != null ? gameCache : store);
+    private final DataAccess dao = authCache;
+    private final LobbyVersion lobby = new LobbyVersion();
+    private ExecutorService commandExecutor;
+    private AuthSweeper authSweeper;
+    private final Thread writeBehindShutdown;
+    private volatile boolean databaseReady;
+    private CompletableFuture<Void> warmup = CompletableFuture.completedFuture(null);
 
+    public Server() {
+        if (writeBehind != null) {
+            // A seat or result change saved by the writer, after its own flush failed, changes the listing again.
+            writeBehind.onLobbySaved(lobby::bump);
+            // Held games must reach the database even if the process is stopped without stop().
+            writeBehindShutdown = new Thread(writeBehind::close, "game-writer-shutdown");
+            Runtime.getRuntime().addShutdownHook(writeBehindShutdown);
+        } else {
+            writeBehindShutdown = null;
+        }
+    }
+
+    /**
+     * Starts the server and returns its port once it can serve requests. The
+     * database is set up, and the optional warm-up run, on their own threads
+     * while the HTTP listener starts; requests that arrive before the
+     * database is ready are turned away with a 503.
+     */
     public int run(int desiredPort) {
-        try {
-            DatabaseManager.createDatabase();
-            DatabaseManager.initSchema();
-        } catch (Exception e) {
-            System.err.println("Failed to create database: " + e.getMessage());
-            e.printStackTrace();
-            throw new RuntimeException(e);
+        databaseReady = false;
+        CompletableFuture<Void> database = fileStore == null
+                ? CompletableFuture.runAsync(Server::initDatabase, r -> startThread(r, "startup-database"))
+                : CompletableFuture.completedFuture(null);
+        if (Boolean.getBoolean(WARMUP_PROPERTY)) {
+            long budget = Long.getLong("chess.warmup.millis", 500);
+            warmup = CompletableFuture.runAsync(() -> Warmup.run(gson, budget), r -> startThread(r, "startup-warmup"));
         }
+        // Registered on every run so a server started without the option gets Spark's default pool back.
+        EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY, Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY)
+                ? new EmbeddedJettyFactory(new VirtualThreadJettyFactory())
+                : new EmbeddedJettyFactory());
         port(desiredPort);
         staticFiles.location("web");
         setupWebSocket();
+        if (routing != null) {
+            // Read-your-writes is tracked per token, for the thread handling the request.
+            before((req, res) -> routing.bindSession(req.headers("Authorization")));
+            afterAfter((req, res) -> routing.unbindSession());
+        }
         before((req, res) -> res.type("application/json"));
+        before((req, res) -> {
+            if (!databaseReady && !req.pathInfo().equals("/ready")) {
+                halt(503, gson.toJson(Map.of("message", "Error: server is starting")));
+            }
+        });
 
         setupEndpoints();
         awaitInitialization();
+        try {
+            database.join();
+        } catch (CompletionException e) {
+            System.err.println("Failed to create database: " + e.getCause().getMessage());
+            e.getCause().printStackTrace();
+            Spark.stop();
+            Spark.awaitStop();
+            throw new RuntimeException(e.getCause());
+        }
+        databaseReady = true;
+        authSweeper = AuthSweeper.fromProperties(dao);
         return port();
     }
 
+    private static void initDatabase() {
+        try {
+            DatabaseManager.createDatabase();
+            DatabaseManager.initSchema();
+        } catch (DataAccessException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static void startThread(Runnable task, String name) {
+        Thread t = new Thread(task, name);
+        t.setDaemon(true);
+        t.start();
+    }
+
     private void setupEndpoints() {
+        setupMetricsEndpoint();
+        setupReadyEndpoint();
+        setupAdminEndpoints();
         setupDbEndpoint();
         setupUserEndpoint();
         setupSessionEndpoints();
         setupGameEndpoints();
     }
 
+    /** Prometheus-format metrics; see {@link #registerGauges()} for what is read at scrape time. */
+    private void setupMetricsEndpoint() {
+        registerGauges();
+        get("/metrics", (req, res) -> {
+            res.type(MetricsRegistry.CONTENT_TYPE);
+            return metrics.scrape();
+        });
+    }
+
+    /** 200 once the database is set up and any warm-up has finished, for load balancers to poll. */
+    private void setupReadyEndpoint() {
+        get("/ready", (req, res) -> {
+            boolean ready = databaseReady && warmup.isDone();
+            res.status(ready ? 200 : 503);
+            return gson.toJson(Map.of("ready", ready));
+        });
+    }
+
+    private void registerGauges() {
+        // Reading the pool's stats opens it, which the file store must not do.
+        if (fileStore == null) {
+            metrics.gauge("chess_db_pool_active", "Pooled connections on loan.",
+                    () -> DatabaseManager.poolStats().active());
+            metrics.gauge("chess_db_pool_idle", "Pooled connections waiting to be borrowed.",
+                    () -> DatabaseManager.poolStats().idle());
+            metrics.gauge("chess_db_pool_waiters", "Threads waiting for a pooled connection.",
+                    () -> DatabaseManager.poolStats().waiters());
+            metrics.gauge("chess_db_pool_timeouts", "Connection requests that timed out since the pool started.",
+                    () -> DatabaseManager.poolStats().timeouts());
+            metrics.gauge("chess_db_pool_wait_mean_ms", "Mean wait for a pooled connection.",
+                    () -> DatabaseManager.poolStats().meanWaitMillis());
+        }
+        if (routing != null) {
+            metrics.gauge("chess_db_replica_pool_active", "Replica connections on loan.",
+                    () -> DatabaseManager.replicaPoolStats().active());
+            metrics.gauge("chess_db_replica_pool_waiters", "Threads waiting for a replica connection.",
+                    () -> DatabaseManager.replicaPoolStats().waiters());
+        }
+        metrics.gauge("chess_auth_cache_hit_ratio", "Share of token lookups answered from the cache.",
+                () -> authCache.stats().hitRatio());
+        metrics.gauge("chess_auth_cache_size", "Tokens held in the cache.", () -> authCache.stats().size());
+        if (gameCache != null) {
+            metrics.gauge("chess_game_cache_hit_ratio", "Share of game reads answered from the cache.",
+                    () -> gameCache.stats().hitRatio());
+            metrics.gauge("chess_game_cache_size", "Games held in the cache.", () -> gameCache.stats().size());
+            metrics.gauge("chess_game_cache_evictions", "Games evicted to stay within the size bound.",
+                    () -> gameCache.stats().evictions());
+        }
+        if (writeBehind != null) {
+            metrics.gauge("chess_write_behind_pending", "Games changed in memory and not yet saved.",
+                    writeBehind::pending);
+            metrics.gauge("chess_write_behind_resident", "Games held in memory by write-behind.",
+                    writeBehind::residentCount);
+        }
+        metrics.gauge("chess_lobby_version", "Changes to the lobby listing since startup.", lobby::current);
+    }
+
+    private void setupAdminEndpoints() {
+        get("/admin/traces", (req, res) -> {
+            if (!isAdmin(req)) {
+                res.status(401);
+                return gson.toJson(Map.of("message", "Error: unauthorized"));
+            }
+            return gson.toJson(Map.of("traces", traces.recent()));
+        });
+
+        // Bulk setup for events and load tests: up to 10,000 rows per call, written as one batch.
+        post("/admin/users", timed("POST /admin/users", (req, res) -> {
+            if (!isAdmin(req)) {
+                res.status(401);
+                return gson.toJson(Map.of("message", "Error: unauthorized"));
+            }
+            try {
+                BatchRegisterRequest r = gson.fromJson(req.body(), BatchRegisterRequest.class);
+                var result = new UserService(dao).registerAll(r);
+                res.status(200);
+                return gson.toJson(result);
+            } catch (JsonSyntaxException e) {
+                res.status(400);
+                return gson.toJson(Map.of("message", "Error: bad request"));
+            } catch (DataAccessException e) {
+                String msg = e.getMessage().toLowerCase();
+                if (msg.equals("bad request")) {
+                    res.status(400);
+                } else if (msg.contains("taken")) {
+                    res.status(403);
+                } else if (msg.equals(PasswordHasher.BUSY)) {
+                    res.status(503);
+                } else {
+                    res.status(500);
+                }
+                return gson.toJson(Map.of("message", "Error: " + e.getMessage()));
+            } catch (Exception e) {
+                res.status(500);
+                return gson.toJson(Map.of("message", "Error: Internal server error"));
+            }
+        }));
+
+        post("/admin/games", timed("POST /admin/games", (req, res) -> {
+            if (!isAdmin(req)) {
+                res.status(401);
+                return gson.toJson(Map.of("message", "Error: unauthorized"));
+            }
+            try {
+                BatchCreateGamesRequest r = gson.fromJson(req.body(), BatchCreateGamesRequest.class);
+                var result = new GameService(dao, lobby).createGames(r);
+                res.status(200);
+                return gson.toJson(result);
+            } catch (JsonSyntaxException e) {
+                res.status(400);
+                return gson.toJson(Map.of("message", "Error: bad request"));
+            } catch (DataAccessException e) {
+                res.status(e.getMessage().equals("bad request") ? 400 : 500);
+                return gson.toJson(Map.of("message", "Error: " + e.getMessage()));
+            } catch (Exception e) {
+                res.status(500);
+                return gson.toJson(Map.of("message", "Error: Internal server error"));
+            }
+        }));
+    }
+
+    private static boolean isAdmin(Request req) {
+        String expected = System.getProperty(ADMIN_TOKEN_PROPERTY);
+        String given = req.headers("Authorization");
+        if (expected == null || expected.isEmpty() || given == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), given.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Wraps a route so its handling time is recorded under {@code name}. */
+    private Route timed(String name, Route route) {
+        LatencyHistogram latency = routeLatency.labeled(name);
+        return (req, res) -> {
+            long start = System.nanoTime();
+            try {
+                return route.handle(req, res);
+            } finally {
+                latency.recordSince(start);
+            }
+        };
+    }
+
     private void setupDbEndpoint() {
-        delete("/db", (req, res) -> {
+        delete("/db", timed("DELETE /db", (req, res) -> {
             try {
-                dao.clear();
+                new GameService(dao, lobby).clear();
                 res.status(200);
                 return "{}";
             } catch (Exception e) {
                 res.status(500);
                 return gson.toJson(Map.of("message", "Error: " + e.getMessage()));
             }
-        });
+        }));
     }
 
     private void setupUserEndpoint() {
-        post("/user", (req, res) -> {
+        post("/user", timed("POST /user", (req, res) -> {
             try {
                 RegisterRequest r = gson.fromJson(req.body(), RegisterRequest.class);
                 if (r.username() == null || r.password() == null || r.email() == null) {
@@ -83,6 +365,8 @@ public class Server {
                 String msg = e.getMessage().toLowerCase();
                 if (msg.contains("taken")) {
                     res.status(403);
+                } else if (msg.equals(PasswordHasher.BUSY)) {
+                    res.status(503);
                 } else {
                     res.status(500);
                 }
@@ -91,11 +375,11 @@ public class Server {
                 res.status(500);
                 return gson.toJson(Map.of("message", "Error: Internal server error"));
             }
-        });
+        }));
     }
 
     private void setupSessionEndpoints() {
-        post("/session", (req, res) -> {
+        post("/session", timed("POST /session", (req, res) -> {
             try {
                 LoginRequest r = gson.fromJson(req.body(), LoginRequest.class);
                 if (r.username() == null || r.password() == null) {
@@ -114,6 +398,8 @@ public class Server {
                     String trimmed = msg.trim().toLowerCase();
                     if (trimmed.equals("unauthorized") || trimmed.equals("user not found") || trimmed.equals("username/password incorrect")) {
                         res.status(401);
+                    } else if (trimmed.equals(PasswordHasher.BUSY)) {
+                        res.status(503);
                     } else {
                         res.status(500);
                     }
@@ -125,9 +411,9 @@ public class Server {
                 res.status(500);
                 return gson.toJson(Map.of("message", "Error: Internal server error"));
             }
-        });
+        }));
 
-        delete("/session", (req, res) -> {
+        delete("/session", timed("DELETE /session", (req, res) -> {
             String token = req.headers("Authorization");
             try {
                 new UserService(dao).logout(token);
@@ -150,17 +436,38 @@ public class Server {
                 res.status(500);
                 return gson.toJson(Map.of("message", "Error: Internal server error"));
             }
-        });
+        }));
     }
 
     private void setupGameEndpoints() {
-        get("/game", (req, res) -> {
+        get("/game", timed("GET /game", (req, res) -> {
+            GameListWriter games = new GameListWriter(gson, res.raw());
             try {
                 String token = req.headers("Authorization");
-                GamesResult games = new GameService(dao).listGames(token);
+                // Tag before querying: a write that lands mid-query then makes the tag stale, never the rows.
+                String etag = lobby.etag();
+                GameService service = new GameService(dao, lobby);
+                if (service.isListingCurrent(token, req.headers("If-None-Match"), etag)) {
+                    res.header("ETag", etag);
+                    res.status(304);
+                    return "";
+                }
+                GameFilter filter = parseFilter(req.queryParams("filter"));
+                int after = parseIntParam(req.queryParams("after"), 0);
+                int limit = parseIntParam(req.queryParams("limit"), GameQuery.DEFAULT_LIMIT);
+                res.header("ETag", etag);
                 res.status(200);
-                return gson.toJson(games);
+                Integer nextAfter = service.streamGames(token, filter, after, limit, games);
+                games.finish(nextAfter);
+                return "";
+            } catch (IllegalArgumentException e) {
+                res.status(400);
+                return gson.toJson(Map.of("message", "Error: bad request"));
             } catch (DataAccessException e) {
+                if (games.isStarted()) {
+                    // Rows are already on the wire; the truncated body is the only signal left.
+                    return "";
+                }
                 String msg = e.getMessage();
                 if (msg != null && msg.trim().equalsIgnoreCase("unauthorized")) {
                     res.status(401);
@@ -174,9 +481,32 @@ public class Server {
                 res.status(500);
                 return gson.toJson(Map.of("message", "Error: Internal server error"));
             }
-        });
+        }));
+
+        get("/game/mine", timed("GET /game/mine", (req, res) -> {
+            try {
+                String token = req.headers("Authorization");
+                GamesResult result = new GameService(dao, lobby).listMyGames(token, parseStatus(req.queryParams("status")));
+                res.status(200);
+                return gson.toJson(result);
+            } catch (IllegalArgumentException e) {
+                res.status(400);
+                return gson.toJson(Map.of("message", "Error: bad request"));
+            } catch (DataAccessException e) {
+                String msg = e.getMessage();
+                if (msg != null && msg.trim().equalsIgnoreCase("unauthorized")) {
+                    res.status(401);
+                } else {
+                    res.status(500);
+                }
+                return gson.toJson(Map.of("message", "Error: " + e.getMessage()));
+            } catch (Exception e) {
+                res.status(500);
+                return gson.toJson(Map.of("message", "Error: Internal server error"));
+            }
+        }));
 
-        post("/game", (req, res) -> {
+        post("/game", timed("POST /game", (req, res) -> {
             try {
                 String token = req.headers("Authorization");
                 CreateGameRequest r = gson.fromJson(req.body(), CreateGameRequest.class);
@@ -184,7 +514,7 @@ public class Server {
                     res.status(400);
                     return gson.toJson(Map.of("message", "Error: bad request"));
                 }
-                CreateGameResult result = new GameService(dao).createGame(token, r);
+                CreateGameResult result = new GameService(dao, lobby).createGame(token, r);
                 res.status(200);
                 return gson.toJson(result);
             } catch (JsonSyntaxException e) {
@@ -202,9 +532,9 @@ public class Server {
                 res.status(500);
                 return gson.toJson(Map.of("message", "Error: Internal server error"));
             }
-        });
+        }));
 
-        put("/game", (req, res) -> {
+        put("/game", timed("PUT /game", (req, res) -> {
             try {
                 String token = req.headers("Authorization");
                 JoinGameRequest r = gson.fromJson(req.body(), JoinGameRequest.class);
@@ -213,7 +543,7 @@ public class Server {
                     res.status(400);
                     return gson.toJson(Map.of("message", "Error: bad request"));
                 }
-                new GameService(dao).joinGame(token, r);
+                new GameService(dao, lobby).joinGame(token, r);
                 res.status(200);
                 return "{}";
             } catch (JsonSyntaxException e) {
@@ -225,6 +555,8 @@ public class Server {
                     res.status(401);
                 } else if (msg != null && (msg.toLowerCase().contains("taken") || msg.toLowerCase().contains("full"))) {
                     res.status(403);
+                } else if (msg != null && msg.contains("modified concurrently")) {
+                    res.status(409);
                 } else if (msg != null && msg.toLowerCase().contains("not found")) {
                     res.status(400);
                 } else {
@@ -235,23 +567,129 @@ public class Server {
                 res.status(500);
                 return gson.toJson(Map.of("message", "Error: Internal server error"));
             }
-        });
+        }));
+    }
+
+    private static GameFilter parseFilter(String value) {
+        if (value == null || value.isBlank()) {
+            return GameFilter.ALL;
+        }
+        return GameFilter.valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+
+    private static GameStatus parseStatus(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        return GameStatus.valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+
+    private static int parseIntParam(String value, int fallback) {
+        return value == null || value.isBlank() ? fallback : Integer.parseInt(value.trim());
     }
 
     private void setupWebSocket() {
-        webSocket("/ws", new WebSocketHandler(dao));
+        commandExecutor = newCommandExecutor();
+        webSocket("/ws", new WebSocketHandler(dao, routing, lobby, commandExecutor, metrics, traces));
+    }
+
+    /**
+     * Shared executor behind the per-game websocket mailboxes. Commands block on
+     * the database, so the platform pool is sized above the core count
+     * ({@code chess.ws.workers}, default twice the processors).
+     */
+    private static ExecutorService newCommandExecutor() {
+        if (Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY)) {
+            return Executors.newVirtualThreadPerTaskExecutor();
+        }
+        int workers = Integer.getInteger("chess.ws.workers", Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+        AtomicInteger count = new AtomicInteger();
+        var pool = new ThreadPoolExecutor(workers, workers, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "ws-game-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /** The store at the bottom of the decorator chain. */
+    private DataAccess backingStore() {
+        if (fileStore != null) {
+            return fileStore;
+        }
+        if (routing != null) {
+            return routing;
+        }
+        return sharded != null ? sharded : new MySqlDataAccess();
+    }
+
+    private static FileDataAccess openFileStore() {
+        try {
+            return FileDataAccess.fromProperties();
+        } catch (DataAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Users and tokens stay in the main database; games go to the shards set in db.properties. */
+    private static ShardedDataAccess shardedStore() {
+        if (DatabaseManager.hasReplica()) {
+            System.err.println("Games are sharded; ignoring the read replica");
+        }
+        var lifetime = TokenLifetime.fromProperties();
+        List<DataAccess> shards = new ArrayList<>();
+        for (int i = 0; i < DatabaseManager.shardCount(); i++) {
+            int shard = i;
+            shards.add(new MySqlDataAccess(lifetime, () -> DatabaseManager.getShardConnection(shard)));
+        }
+        return new ShardedDataAccess(new MySqlDataAccess(lifetime), shards);
     }
 
     public void stop() {
         Spark.stop();
         Spark.awaitStop();
+        if (commandExecutor != null) {
+            commandExecutor.shutdown();
+        }
+        if (authSweeper != null) {
+            authSweeper.close();
+        }
+        if (writeBehind != null) {
+            writeBehind.close();
+            try {
+                // Held by the runtime, the hook would keep this server reachable after it stops.
+                Runtime.getRuntime().removeShutdownHook(writeBehindShutdown);
+            } catch (IllegalStateException alreadyShuttingDown) {
+                // The hook is running or about to; close() is safe to call twice.
+            }
+        }
+        if (sharded != null) {
+            sharded.close();
+        }
+        if (fileStore != null) {
+            try {
+                fileStore.close();
+            } catch (DataAccessException e) {
+                System.err.println("Failed to close the journal: " + e.getMessage());
+            }
+        }
+        DatabaseManager.closePool();
     }
 
     public static void main(String[] args) {
         int port = 8080;
-        if (args.length > 0) {
+        for (String arg : args) {
+            if (arg.equals("--virtual-threads")) {
+                System.setProperty(VIRTUAL_THREADS_PROPERTY, "true");
+                continue;
+            }
+            if (arg.equals("--warmup")) {
+                System.setProperty(WARMUP_PROPERTY, "true");
+                continue;
+            }
             try {
-                port = Integer.parseInt(args[0]);
+                port = Integer.parseInt(arg);
             } catch (NumberFormatException ignored) {
             }
         }
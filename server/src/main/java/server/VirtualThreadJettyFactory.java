@@ -0,0 +1,30 @@
+package server;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import spark.embeddedserver.jetty.JettyServerFactory;
+
+/**
+ * Builds Spark's Jetty server on a thread pool whose threads are virtual, so
+ * route handlers and websocket callbacks that block on JDBC park instead of
+ * holding an OS thread. The thread cap only guards against runaway growth;
+ * concurrent database work is bounded separately by the connection pool.
+ */
+class VirtualThreadJettyFactory implements JettyServerFactory {
+    private static final int MAX_THREADS = Integer.getInteger("chess.virtualThreads.max", 10_000);
+    private static final int IDLE_TIMEOUT_MILLIS = 60_000;
+
+    @Override
+    public Server create(int maxThreads, int minThreads, int threadTimeoutMillis) {
+        var threads = new QueuedThreadPool(MAX_THREADS, 0, IDLE_TIMEOUT_MILLIS, 0, null, null,
+                Thread.ofVirtual().name("jetty-vt-", 0).factory());
+        threads.setName("jetty-vt");
+        return new Server(threads);
+    }
+
+    @Override
+    public Server create(ThreadPool threadPool) {
+        return threadPool == null ? create(0, 0, 0) : new Server(threadPool);
+    }
+}
@@ -0,0 +1,78 @@
+package server;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPacking;
+import chess.ChessPiece;
+import chess.ChessPosition;
+import chess.InvalidMoveException;
+import com.google.gson.Gson;
+import websocket.BinaryProtocol;
+import websocket.commands.MakeMoveCommand;
+import websocket.messages.LoadGameMessage;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs what a MAKE_MOVE runs, over and over, so that a fresh process has
+ * loaded and compiled it before the first real move: move generation, check
+ * and mate detection, and the JSON and binary encodings of commands, boards
+ * and stored games.
+ */
+final class Warmup {
+    private static final int MAX_PLIES = 120;
+
+    private Warmup() {
+    }
+
+    /** Plays random legal games for about {@code budgetMillis} and returns the number of moves made. */
+    static int run(Gson gson, long budgetMillis) {
+        var random = new Random(1);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        int moves = 0;
+        while (System.nanoTime() < deadline) {
+            var game = new ChessGame();
+            for (int ply = 0; ply < MAX_PLIES && System.nanoTime() < deadline; ply++) {
+                List<ChessMove> legal = legalMoves(game);
+                if (legal.isEmpty()) {
+                    break;
+                }
+                var command = new MakeMoveCommand("warmup", 0, legal.get(random.nextInt(legal.size())));
+                BinaryProtocol.decodeCommand(ByteBuffer.wrap(BinaryProtocol.encodeCommand(command)));
+                var decoded = gson.fromJson(gson.toJson(command), MakeMoveCommand.class);
+                try {
+                    game.makeMove(decoded.getMove());
+                } catch (InvalidMoveException e) {
+                    throw new IllegalStateException("Warm-up generated an illegal move", e);
+                }
+                game.isInCheckmate(game.getTeamTurn());
+                game.isInStalemate(game.getTeamTurn());
+
+                var message = new LoadGameMessage(game);
+                gson.toJson(message);
+                BinaryProtocol.decodeMessage(ByteBuffer.wrap(BinaryProtocol.encodeMessage(message)));
+                ChessPacking.unpackGame(ChessPacking.packGame(game));
+                moves++;
+            }
+        }
+        return moves;
+    }
+
+    private static List<ChessMove> legalMoves(ChessGame game) {
+        List<ChessMove> moves = new ArrayList<>();
+        for (int row = 1; row <= 8; row++) {
+            for (int col = 1; col <= 8; col++) {
+                var position = new ChessPosition(row, col);
+                ChessPiece piece = game.getBoard().getPiece(position);
+                if (piece != null && piece.getTeamColor() == game.getTeamTurn()) {
+                    moves.addAll(game.validMoves(position));
+                }
+            }
+        }
+        return moves;
+    }
+}
@@ -0,0 +1,76 @@
+package server.metrics;
+
+/**
+ * Where the time went while handling one websocket command. Each call to
+ * {@link #lap} charges the time since the previous lap to a phase, so the
+ * phases add up to the total. A command retried after a concurrent update
+ * charges every attempt to the same phases. Used by one thread at a time.
+ */
+public final class CommandTrace {
+    public enum Phase {
+        /** Parsing the frame into a command. */
+        DECODE,
+        /** Waiting behind earlier commands for the same game. */
+        QUEUE,
+        AUTH,
+        LOAD,
+        /** Turn checks and applying the move to the board. */
+        VALIDATE,
+        /** Check, checkmate and stalemate detection. */
+        STATUS,
+        PERSIST,
+        /** Encoding messages and queueing them for each recipient. */
+        BROADCAST
+    }
+
+    private final String command;
+    private final int gameID;
+    private final long startedAtMillis = System.currentTimeMillis();
+    private final long startNanos;
+    private final long[] nanos = new long[Phase.values().length];
+    private long mark;
+    private int attempts;
+
+    /** @param startNanos {@link System#nanoTime()} when the frame arrived */
+    public CommandTrace(String command, int gameID, long startNanos) {
+        this.command = command;
+        this.gameID = gameID;
+        this.startNanos = startNanos;
+        this.mark = startNanos;
+    }
+
+    public void lap(Phase phase) {
+        long now = System.nanoTime();
+        nanos[phase.ordinal()] += now - mark;
+        mark = now;
+    }
+
+    public void attempt() {
+        attempts++;
+    }
+
+    public String command() {
+        return command;
+    }
+
+    public int gameID() {
+        return gameID;
+    }
+
+    public long startedAtMillis() {
+        return startedAtMillis;
+    }
+
+    public int attempts() {
+        return attempts;
+    }
+
+    public long phaseNanos(Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    /** Time from arrival to the last lap. */
+    public long totalNanos() {
+        return mark - startNanos;
+    }
+}
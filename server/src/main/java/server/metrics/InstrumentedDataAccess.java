@@ -0,0 +1,212 @@
+package server.metrics;
+
+import dataaccess.DataAccess;
+import dataaccess.DataAccessException;
+import dataaccess.GameQuery;
+import dataaccess.RowSink;
+import model.AuthData;
+import model.GameData;
+import model.GameStatus;
+import model.GameSummary;
+import model.UserData;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Times every call to the wrapped store, failed calls included, in one
+ * histogram per method.
+ */
+public class InstrumentedDataAccess implements DataAccess {
+    private final DataAccess delegate;
+    private final MetricsRegistry.Histograms latency;
+
+    public InstrumentedDataAccess(DataAccess delegate, MetricsRegistry metrics) {
+        this.delegate = delegate;
+        this.latency = metrics.histograms("chess_dataaccess_call_seconds",
+                "Time spent in each data access method.", "method");
+    }
+
+    @Override
+    public void clear() throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            delegate.clear();
+        } finally {
+            latency.labeled("clear").recordSince(start);
+        }
+    }
+
+    @Override
+    public void createUser(UserData u) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            delegate.createUser(u);
+        } finally {
+            latency.labeled("createUser").recordSince(start);
+        }
+    }
+
+    @Override
+    public void createUsers(List<UserData> users) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            delegate.createUsers(users);
+        } finally {
+            latency.labeled("createUsers").recordSince(start);
+        }
+    }
+
+    @Override
+    public UserData getUser(String username) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getUser(username);
+        } finally {
+            latency.labeled("getUser").recordSince(start);
+        }
+    }
+
+    @Override
+    public void updateUserPassword(String username, String passwordHash) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            delegate.updateUserPassword(username, passwordHash);
+        } finally {
+            latency.labeled("updateUserPassword").recordSince(start);
+        }
+    }
+
+    @Override
+    public GameData createGame(String gameName) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            return delegate.createGame(gameName);
+        } finally {
+            latency.labeled("createGame").recordSince(start);
+        }
+    }
+
+    @Override
+    public List<GameData> createGames(List<String> gameNames) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            return delegate.createGames(gameNames);
+        } finally {
+            latency.labeled("createGames").recordSince(start);
+        }
+    }
+
+    @Override
+    public GameData getGame(int gameID) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getGame(gameID);
+        } finally {
+            latency.labeled("getGame").recordSince(start);
+        }
+    }
+
+    @Override
+    public List<GameData> listGames() throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            return delegate.listGames();
+        } finally {
+            latency.labeled("listGames").recordSince(start);
+        }
+    }
+
+    @Override
+    public List<GameSummary> listGameSummaries(GameQuery query) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            return delegate.listGameSummaries(query);
+        } finally {
+            latency.labeled("listGameSummaries").recordSince(start);
+        }
+    }
+
+    @Override
+    public void streamGameSummaries(GameQuery query, RowSink<GameSummary> sink)
+            throws DataAccessException, IOException {
+        long start = System.nanoTime();
+        try {
+            delegate.streamGameSummaries(query, sink);
+        } finally {
+            // Includes the time the sink spends writing rows to the client.
+            latency.labeled("streamGameSummaries").recordSince(start);
+        }
+    }
+
+    @Override
+    public List<GameSummary> listGamesForPlayer(String username, GameStatus status) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            return delegate.listGamesForPlayer(username, status);
+        } finally {
+            latency.labeled("listGamesForPlayer").recordSince(start);
+        }
+    }
+
+    @Override
+    public void updateGame(GameData updated) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            delegate.updateGame(updated);
+        } finally {
+            latency.labeled("updateGame").recordSince(start);
+        }
+    }
+
+    @Override
+    public void saveGames(Collection<GameData> games) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            delegate.saveGames(games);
+        } finally {
+            latency.labeled("saveGames").recordSince(start);
+        }
+    }
+
+    @Override
+    public AuthData createAuth(String username) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            return delegate.createAuth(username);
+        } finally {
+            latency.labeled("createAuth").recordSince(start);
+        }
+    }
+
+    @Override
+    public AuthData getAuth(String authToken) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getAuth(authToken);
+        } finally {
+            latency.labeled("getAuth").recordSince(start);
+        }
+    }
+
+    @Override
+    public void deleteAuth(String authToken) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            delegate.deleteAuth(authToken);
+        } finally {
+            latency.labeled("deleteAuth").recordSince(start);
+        }
+    }
+
+    @Override
+    public int deleteExpiredAuths(int limit) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            return delegate.deleteExpiredAuths(limit);
+        } finally {
+            latency.labeled("deleteExpiredAuths").recordSince(start);
+        }
+    }
+}
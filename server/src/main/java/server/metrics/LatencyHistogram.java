@@ -0,0 +1,83 @@
+package server.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Durations in log-linear buckets: each power of two from about 4µs to 34s is
+ * split into four equal steps, so any recorded value lands in a bucket within
+ * 25% of it. Finding the bucket is a couple of bit operations and recording is
+ * a {@link LongAdder} increment, so threads recording at once do not contend.
+ * Faster values share the first bucket and slower ones the last.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 2;
+    private static final int SUBS = 1 << SUB_BITS;
+    private static final int MIN_EXP = 12;
+    private static final int MAX_EXP = 35;
+    static final int BUCKETS = (MAX_EXP - MIN_EXP) * SUBS + 1;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts[bucket(nanos)].increment();
+        sumNanos.add(nanos);
+    }
+
+    /** Records the time elapsed since {@code startNanos}, a {@link System#nanoTime()} reading. */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long count() {
+        long total = 0;
+        for (LongAdder count : counts) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    public long sumNanos() {
+        return sumNanos.sum();
+    }
+
+    /** Per-bucket counts at this moment; concurrent recordings may or may not be included. */
+    long[] snapshot() {
+        long[] values = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            values[i] = counts[i].sum();
+        }
+        return values;
+    }
+
+    static int bucket(long nanos) {
+        if (nanos < 1L << MIN_EXP) {
+            return 0;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exp >= MAX_EXP) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (nanos >>> (exp - SUB_BITS)) & (SUBS - 1);
+        return (exp - MIN_EXP) * SUBS + sub;
+    }
+
+    /** Exclusive upper bound of bucket {@code i} in nanoseconds; the last bucket has none. */
+    static long upperBoundNanos(int i) {
+        if (i >= BUCKETS - 1) {
+            return Long.MAX_VALUE;
+        }
+        int exp = MIN_EXP + i / SUBS;
+        int sub = i % SUBS;
+        return (long) (SUBS + sub + 1) << (exp - SUB_BITS);
+    }
+}
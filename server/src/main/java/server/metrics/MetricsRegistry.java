@@ -0,0 +1,129 @@
+package server.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Named counters, gauges and latency histograms, written out in the Prometheus
+ * text format. Registering happens at startup; recording only touches the
+ * metric itself, never the registry.
+ */
+public class MetricsRegistry {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+    private sealed interface Metric permits Counter, Gauge, Histograms {
+        String help();
+    }
+
+    private record Counter(String help, LongAdder value) implements Metric {
+    }
+
+    private record Gauge(String help, DoubleSupplier value) implements Metric {
+    }
+
+    /** A histogram per value of one label, created on first use. */
+    public static final class Histograms implements Metric {
+        private final String help;
+        private final String label;
+        private final ConcurrentHashMap<String, LatencyHistogram> series = new ConcurrentHashMap<>();
+
+        private Histograms(String help, String label) {
+            this.help = help;
+            this.label = label;
+        }
+
+        @Override
+        public String help() {
+            return help;
+        }
+
+        public LatencyHistogram labeled(String value) {
+            LatencyHistogram histogram = series.get(value);
+            return histogram != null ? histogram : series.computeIfAbsent(value, v -> new LatencyHistogram());
+        }
+    }
+
+    public LongAdder counter(String name, String help) {
+        return ((Counter) register(name, new Counter(help, new LongAdder()))).value();
+    }
+
+    public void gauge(String name, String help, DoubleSupplier value) {
+        register(name, new Gauge(help, value));
+    }
+
+    public Histograms histograms(String name, String help, String label) {
+        return (Histograms) register(name, new Histograms(help, label));
+    }
+
+    private Metric register(String name, Metric metric) {
+        Metric existing = metrics.putIfAbsent(name, metric);
+        if (existing != null && existing.getClass() != metric.getClass()) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as another type");
+        }
+        return existing != null ? existing : metric;
+    }
+
+    public String scrape() {
+        StringBuilder out = new StringBuilder(8192);
+        metrics.forEach((name, metric) -> {
+            out.append("# HELP ").append(name).append(' ').append(metric.help()).append('\n');
+            switch (metric) {
+                case Counter counter -> {
+                    out.append("# TYPE ").append(name).append(" counter\n");
+                    out.append(name).append(' ').append(counter.value().sum()).append('\n');
+                }
+                case Gauge gauge -> {
+                    out.append("# TYPE ").append(name).append(" gauge\n");
+                    out.append(name).append(' ').append(format(gaugeValue(gauge))).append('\n');
+                }
+                case Histograms histograms -> {
+                    out.append("# TYPE ").append(name).append(" histogram\n");
+                    new ConcurrentSkipListMap<>(histograms.series).forEach((value, histogram) ->
+                            writeHistogram(out, name, histograms.label + "=\"" + escape(value) + "\"", histogram));
+                }
+            }
+        });
+        return out.toString();
+    }
+
+    private static double gaugeValue(Gauge gauge) {
+        try {
+            return gauge.value().getAsDouble();
+        } catch (RuntimeException e) {
+            // One broken source, such as an unreachable database, should not hide the rest.
+            return Double.NaN;
+        }
+    }
+
+    private static void writeHistogram(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        long[] counts = histogram.snapshot();
+        long cumulative = 0;
+        for (int i = 0; i < counts.length - 1; i++) {
+            cumulative += counts[i];
+            out.append(name).append("_bucket{").append(labels).append(",le=\"")
+                    .append(format(LatencyHistogram.upperBoundNanos(i) / 1e9)).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        cumulative += counts[counts.length - 1];
+        out.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append(name).append("_sum{").append(labels).append("} ")
+                .append(format(histogram.sumNanos() / 1e9)).append('\n');
+        out.append(name).append("_count{").append(labels).append("} ").append(cumulative).append('\n');
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,101 @@
+package server.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps finished {@link CommandTrace}s for inspection. Every move feeds a
+ * per-phase histogram. One command in {@code sampleEvery}, plus every command
+ * slower than the threshold, is kept in a fixed ring of recent traces. Slow
+ * commands are also logged with their phase breakdown, so a latency spike can
+ * be pinned on the database, move generation or fan-out.
+ * <p>
+ * Settings come from system properties: {@code chess.trace.buffer} (default 256
+ * traces), {@code chess.trace.sampleEvery} (default 16) and
+ * {@code chess.trace.slowMillis} (default 250).
+ */
+public class TraceRecorder {
+    private static final String MOVE = "MAKE_MOVE";
+
+    /** A finished trace as shown to operators; times are in milliseconds. */
+    public record Sample(String command, int gameID, long startedAt, double totalMillis, int attempts,
+                         Map<String, Double> phaseMillis) {
+    }
+
+    private final AtomicReferenceArray<Sample> ring;
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong seen = new AtomicLong();
+    private final int sampleEvery;
+    private final long slowNanos;
+    private final LatencyHistogram[] movePhases = new LatencyHistogram[CommandTrace.Phase.values().length];
+
+    public TraceRecorder(int capacity, int sampleEvery, long slowMillis, MetricsRegistry metrics) {
+        this.ring = new AtomicReferenceArray<>(capacity);
+        this.sampleEvery = Math.max(1, sampleEvery);
+        this.slowNanos = TimeUnit.MILLISECONDS.toNanos(slowMillis);
+        MetricsRegistry.Histograms phases = metrics.histograms("chess_move_phase_seconds",
+                "Time spent in each phase of handling a move.", "phase");
+        for (CommandTrace.Phase phase : CommandTrace.Phase.values()) {
+            movePhases[phase.ordinal()] = phases.labeled(phase.name().toLowerCase());
+        }
+    }
+
+    public static TraceRecorder fromProperties(MetricsRegistry metrics) {
+        return new TraceRecorder(Integer.getInteger("chess.trace.buffer", 256),
+                Integer.getInteger("chess.trace.sampleEvery", 16),
+                Long.getLong("chess.trace.slowMillis", 250), metrics);
+    }
+
+    public void finish(CommandTrace trace) {
+        if (MOVE.equals(trace.command())) {
+            for (CommandTrace.Phase phase : CommandTrace.Phase.values()) {
+                movePhases[phase.ordinal()].record(trace.phaseNanos(phase));
+            }
+        }
+        boolean slow = trace.totalNanos() >= slowNanos;
+        if (!slow && seen.getAndIncrement() % sampleEvery != 0) {
+            return;
+        }
+        Sample sample = toSample(trace);
+        ring.set((int) (written.getAndIncrement() % ring.length()), sample);
+        if (slow) {
+            System.err.println("Slow " + sample.command() + " in game " + sample.gameID() + ": "
+                    + sample.totalMillis() + " ms " + sample.phaseMillis() + ", attempts " + sample.attempts());
+        }
+    }
+
+    /** Kept traces, newest first. */
+    public List<Sample> recent() {
+        long end = written.get();
+        long start = Math.max(0, end - ring.length());
+        List<Sample> samples = new ArrayList<>();
+        for (long i = end - 1; i >= start; i--) {
+            Sample sample = ring.get((int) (i % ring.length()));
+            if (sample != null) {
+                samples.add(sample);
+            }
+        }
+        return samples;
+    }
+
+    private static Sample toSample(CommandTrace trace) {
+        Map<String, Double> phases = new LinkedHashMap<>();
+        for (CommandTrace.Phase phase : CommandTrace.Phase.values()) {
+            long nanos = trace.phaseNanos(phase);
+            if (nanos > 0) {
+                phases.put(phase.name().toLowerCase(), millis(nanos));
+            }
+        }
+        return new Sample(trace.command(), trace.gameID(), trace.startedAtMillis(), millis(trace.totalNanos()),
+                trace.attempts(), phases);
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1_000.0) / 1_000.0;
+    }
+}
@@ -0,0 +1,81 @@
+package server.websocket;
+
+import org.eclipse.jetty.websocket.api.Session;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Who is watching which game. Sessions are indexed by game for broadcasts and by
+ * session for cleanup, so a user may have several clients open at once and a
+ * broadcast only touches the game's own audience.
+ * <p>
+ * A game's set is created and dropped inside {@link ConcurrentHashMap#compute}
+ * on its key, so a session joining while the last one leaves cannot be lost.
+ * A session is only added to its game's set while it is still registered
+ * under that connection, so a close that lands between the two index updates
+ * of {@link #add} cannot leave it behind in the game.
+ */
+class ConnectionRegistry {
+    record Connection(String username, Session session, int gameID) {
+    }
+
+    private final ConcurrentHashMap<Integer, Set<Connection>> byGame = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Session, Connection> bySession = new ConcurrentHashMap<>();
+    private final Runnable betweenIndexes;
+
+    ConnectionRegistry() {
+        this(() -> { });
+    }
+
+    /** @param betweenIndexes run by {@link #add} between its two index updates, for tests */
+    ConnectionRegistry(Runnable betweenIndexes) {
+        this.betweenIndexes = betweenIndexes;
+    }
+
+    /** Registers a session with a game, moving it out of any game it was in before. */
+    void add(Connection connection) {
+        Connection previous = bySession.put(connection.session(), connection);
+        if (previous != null) {
+            removeFromGame(previous);
+        }
+        betweenIndexes.run();
+        byGame.compute(connection.gameID(), (id, members) -> {
+            // A remove since the put has already tried to take it out of this game; adding it now would leak it.
+            if (bySession.get(connection.session()) != connection) {
+                return members;
+            }
+            if (members == null) {
+                members = ConcurrentHashMap.newKeySet();
+            }
+            members.add(connection);
+            return members;
+        });
+    }
+
+    /** Forgets a session; returns what it was connected to, or null. */
+    Connection remove(Session session) {
+        Connection connection = bySession.remove(session);
+        if (connection != null) {
+            removeFromGame(connection);
+        }
+        return connection;
+    }
+
+    Set<Connection> inGame(int gameID) {
+        Set<Connection> members = byGame.get(gameID);
+        return members == null ? Set.of() : members;
+    }
+
+    /** Number of games with at least one session connected. */
+    int gameCount() {
+        return byGame.size();
+    }
+
+    private void removeFromGame(Connection connection) {
+        byGame.computeIfPresent(connection.gameID(), (id, members) -> {
+            members.remove(connection);
+            return members.isEmpty() ? null : members;
+        });
+    }
+}
@@ -0,0 +1,73 @@
+package server.websocket;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs tasks one at a time per game and in submission order, while different
+ * games run in parallel on a shared executor.
+ * <p>
+ * Each game with pending work has a mailbox in the map. Enqueueing and retiring
+ * a mailbox both happen inside {@link ConcurrentHashMap#compute} on the game's
+ * key, so a task can never land in a mailbox that has already stopped draining:
+ * it either joins the live mailbox or starts a fresh one. Idle games hold no
+ * state. A busy game hands its thread back after {@link #BATCH} tasks so it
+ * cannot starve the others.
+ */
+class GameMailboxes {
+    private static final int BATCH = 16;
+
+    private final ConcurrentHashMap<Integer, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final Executor executor;
+
+    GameMailboxes(Executor executor) {
+        this.executor = executor;
+    }
+
+    void submit(int gameID, Runnable task) {
+        boolean[] created = {false};
+        Mailbox mailbox = mailboxes.compute(gameID, (id, current) -> {
+            if (current == null) {
+                current = new Mailbox();
+                created[0] = true;
+            }
+            current.tasks.add(task);
+            return current;
+        });
+        if (created[0]) {
+            executor.execute(() -> drain(gameID, mailbox));
+        }
+    }
+
+    private void drain(int gameID, Mailbox mailbox) {
+        for (int i = 0; i < BATCH; i++) {
+            Runnable next = poll(gameID, mailbox);
+            if (next == null) {
+                return;
+            }
+            try {
+                next.run();
+            } catch (RuntimeException e) {
+                System.err.println("Game " + gameID + " task failed: " + e);
+            }
+        }
+        executor.execute(() -> drain(gameID, mailbox));
+    }
+
+    /** Takes the next task, or retires the mailbox when it has none. */
+    private Runnable poll(int gameID, Mailbox mailbox) {
+        Runnable[] next = {null};
+        mailboxes.computeIfPresent(gameID, (id, current) -> {
+            next[0] = mailbox.tasks.poll();
+            return next[0] == null ? null : current;
+        });
+        return next[0];
+    }
+
+    /** Guarded by the map's lock on the game's key. */
+    private static final class Mailbox {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+    }
+}
@@ -0,0 +1,177 @@
+package server.websocket;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Frames waiting to go out to one session. Sends are asynchronous with at most
+ * one frame in flight, so the thread handling a game never waits on a client's
+ * network; the next frame is written when Jetty reports the previous one done.
+ * <p>
+ * A queued board update is replaced in place when a newer one arrives, since
+ * the client only needs the latest position; keeping its place keeps the board
+ * ahead of any notification queued after it, such as the move that changed
+ * it. A session whose queue stays above the soft limit for longer than the
+ * stall time, or reaches the hard limit at all, is disconnected: it is not
+ * keeping up, and holding its backlog helps nobody.
+ * <p>
+ * Limits come from system properties: {@code chess.ws.queueSoft} (default 32
+ * frames), {@code chess.ws.queueHard} (default 256) and
+ * {@code chess.ws.stallMillis} (default 5000).
+ */
+class SessionOutbox implements WriteCallback {
+    static final int SOFT_LIMIT = Integer.getInteger("chess.ws.queueSoft", 32);
+    static final int HARD_LIMIT = Integer.getInteger("chess.ws.queueHard", 256);
+    static final long STALL_MILLIS = Long.getLong("chess.ws.stallMillis", 5_000);
+
+    /** One encoded message of {@code size} bytes; exactly one of {@code text} and {@code bytes} is set. */
+    record Frame(String text, byte[] bytes, int size, boolean boardUpdate) {
+    }
+
+    private final Session session;
+    private final int softLimit;
+    private final int hardLimit;
+    private final long stallMillis;
+    private final LongSupplier clock;
+    private final LongAdder sentBytes;
+
+    // Guarded by this.
+    private final ArrayDeque<Frame> queue = new ArrayDeque<>();
+    private boolean sending;
+    private boolean closed;
+    private long backedUpSince = -1;
+
+    SessionOutbox(Session session, LongAdder sentBytes) {
+        this(session, SOFT_LIMIT, HARD_LIMIT, STALL_MILLIS, System::currentTimeMillis, sentBytes);
+    }
+
+    SessionOutbox(Session session, int softLimit, int hardLimit, long stallMillis, LongSupplier clock,
+                  LongAdder sentBytes) {
+        this.session = session;
+        this.softLimit = softLimit;
+        this.hardLimit = hardLimit;
+        this.stallMillis = stallMillis;
+        this.clock = clock;
+        this.sentBytes = sentBytes;
+    }
+
+    /** Queues a frame; returns false if the outbox is closed or this frame got the session evicted. */
+    boolean offer(Frame frame) {
+        Frame next = null;
+        boolean evict = false;
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            if (!frame.boardUpdate() || !replaceQueuedBoard(frame)) {
+                queue.add(frame);
+            }
+            if (tooSlow()) {
+                closed = true;
+                queue.clear();
+                evict = true;
+            } else if (!sending) {
+                sending = true;
+                next = queue.poll();
+            }
+        }
+        if (evict) {
+            evict();
+            return false;
+        }
+        if (next != null) {
+            write(next);
+        }
+        return true;
+    }
+
+    /** Drops anything still queued; later offers are refused. */
+    synchronized void close() {
+        closed = true;
+        queue.clear();
+    }
+
+    synchronized int queued() {
+        return queue.size();
+    }
+
+    @Override
+    public void writeSuccess() {
+        Frame next;
+        synchronized (this) {
+            next = closed ? null : queue.poll();
+            if (next == null) {
+                sending = false;
+            }
+            if (queue.size() <= softLimit) {
+                backedUpSince = -1;
+            }
+        }
+        if (next != null) {
+            write(next);
+        }
+    }
+
+    @Override
+    public void writeFailed(Throwable cause) {
+        // The connection is gone; Jetty reports the close to the handler separately.
+        close();
+    }
+
+    /** Puts {@code board} where the queued board update is; false if there is none. */
+    private boolean replaceQueuedBoard(Frame board) {
+        boolean found = false;
+        // At most one board is ever queued, and the queue is bounded, so one rotation is cheap.
+        for (int i = queue.size(); i > 0; i--) {
+            Frame queued = queue.poll();
+            found |= queued.boardUpdate();
+            queue.add(queued.boardUpdate() ? board : queued);
+        }
+        return found;
+    }
+
+    private boolean tooSlow() {
+        int size = queue.size();
+        if (size >= hardLimit) {
+            return true;
+        }
+        if (size <= softLimit) {
+            backedUpSince = -1;
+            return false;
+        }
+        long now = clock.getAsLong();
+        if (backedUpSince < 0) {
+            backedUpSince = now;
+        }
+        return now - backedUpSince >= stallMillis;
+    }
+
+    private void write(Frame frame) {
+        try {
+            if (frame.bytes() != null) {
+                session.getRemote().sendBytes(ByteBuffer.wrap(frame.bytes()), this);
+            } else {
+                session.getRemote().sendString(frame.text(), this);
+            }
+            sentBytes.add(frame.size());
+        } catch (RuntimeException e) {
+            writeFailed(e);
+        }
+    }
+
+    private void evict() {
+        System.err.println("Disconnecting slow websocket client " + session.getRemoteAddress());
+        try {
+            // A polite close frame would only queue behind the backlog, so drop the connection.
+            session.disconnect();
+        } catch (IOException e) {
+            System.err.println("Websocket disconnect failed: " + e.getMessage());
+        }
+    }
+}
@@ -4,13 +4,24 @@ import chess.ChessGame;
 import chess.ChessMove;
 import chess.InvalidMoveException;
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import dataaccess.DataAccess;
 import dataaccess.DataAccessException;
+import dataaccess.RoutingDataAccess;
+import dataaccess.StaleGameException;
 import model.AuthData;
 import model.GameData;
 import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketError;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
 import org.eclipse.jetty.websocket.api.annotations.WebSocket;
+import server.metrics.CommandTrace;
+import server.metrics.MetricsRegistry;
+import server.metrics.TraceRecorder;
+import service.LobbyVersion;
+import websocket.BinaryProtocol;
 import websocket.commands.MakeMoveCommand;
 import websocket.commands.UserGameCommand;
 import websocket.messages.ErrorMessage;
@@ -18,54 +29,203 @@ import websocket.messages.LoadGameMessage;
 import websocket.messages.NotificationMessage;
 import websocket.messages.ServerMessage;
 
-import java.io.IOException;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
 import chess.ChessPosition;
 
 @WebSocket
 public class WebSocketHandler {
-    private final Map<String, Connection> connections = new ConcurrentHashMap<>();
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final ConnectionRegistry connections = new ConnectionRegistry();
+    private final Set<Session> binarySessions = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<Session, SessionOutbox> outboxes = new ConcurrentHashMap<>();
     private final DataAccess dataAccess;
+    private final RoutingDataAccess routing;
+    private final LobbyVersion lobby;
+    private final GameMailboxes mailboxes;
+    private final TraceRecorder traces;
     private final Gson gson = new Gson();
 
-    public WebSocketHandler(DataAccess dataAccess) {
+    private final MetricsRegistry.Histograms commandLatency;
+    private final LongAdder moves;
+    private final LongAdder broadcasts;
+    private final LongAdder broadcastRecipients;
+    private final LongAdder sentBytes;
+
+    public WebSocketHandler(DataAccess dataAccess, LobbyVersion lobby, Executor commandExecutor,
+                            MetricsRegistry metrics, TraceRecorder traces) {
+        this(dataAccess, null, lobby, commandExecutor, metrics, traces);
+    }
+
+    /**
+     * @param routing         the replica router below {@code dataAccess}, or null; each
+     *                        command runs bound to its auth token, so a player's moves
+     *                        make their own later listings read the primary
+     * @param commandExecutor runs parsed commands; commands for one game run one at
+     *                        a time and in arrival order, different games in parallel
+     * @param traces          receives the phase timings of every handled command
+     */
+    public WebSocketHandler(DataAccess dataAccess, RoutingDataAccess routing, LobbyVersion lobby,
+                            Executor commandExecutor, MetricsRegistry metrics, TraceRecorder traces) {
         this.dataAccess = dataAccess;
+        this.routing = routing;
+        this.lobby = lobby;
+        this.mailboxes = new GameMailboxes(commandExecutor);
+        this.traces = traces;
+        this.commandLatency = metrics.histograms("chess_ws_command_seconds",
+                "Time to handle a websocket command, from dequeue to the last frame queued.", "command");
+        this.moves = metrics.counter("chess_moves_total", "Moves accepted and stored.");
+        this.broadcasts = metrics.counter("chess_ws_broadcasts_total", "Messages broadcast to a game.");
+        this.broadcastRecipients = metrics.counter("chess_ws_broadcast_recipients_total",
+                "Sessions reached by broadcasts; divide by broadcasts for the mean fan-out.");
+        this.sentBytes = metrics.counter("chess_ws_sent_bytes_total", "Websocket payload bytes written.");
+        metrics.gauge("chess_ws_sessions", "Open websocket sessions.", outboxes::size);
+        metrics.gauge("chess_games_watched", "Games with at least one connected session.", connections::gameCount);
+    }
+
+    @OnWebSocketConnect
+    public void onConnect(Session session) {
+        outboxes.put(session, new SessionOutbox(session, sentBytes));
     }
 
     @OnWebSocketMessage
-    public void onMessage(Session session, String message) throws IOException {
+    public void onMessage(Session session, String message) {
+        long received = System.nanoTime();
+        UserGameCommand command;
         try {
-            UserGameCommand command = gson.fromJson(message, UserGameCommand.class);
-            String authToken = command.getAuthToken();
-            Integer gameID = command.getGameID();
+            command = gson.fromJson(message, UserGameCommand.class);
+            if (command == null) {
+                throw new JsonParseException("empty command");
+            }
+            if (command.getCommandType() == UserGameCommand.CommandType.MAKE_MOVE) {
+                command = gson.fromJson(message, MakeMoveCommand.class);
+            }
+        } catch (JsonParseException e) {
+            sendError(session, "Error: Malformed command");
+            return;
+        }
+        if (command.wantsBinaryFrames()) {
+            binarySessions.add(session);
+        }
+        enqueue(session, command, received);
+    }
 
-            AuthData authData = dataAccess.getAuth(authToken);
-            if (authData == null) {
-                sendError(session, "Error: Invalid auth token");
-                return;
+    @OnWebSocketMessage
+    public void onMessage(Session session, byte[] payload, int offset, int length) {
+        long received = System.nanoTime();
+        binarySessions.add(session);
+        UserGameCommand command;
+        try {
+            command = BinaryProtocol.decodeCommand(ByteBuffer.wrap(payload, offset, length));
+        } catch (IllegalArgumentException e) {
+            sendError(session, "Error: Malformed command");
+            return;
+        }
+        enqueue(session, command, received);
+    }
+
+    @OnWebSocketClose
+    public void onClose(Session session, int statusCode, String reason) {
+        forget(session);
+    }
+
+    @OnWebSocketError
+    public void onError(Session session, Throwable error) {
+        forget(session);
+    }
+
+    private void forget(Session session) {
+        connections.remove(session);
+        binarySessions.remove(session);
+        SessionOutbox outbox = outboxes.remove(session);
+        if (outbox != null) {
+            outbox.close();
+        }
+    }
+
+    private void enqueue(Session session, UserGameCommand command, long receivedNanos) {
+        int gameID = command.getGameID() == null ? 0 : command.getGameID();
+        CommandTrace trace = new CommandTrace(String.valueOf(command.getCommandType()), gameID, receivedNanos);
+        trace.lap(CommandTrace.Phase.DECODE);
+        mailboxes.submit(gameID, () -> {
+            trace.lap(CommandTrace.Phase.QUEUE);
+            long start = System.nanoTime();
+            if (routing != null) {
+                routing.bindSession(command.getAuthToken());
             }
+            try {
+                dispatch(session, command, trace);
+            } finally {
+                if (routing != null) {
+                    routing.unbindSession();
+                }
+                commandLatency.labeled(trace.command()).recordSince(start);
+                // Whatever follows the last named phase is sending replies.
+                trace.lap(CommandTrace.Phase.BROADCAST);
+                traces.finish(trace);
+            }
+        });
+    }
 
-            GameData gameData = dataAccess.getGame(gameID);
-            if (gameData == null) {
-                sendError(session, "Error: Game not found");
+    /**
+     * Runs a command against a fresh read of its game. If another writer got to
+     * the game first the whole command is re-run, so it is judged against the
+     * position it will actually be applied to.
+     */
+    private void dispatch(Session session, UserGameCommand command, CommandTrace trace) {
+        for (int attempt = 1; ; attempt++) {
+            trace.attempt();
+            try {
+                dispatchOnce(session, command, trace);
+                return;
+            } catch (StaleGameException e) {
+                trace.lap(CommandTrace.Phase.PERSIST);
+                if (attempt == MAX_ATTEMPTS) {
+                    sendError(session, "Error: Game is busy, please try again");
+                    return;
+                }
+            } catch (Exception e) {
+                sendError(session, "Error: " + e.getMessage());
                 return;
             }
+        }
+    }
 
-            switch (command.getCommandType()) {
-                case CONNECT -> handleConnect(session, authData, gameData);
-                case MAKE_MOVE -> handleMakeMove(session, message, authData, gameData);
-                case LEAVE -> handleLeave(session, authData, gameData);
-                case RESIGN -> handleResign(session, authData, gameData);
-            }
-        } catch (Exception e) {
-            sendError(session, "Error: " + e.getMessage());
+    private void dispatchOnce(Session session, UserGameCommand command, CommandTrace trace) throws Exception {
+        String authToken = command.getAuthToken();
+        Integer gameID = command.getGameID();
+
+        AuthData authData = dataAccess.getAuth(authToken);
+        trace.lap(CommandTrace.Phase.AUTH);
+        if (authData == null) {
+            sendError(session, "Error: Invalid auth token");
+            return;
+        }
+
+        GameData gameData = dataAccess.getGame(gameID);
+        trace.lap(CommandTrace.Phase.LOAD);
+        if (gameData == null) {
+            sendError(session, "Error: Game not found");
+            return;
+        }
+
+        switch (command.getCommandType()) {
+            case CONNECT -> handleConnect(session, authData, gameData);
+            case MAKE_MOVE -> handleMakeMove(session, ((MakeMoveCommand) command).getMove(), authData, gameData,
+                    trace);
+            case LEAVE -> handleLeave(session, authData, gameData, trace);
+            case RESIGN -> handleResign(session, authData, gameData, trace);
         }
     }
 
-    private void handleConnect(Session session, AuthData authData, GameData gameData) throws IOException {
+    private void handleConnect(Session session, AuthData authData, GameData gameData) {
         String username = authData.username();
-        String gameKey = String.valueOf(gameData.gameID());
+        int gameID = gameData.gameID();
         
         // Check if game is over and notify the user
         if (isGameOver(gameData)) {
@@ -73,8 +233,7 @@ public class WebSocketHandler {
             return;
         }
         
-        Connection connection = new Connection(username, session, gameData);
-        connections.put(username, connection);
+        connections.add(new ConnectionRegistry.Connection(username, session, gameID));
 
         sendLoadGame(session, gameData.game());
         
@@ -85,12 +244,13 @@ public class WebSocketHandler {
             notification = username + " joined the game as BLACK";
         }
         
-        broadcastToOthers(username, gameKey, new NotificationMessage(notification));
+        broadcastToOthers(session, gameID, new NotificationMessage(notification));
     }
 
-    private void handleMakeMove(Session session, String message, AuthData authData, GameData gameData) throws IOException {
+    private void handleMakeMove(Session session, ChessMove move, AuthData authData, GameData gameData,
+                                CommandTrace trace) throws StaleGameException {
         String username = authData.username();
-        String gameKey = String.valueOf(gameData.gameID());
+        int gameID = gameData.gameID();
         
         if (!isPlayer(username, gameData)) {
             sendError(session, "Error: Only players can make moves");
@@ -107,86 +267,75 @@ public class WebSocketHandler {
             return;
         }
 
-        MakeMoveCommand moveCommand = gson.fromJson(message, MakeMoveCommand.class);
-        ChessMove move = moveCommand.getMove();
-
+        ChessGame game = gameData.game();
         try {
-            gameData.game().makeMove(move);
-            try {
-                dataAccess.updateGame(gameData);
-                gameData = dataAccess.getGame(gameData.gameID());
-            } catch (DataAccessException e) {
-                sendError(session, "Error: Failed to update game");
-                return;
-            }
-            
-            // Always send the updated game state, even if the game is over
-            broadcastToAll(gameKey, new LoadGameMessage(gameData.game()));
-            
-            String moveDescription = describeMove(move);
-            String notification = username + " made move: " + moveDescription;
-            broadcastToOthers(username, gameKey, new NotificationMessage(notification));
-            
-            if (gameData.game().isInCheckmate(gameData.game().getTeamTurn())) {
-                ChessGame.TeamColor winningColor = gameData.game().getTeamTurn() == ChessGame.TeamColor.WHITE ? 
-                    ChessGame.TeamColor.BLACK : ChessGame.TeamColor.WHITE;
-                String winner = getPlayerUsername(gameData, winningColor);
-                String loser = getPlayerUsername(gameData, gameData.game().getTeamTurn());
-                String checkmateNotification = "Checkmate! " + winner + " wins! Congratulations!";
-                broadcastToAll(gameKey, new NotificationMessage(checkmateNotification));
-                
-                // Mark game as over
-                gameData.game().setTeamTurn(null);
-                try {
-                    dataAccess.updateGame(gameData);
-                } catch (DataAccessException e) {
-                    // Log error but don't fail the game over notification
-                }
-            } else if (gameData.game().isInCheck(gameData.game().getTeamTurn())) {
-                String checkNotification = getPlayerUsername(gameData, gameData.game().getTeamTurn()) + " is in check";
-                broadcastToAll(gameKey, new NotificationMessage(checkNotification));
-            } else if (gameData.game().isInStalemate(gameData.game().getTeamTurn())) {
-                String stalemateNotification = "Game ended in stalemate - it's a draw!";
-                broadcastToAll(gameKey, new NotificationMessage(stalemateNotification));
-                
-                // Mark game as over
-                gameData.game().setTeamTurn(null);
-                try {
-                    dataAccess.updateGame(gameData);
-                } catch (DataAccessException e) {
-                    // Log error but don't fail the game over notification
-                }
-            }
+            game.makeMove(move);
         } catch (InvalidMoveException e) {
             sendError(session, "Error: Invalid move");
             return;
         }
+        trace.lap(CommandTrace.Phase.VALIDATE);
+
+        // Settle the outcome before storing, so the move and the end of the game are one versioned update.
+        ChessGame.TeamColor toMove = game.getTeamTurn();
+        boolean checkmate = game.isInCheckmate(toMove);
+        boolean stalemate = !checkmate && game.isInStalemate(toMove);
+        boolean check = !checkmate && game.isInCheck(toMove);
+        if (checkmate || stalemate) {
+            game.setTeamTurn(null);
+        }
+        trace.lap(CommandTrace.Phase.STATUS);
+        if (!store(session, gameData)) {
+            return;
+        }
+        trace.lap(CommandTrace.Phase.PERSIST);
+        moves.increment();
+
+        // Always send the updated game state, even if the game is over
+        broadcastToAll(gameID, new LoadGameMessage(game));
+
+        String moveDescription = describeMove(move);
+        String notification = username + " made move: " + moveDescription;
+        broadcastToOthers(session, gameID, new NotificationMessage(notification));
+
+        if (checkmate) {
+            ChessGame.TeamColor winningColor = toMove == ChessGame.TeamColor.WHITE ?
+                ChessGame.TeamColor.BLACK : ChessGame.TeamColor.WHITE;
+            String winner = getPlayerUsername(gameData, winningColor);
+            String checkmateNotification = "Checkmate! " + winner + " wins! Congratulations!";
+            broadcastToAll(gameID, new NotificationMessage(checkmateNotification));
+        } else if (check) {
+            String checkNotification = getPlayerUsername(gameData, toMove) + " is in check";
+            broadcastToAll(gameID, new NotificationMessage(checkNotification));
+        } else if (stalemate) {
+            String stalemateNotification = "Game ended in stalemate - it's a draw!";
+            broadcastToAll(gameID, new NotificationMessage(stalemateNotification));
+        }
     }
 
-    private void handleLeave(Session session, AuthData authData, GameData gameData) throws IOException {
+    private void handleLeave(Session session, AuthData authData, GameData gameData, CommandTrace trace)
+            throws StaleGameException {
         String username = authData.username();
-        String gameKey = String.valueOf(gameData.gameID());
+        int gameID = gameData.gameID();
         
-        connections.remove(username);
+        connections.remove(session);
         
         if (isPlayer(username, gameData)) {
             GameData updatedGame = removePlayer(username, gameData);
-            try {
-                dataAccess.updateGame(updatedGame);
-                gameData = dataAccess.getGame(gameData.gameID());
-            } catch (DataAccessException e) {
-                sendError(session, "Error: Failed to update game");
+            if (!store(session, updatedGame)) {
                 return;
             }
+            trace.lap(CommandTrace.Phase.PERSIST);
         }
         
         String notification = username + " left the game";
-        broadcastToOthers(username, gameKey, new NotificationMessage(notification));
+        broadcastToOthers(session, gameID, new NotificationMessage(notification));
     }
 
-    private void handleResign(Session session, AuthData authData, GameData gameData) throws IOException {
+    private void handleResign(Session session, AuthData authData, GameData gameData, CommandTrace trace)
+            throws StaleGameException {
         String username = authData.username();
-        String gameKey = String.valueOf(gameData.gameID());
+        int gameID = gameData.gameID();
         
         if (!isPlayer(username, gameData)) {
             sendError(session, "Error: Only players can resign");
@@ -200,13 +349,10 @@ public class WebSocketHandler {
 
         // Set the game as over by setting team turn to null
         gameData.game().setTeamTurn(null);
-        try {
-            dataAccess.updateGame(gameData);
-            gameData = dataAccess.getGame(gameData.gameID());
-        } catch (DataAccessException e) {
-            sendError(session, "Error: Failed to update game");
+        if (!store(session, gameData)) {
             return;
         }
+        trace.lap(CommandTrace.Phase.PERSIST);
 
         // Determine the winner (the player who didn't resign)
         String winner = null;
@@ -217,7 +363,7 @@ public class WebSocketHandler {
         }
 
         String resignationNotification = username + " resigned. " + winner + " wins!";
-        broadcastToAll(gameKey, new NotificationMessage(resignationNotification));
+        broadcastToAll(gameID, new NotificationMessage(resignationNotification));
     }
 
     private boolean isGameOver(GameData gameData) {
@@ -252,9 +398,11 @@ public class WebSocketHandler {
 
     private GameData removePlayer(String username, GameData gameData) {
         if (gameData.whiteUsername() != null && gameData.whiteUsername().equals(username)) {
-            return new GameData(gameData.gameID(), null, gameData.blackUsername(), gameData.gameName(), gameData.game());
+            return new GameData(gameData.gameID(), null, gameData.blackUsername(), gameData.gameName(),
+                    gameData.game(), gameData.version());
         } else if (gameData.blackUsername() != null && gameData.blackUsername().equals(username)) {
-            return new GameData(gameData.gameID(), gameData.whiteUsername(), null, gameData.gameName(), gameData.game());
+            return new GameData(gameData.gameID(), gameData.whiteUsername(), null, gameData.gameName(),
+                    gameData.game(), gameData.version());
         }
         return gameData;
     }
@@ -270,29 +418,43 @@ public class WebSocketHandler {
         return col + String.valueOf(position.getRow());
     }
 
-    private void sendLoadGame(Session session, ChessGame game) throws IOException {
-        session.getRemote().sendString(gson.toJson(new LoadGameMessage(game)));
+    private void sendLoadGame(Session session, ChessGame game) {
+        new Outbound(new LoadGameMessage(game)).sendTo(session);
     }
 
-    private void sendError(Session session, String errorMessage) throws IOException {
-        session.getRemote().sendString(gson.toJson(new ErrorMessage(errorMessage)));
+    private void sendError(Session session, String errorMessage) {
+        new Outbound(new ErrorMessage(errorMessage)).sendTo(session);
     }
 
-    private void broadcastToOthers(String excludeUsername, String gameKey, ServerMessage message) throws IOException {
-        for (Connection connection : connections.values()) {
-            if (!connection.username().equals(excludeUsername) && 
-                String.valueOf(connection.gameData().gameID()).equals(gameKey)) {
-                connection.session().getRemote().sendString(gson.toJson(message));
-            }
-        }
+    private void broadcastToOthers(Session exclude, int gameID, ServerMessage message) {
+        broadcast(exclude, gameID, message);
+    }
+
+    private void broadcastToAll(int gameID, ServerMessage message) {
+        broadcast(null, gameID, message);
     }
 
-    private void broadcastToAll(String gameKey, ServerMessage message) throws IOException {
-        for (Connection connection : connections.values()) {
-            if (String.valueOf(connection.gameData().gameID()).equals(gameKey)) {
-                connection.session().getRemote().sendString(gson.toJson(message));
+    /**
+     * Queues a message for every session in the game except {@code exclude}. A
+     * recipient that has gone away or been evicted as too slow is dropped from the
+     * registry; nobody else waits on it.
+     */
+    private void broadcast(Session exclude, int gameID, ServerMessage message) {
+        Outbound outbound = new Outbound(message);
+        int reached = 0;
+        for (ConnectionRegistry.Connection connection : connections.inGame(gameID)) {
+            Session session = connection.session();
+            if (session == exclude) {
+                continue;
+            }
+            if (session.isOpen() && outbound.sendTo(session)) {
+                reached++;
+            } else {
+                forget(session);
             }
         }
+        broadcasts.increment();
+        broadcastRecipients.add(reached);
     }
 
     private String getPlayerUsername(GameData gameData, ChessGame.TeamColor teamColor) {
@@ -304,5 +466,72 @@ public class WebSocketHandler {
         return null; // Should not happen if teamColor is valid
     }
 
-    private record Connection(String username, Session session, GameData gameData) {}
+    /**
+     * Saves a changed game, telling the session about any failure except a
+     * concurrent change, which is left for {@link #dispatch} to retry.
+     */
+    private boolean store(Session session, GameData gameData) throws StaleGameException {
+        try {
+            saveGame(gameData);
+            return true;
+        } catch (StaleGameException e) {
+            throw e;
+        } catch (DataAccessException e) {
+            sendError(session, "Error: Failed to update game");
+            return false;
+        }
+    }
+
+    /** Stores a changed game and moves the lobby version on, since moves, seats and results all show there. */
+    private void saveGame(GameData gameData) throws DataAccessException {
+        dataAccess.updateGame(gameData);
+        if (routing != null) {
+            // Write-behind may pass the game on later, from a thread with no session bound.
+            routing.markWritten();
+        }
+        lobby.bump();
+    }
+
+    /**
+     * A message on its way to one or more sessions, encoded at most once per
+     * wire format no matter how many recipients share it. Sending only queues the
+     * frame on the session's {@link SessionOutbox}.
+     */
+    private final class Outbound {
+        private final ServerMessage message;
+        private String json;
+        private int jsonSize;
+        private byte[] binary;
+
+        Outbound(ServerMessage message) {
+            this.message = message;
+        }
+
+        /** Returns false if the session is closed or its outbox gave up on it, so it should be forgotten. */
+        boolean sendTo(Session session) {
+            SessionOutbox outbox = outboxes.get(session);
+            if (outbox == null) {
+                return false;
+            }
+            boolean boardUpdate = message.getServerMessageType() == ServerMessage.ServerMessageType.LOAD_GAME;
+            SessionOutbox.Frame frame;
+            if (binarySessions.contains(session)) {
+                if (binary == null) {
+                    binary = BinaryProtocol.encodeMessage(message);
+                }
+                frame = new SessionOutbox.Frame(null, binary, binary.length, boardUpdate);
+            } else {
+                if (json == null) {
+                    json = gson.toJson(message);
+                    jsonSize = json.getBytes(StandardCharsets.UTF_8).length;
+                }
+                frame = new SessionOutbox.Frame(json, null, jsonSize, boardUpdate);
+            }
+            if (outbox.offer(frame)) {
+                return true;
+            }
+            outboxes.remove(session, outbox);
+            return false;
+        }
+    }
 } 
\ No newline at end of file
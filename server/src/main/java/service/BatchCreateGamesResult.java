@@ -0,0 +1,6 @@
+package service;
+
+import java.util.List;
+
+public record BatchCreateGamesResult(List<Integer> gameIDs) {
+}
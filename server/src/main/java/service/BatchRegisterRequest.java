@@ -0,0 +1,6 @@
+package service;
+
+import java.util.List;
+
+public record BatchRegisterRequest(List<RegisterRequest> users) {
+}
@@ -0,0 +1,4 @@
+package service;
+
+public record BatchRegisterResult(int created) {
+}
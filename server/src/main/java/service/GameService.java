@@ -2,26 +2,93 @@ package service;
 
 import dataaccess.DataAccess;
 import dataaccess.DataAccessException;
+import dataaccess.GameQuery;
+import dataaccess.RowSink;
+import dataaccess.StaleGameException;
 import model.AuthData;
 import model.GameData;
+import model.GameFilter;
+import model.GameStatus;
+import model.GameSummary;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 public class GameService {
+    private static final int MAX_ATTEMPTS = 3;
+    /** The most games one {@link #createGames} call may create. */
+    public static final int MAX_BATCH = 10_000;
+
     private final DataAccess dao;
+    private final LobbyVersion lobby;
 
     public GameService(DataAccess dao) {
+        this(dao, new LobbyVersion());
+    }
+
+    public GameService(DataAccess dao, LobbyVersion lobby) {
         this.dao = dao;
+        this.lobby = lobby;
     }
 
     public void clear() throws DataAccessException {
         dao.clear();
+        lobby.bump();
     }
 
-    public GamesResult listGames(String authToken) throws DataAccessException {
+    /**
+     * True if the caller's cached listing, tagged {@code ifNoneMatch}, is still
+     * current. The caller is authorized first so the answer never leaks to
+     * anonymous clients.
+     */
+    public boolean isListingCurrent(String authToken, String ifNoneMatch, String etag) throws DataAccessException {
+        if (!LobbyVersion.matches(ifNoneMatch, etag)) {
+            return false;
+        }
         dao.getAuth(authToken);
-        List<GameData> all = dao.listGames();
-        return new GamesResult(all);
+        return true;
+    }
+
+    public GamesResult listGames(String authToken) throws DataAccessException {
+        return listGames(authToken, GameFilter.ALL, 0, GameQuery.DEFAULT_LIMIT);
+    }
+
+    public GamesResult listGames(String authToken, GameFilter filter, int afterId, int limit)
+            throws DataAccessException {
+        List<GameSummary> page = new ArrayList<>();
+        try {
+            Integer nextAfter = streamGames(authToken, filter, afterId, limit, page::add);
+            return new GamesResult(page, nextAfter);
+        } catch (IOException e) {
+            throw new DataAccessException("Error listing games: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Streams one page of the lobby into {@code sink} and returns the cursor for
+     * the next page, or null when this page was the last. One row beyond the
+     * limit is fetched to tell the two apart without a count query.
+     */
+    public Integer streamGames(String authToken, GameFilter filter, int afterId, int limit,
+                               RowSink<GameSummary> sink) throws DataAccessException, IOException {
+        AuthData auth = dao.getAuth(authToken);
+        int pageSize = Math.max(1, Math.min(limit, GameQuery.MAX_LIMIT));
+        PageSink page = new PageSink(sink, pageSize);
+        dao.streamGameSummaries(new GameQuery(filter, auth.username(), Math.max(afterId, 0), pageSize + 1), page);
+        return page.hasMore ? page.lastId : null;
+    }
+
+    /**
+     * The caller's own games, unfinished ones first and newest first within
+     * each group. A null {@code status} returns both groups.
+     */
+    public GamesResult listMyGames(String authToken, GameStatus status) throws DataAccessException {
+        AuthData auth = dao.getAuth(authToken);
+        List<GameSummary> games = new ArrayList<>(dao.listGamesForPlayer(auth.username(), status));
+        games.sort(Comparator.comparing(GameSummary::status));
+        return new GamesResult(games, null);
     }
 
     public CreateGameResult createGame(String authToken,
@@ -29,14 +96,52 @@ public class GameService {
             throws DataAccessException {
         dao.getAuth(authToken);
         GameData created = dao.createGame(req.gameName());
+        lobby.bump();
         return new CreateGameResult(created.gameID());
     }
 
+    /** Creates games in bulk; callers are trusted, so no token is checked. */
+    public BatchCreateGamesResult createGames(BatchCreateGamesRequest req) throws DataAccessException {
+        if (req == null || req.gameNames() == null || req.gameNames().isEmpty()
+                || req.gameNames().size() > MAX_BATCH) {
+            throw new DataAccessException("bad request");
+        }
+        for (String name : req.gameNames()) {
+            if (name == null) {
+                throw new DataAccessException("bad request");
+            }
+        }
+        List<Integer> ids = new ArrayList<>(req.gameNames().size());
+        for (GameData created : dao.createGames(req.gameNames())) {
+            ids.add(created.gameID());
+        }
+        lobby.bump();
+        return new BatchCreateGamesResult(ids);
+    }
+
+    /**
+     * Claims a seat. If the game changes between the read and the write, the
+     * join is re-evaluated against the fresh game, so two players racing for
+     * the same seat get one success and one "game full".
+     */
     public void joinGame(String authToken,
                          JoinGameRequest req)
             throws DataAccessException {
         AuthData auth = dao.getAuth(authToken);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                tryJoin(auth, req);
+                lobby.bump();
+                return;
+            } catch (StaleGameException e) {
+                if (attempt == MAX_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
 
+    private void tryJoin(AuthData auth, JoinGameRequest req) throws DataAccessException {
         GameData existing = dao.getGame(req.gameID());
 
         // Check if game is over
@@ -65,9 +170,34 @@ public class GameService {
                 white,
                 black,
                 existing.gameName(),
-                existing.game()
+                existing.game(),
+                existing.version()
         );
 
         dao.updateGame(updated);
     }
+
+    private static final class PageSink implements RowSink<GameSummary> {
+        private final RowSink<GameSummary> target;
+        private final int pageSize;
+        private int count;
+        private int lastId;
+        private boolean hasMore;
+
+        PageSink(RowSink<GameSummary> target, int pageSize) {
+            this.target = target;
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        public void accept(GameSummary game) throws IOException {
+            if (count == pageSize) {
+                hasMore = true;
+                return;
+            }
+            count++;
+            lastId = game.gameID();
+            target.accept(game);
+        }
+    }
 }
@@ -1,8 +1,12 @@
 package service;
 
-import model.GameData;
+import model.GameSummary;
 
 import java.util.List;
 
-public record GamesResult(List<GameData> games) {
+/**
+ * One page of the lobby. {@code nextAfter} is the cursor for the following page,
+ * or null when there are no more games.
+ */
+public record GamesResult(List<GameSummary> games, Integer nextAfter) {
 }
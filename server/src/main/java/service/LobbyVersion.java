@@ -0,0 +1,46 @@
+package service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monotonic version of everything the lobby listing shows, used as the ETag of
+ * GET /game. Writers bump it after their change is stored; readers take the tag
+ * before they query, so a tag can only ever be older than the rows sent with it.
+ * The boot time is part of the tag so a restart never reuses an old value.
+ */
+public class LobbyVersion {
+    private final long epoch = System.currentTimeMillis();
+    private final AtomicLong version = new AtomicLong();
+
+    public void bump() {
+        version.incrementAndGet();
+    }
+
+    public long current() {
+        return version.get();
+    }
+
+    public String etag() {
+        return "\"" + Long.toString(epoch, 36) + "-" + version.get() + "\"";
+    }
+
+    /**
+     * True if an If-None-Match header names {@code etag}, either directly, as a
+     * weak tag or through "*".
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,164 @@
+package service;
+
+import dataaccess.DataAccessException;
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs BCrypt on its own small pool so a burst of logins cannot occupy every
+ * request thread. Work beyond the queue limit is refused at once with
+ * "server busy" rather than queued behind the burst. Batches from the admin
+ * endpoints run on a second, smaller pool, so a long import never holds the
+ * threads that logins and registrations wait for.
+ * <p>
+ * Sizing comes from system properties: {@code chess.bcrypt.cost} (work factor,
+ * default 10), {@code chess.bcrypt.threads} (default: available processors),
+ * {@code chess.bcrypt.queue} (default 64) and {@code chess.bcrypt.bulkThreads}
+ * (default: half of {@code chess.bcrypt.threads}, at least one).
+ */
+public class PasswordHasher {
+    public static final String BUSY = "server busy";
+
+    private static final int DEFAULT_COST = 10;
+    private static final int DEFAULT_QUEUE = 64;
+    private static PasswordHasher shared;
+
+    private final ThreadPoolExecutor executor;
+    private final ThreadPoolExecutor bulkExecutor;
+    private final int cost;
+
+    public PasswordHasher(int threads, int queueCapacity, int cost) {
+        this(threads, queueCapacity, cost, Math.max(1, threads / 2));
+    }
+
+    public PasswordHasher(int threads, int queueCapacity, int cost, int bulkThreads) {
+        if (cost < 4 || cost > 31) {
+            throw new IllegalArgumentException("BCrypt cost must be between 4 and 31");
+        }
+        this.cost = cost;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "bcrypt-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        AtomicInteger bulkCount = new AtomicInteger();
+        this.bulkExecutor = new ThreadPoolExecutor(bulkThreads, bulkThreads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "bcrypt-bulk-" + bulkCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        bulkExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /** The process-wide hasher, configured from system properties on first use. */
+    public static synchronized PasswordHasher shared() {
+        if (shared == null) {
+            shared = new PasswordHasher(
+                    Integer.getInteger("chess.bcrypt.threads", Runtime.getRuntime().availableProcessors()),
+                    Integer.getInteger("chess.bcrypt.queue", DEFAULT_QUEUE),
+                    Integer.getInteger("chess.bcrypt.cost", DEFAULT_COST),
+                    Integer.getInteger("chess.bcrypt.bulkThreads",
+                            Math.max(1, Runtime.getRuntime().availableProcessors() / 2)));
+        }
+        return shared;
+    }
+
+    public String hash(String password) throws DataAccessException {
+        return run(() -> BCrypt.hashpw(password, BCrypt.gensalt(cost)));
+    }
+
+    /**
+     * Hashes a batch of passwords, in order, one task per password on the bulk
+     * pool. The batch queues there rather than taking interactive queue slots,
+     * and is never refused as busy.
+     */
+    public List<String> hashAll(List<String> passwords) throws DataAccessException {
+        List<Future<String>> parts = new ArrayList<>(passwords.size());
+        try {
+            for (String password : passwords) {
+                parts.add(bulkExecutor.submit(() -> BCrypt.hashpw(password, BCrypt.gensalt(cost))));
+            }
+            List<String> hashes = new ArrayList<>(passwords.size());
+            for (Future<String> part : parts) {
+                hashes.add(await(part));
+            }
+            return hashes;
+        } finally {
+            // Drops the rest of the batch if one hash failed; finished hashes are unaffected.
+            for (Future<String> part : parts) {
+                part.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Checks a password against a stored value. Values that are not BCrypt
+     * hashes are compared directly, for accounts created before hashing.
+     */
+    public boolean verify(String password, String stored) throws DataAccessException {
+        if (stored == null) {
+            return false;
+        }
+        if (!stored.startsWith("$2")) {
+            return stored.equals(password);
+        }
+        return run(() -> {
+            try {
+                return BCrypt.checkpw(password, stored);
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        });
+    }
+
+    /** True if {@code stored} is not a BCrypt hash at the configured cost. */
+    public boolean needsRehash(String stored) {
+        // "$2a$10$..." - the two digits after the second '$' are the cost.
+        if (stored == null || stored.length() < 7 || !stored.startsWith("$2") || stored.charAt(3) != '$') {
+            return true;
+        }
+        try {
+            return Integer.parseInt(stored.substring(4, 6)) != cost;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private <T> T run(Callable<T> task) throws DataAccessException {
+        return await(submit(task));
+    }
+
+    private <T> Future<T> submit(Callable<T> task) throws DataAccessException {
+        try {
+            return executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            throw new DataAccessException(BUSY);
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws DataAccessException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("interrupted while hashing", e);
+        } catch (ExecutionException e) {
+            throw new DataAccessException("password hashing failed", e.getCause());
+        }
+    }
+}
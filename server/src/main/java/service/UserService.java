@@ -5,13 +5,25 @@ import dataaccess.DataAccessException;
 import model.UserData;
 import model.AuthData;
 
-import org.mindrot.jbcrypt.BCrypt;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 public class UserService {
+    /** The most accounts one {@link #registerAll} call may create. */
+    public static final int MAX_BATCH = 10_000;
+
     private final DataAccess dao;
+    private final PasswordHasher hasher;
 
     public UserService(DataAccess dao) {
+        this(dao, PasswordHasher.shared());
+    }
+
+    public UserService(DataAccess dao, PasswordHasher hasher) {
         this.dao = dao;
+        this.hasher = hasher;
     }
 
     public RegisterResult register(RegisterRequest req) throws DataAccessException {
@@ -24,12 +36,43 @@ public class UserService {
             }
         }
 
-        UserData newUser = new UserData(req.username(), req.password(), req.email());
+        UserData newUser = new UserData(req.username(), hasher.hash(req.password()), req.email());
         dao.createUser(newUser);
         AuthData auth = dao.createAuth(req.username());
         return new RegisterResult(auth.username(), auth.authToken());
     }
 
+    /**
+     * Creates accounts in bulk, for example the players of an event, without
+     * logging anyone in. Passwords are hashed in parallel and the accounts are
+     * written as one batch, so a repeated or taken username fails the lot.
+     */
+    public BatchRegisterResult registerAll(BatchRegisterRequest req) throws DataAccessException {
+        if (req == null || req.users() == null || req.users().isEmpty() || req.users().size() > MAX_BATCH) {
+            throw new DataAccessException("bad request");
+        }
+        Set<String> names = new HashSet<>();
+        List<String> passwords = new ArrayList<>(req.users().size());
+        for (RegisterRequest r : req.users()) {
+            if (r == null || r.username() == null || r.password() == null || r.email() == null) {
+                throw new DataAccessException("bad request");
+            }
+            if (!names.add(r.username())) {
+                throw new DataAccessException("username already taken");
+            }
+            passwords.add(r.password());
+        }
+
+        List<String> hashes = hasher.hashAll(passwords);
+        List<UserData> users = new ArrayList<>(hashes.size());
+        for (int i = 0; i < hashes.size(); i++) {
+            RegisterRequest r = req.users().get(i);
+            users.add(new UserData(r.username(), hashes.get(i), r.email()));
+        }
+        dao.createUsers(users);
+        return new BatchRegisterResult(users.size());
+    }
+
     public LoginResult login(LoginRequest req) throws DataAccessException {
         if (req.username() == null || req.password() == null) {
             throw new DataAccessException("bad request");
@@ -37,27 +80,30 @@ public class UserService {
 
         UserData stored = dao.getUser(req.username());
 
-        String storedPassword = stored.password();
-        String providedPassword = req.password();
-        boolean isBCrypt = storedPassword != null && storedPassword.startsWith("$2");
-        boolean valid;
-        if (isBCrypt) {
-            try {
-                valid = BCrypt.checkpw(providedPassword, storedPassword);
-            } catch (IllegalArgumentException e) {
-                valid = false;
-            }
-        } else {
-            valid = storedPassword != null && storedPassword.equals(providedPassword);
-        }
-        if (!valid) {
+        if (!hasher.verify(req.password(), stored.password())) {
             throw new DataAccessException("username/password incorrect");
         }
+        if (hasher.needsRehash(stored.password())) {
+            upgradePassword(req.username(), req.password());
+        }
 
         AuthData auth = dao.createAuth(req.username());
         return new LoginResult(auth.username(), auth.authToken());
     }
 
+    /**
+     * Re-hashes a verified password at the current cost. Failing to upgrade
+     * must not fail the login, so a busy hasher or a write error is skipped
+     * and retried on the next login.
+     */
+    private void upgradePassword(String username, String password) {
+        try {
+            dao.updateUserPassword(username, hasher.hash(password));
+        } catch (DataAccessException e) {
+            System.err.println("Skipped password upgrade for " + username + ": " + e.getMessage());
+        }
+    }
+
     public void logout(String authToken) throws DataAccessException {
         dao.getAuth(authToken);
         dao.deleteAuth(authToken);
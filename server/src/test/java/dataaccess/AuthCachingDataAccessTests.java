@@ -0,0 +1,83 @@
+package dataaccess;
+
+import model.AuthData;
+import model.UserData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuthCachingDataAccessTests {
+    private int lookups;
+    private AuthCachingDataAccess cache;
+
+    @BeforeEach
+    public void setUp() throws DataAccessException {
+        lookups = 0;
+        var backing = new InMemoryDataAccess() {
+            @Override
+            public AuthData getAuth(String authToken) throws DataAccessException {
+                lookups++;
+                return super.getAuth(authToken);
+            }
+        };
+        cache = new AuthCachingDataAccess(backing);
+        cache.createUser(new UserData("Reginald", "pw", "reginald@emails.com"));
+    }
+
+    @Test
+    public void validTokenServedFromCache() throws DataAccessException {
+        AuthData auth = cache.createAuth("Reginald");
+        assertEquals("Reginald", cache.getAuth(auth.authToken()).username());
+        assertEquals("Reginald", cache.getAuth(auth.authToken()).username());
+        assertEquals(0, lookups);
+        assertEquals(2, cache.stats().hits());
+    }
+
+    @Test
+    public void unknownTokenCachedBriefly() {
+        assertThrows(DataAccessException.class, () -> cache.getAuth("garbage"));
+        DataAccessException ex = assertThrows(DataAccessException.class, () -> cache.getAuth("garbage"));
+        assertEquals("Unauthorized", ex.getMessage());
+        assertEquals(1, lookups);
+    }
+
+    @Test
+    public void logoutInvalidates() throws DataAccessException {
+        AuthData auth = cache.createAuth("Reginald");
+        cache.getAuth(auth.authToken());
+        cache.deleteAuth(auth.authToken());
+        assertThrows(DataAccessException.class, () -> cache.getAuth(auth.authToken()));
+    }
+
+    @Test
+    public void logoutDuringLookupIsNotCachedOver() throws DataAccessException {
+        var backing = new InMemoryDataAccess();
+        backing.createUser(new UserData("Reginald", "pw", "reginald@emails.com"));
+        AuthData auth = backing.createAuth("Reginald");
+        AuthCachingDataAccess[] racing = new AuthCachingDataAccess[1];
+        boolean[] loggedOut = {false};
+        racing[0] = new AuthCachingDataAccess(backing, () -> {
+            if (!loggedOut[0]) {
+                loggedOut[0] = true;
+                try {
+                    racing[0].deleteAuth(auth.authToken());
+                } catch (DataAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+
+        // The lookup read the token before the logout, so it may still answer with it once.
+        assertEquals("Reginald", racing[0].getAuth(auth.authToken()).username());
+        assertThrows(DataAccessException.class, () -> racing[0].getAuth(auth.authToken()));
+    }
+
+    @Test
+    public void clearInvalidates() throws DataAccessException {
+        AuthData auth = cache.createAuth("Reginald");
+        cache.clear();
+        assertThrows(DataAccessException.class, () -> cache.getAuth(auth.authToken()));
+        assertEquals(1, lookups);
+    }
+}
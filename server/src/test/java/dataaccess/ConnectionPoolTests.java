@@ -0,0 +1,89 @@
+package dataaccess;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConnectionPoolTests {
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicBoolean valid = new AtomicBoolean(true);
+    private ConnectionPool pool;
+
+    @AfterEach
+    public void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    private Connection fakeConnection() {
+        AtomicBoolean closed = new AtomicBoolean();
+        opened.incrementAndGet();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "close" -> {
+                        closed.set(true);
+                        yield null;
+                    }
+                    case "isClosed" -> closed.get();
+                    case "isValid" -> valid.get();
+                    case "getAutoCommit" -> true;
+                    default -> null;
+                });
+    }
+
+    private ConnectionPool newPool(int maxSize, long acquireTimeoutMillis, long validateAfterIdleMillis) {
+        var config = new ConnectionPool.Config(0, maxSize, acquireTimeoutMillis, 60_000, validateAfterIdleMillis, 0);
+        pool = new ConnectionPool(config, this::fakeConnection);
+        return pool;
+    }
+
+    @Test
+    public void reusesReturnedConnection() throws Exception {
+        var pool = newPool(2, 100, 60_000);
+        pool.borrow().close();
+        try (var conn = pool.borrow()) {
+            assertFalse(conn.isClosed());
+        }
+        assertEquals(1, opened.get());
+        assertEquals(1, pool.stats().idle());
+        assertEquals(0, pool.stats().active());
+    }
+
+    @Test
+    public void timesOutWhenExhausted() throws Exception {
+        var pool = newPool(1, 50, 60_000);
+        try (var held = pool.borrow()) {
+            DataAccessException ex = assertThrows(DataAccessException.class, pool::borrow);
+            assertTrue(ex.getMessage().contains("timed out"));
+        }
+        assertEquals(1, pool.stats().timeouts());
+    }
+
+    @Test
+    public void discardsInvalidIdleConnection() throws Exception {
+        var pool = newPool(1, 50, 0);
+        pool.borrow().close();
+        valid.set(false);
+        pool.borrow().close();
+        assertEquals(2, opened.get());
+    }
+
+    @Test
+    public void closedLeaseCannotBeUsed() throws Exception {
+        var pool = newPool(1, 50, 60_000);
+        var conn = pool.borrow();
+        conn.close();
+        conn.close();
+        assertTrue(conn.isClosed());
+        assertThrows(SQLException.class, conn::createStatement);
+        assertEquals(1, pool.stats().idle());
+    }
+}
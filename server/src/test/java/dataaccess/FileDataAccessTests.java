@@ -0,0 +1,239 @@
+package dataaccess;
+
+import chess.ChessMove;
+import chess.ChessPosition;
+import model.AuthData;
+import model.GameData;
+import model.GameFilter;
+import model.UserData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileDataAccessTests {
+    private static final long MAP_BYTES = 4096;
+
+    @TempDir
+    Path dir;
+
+    private final long[] now = {0};
+    private FileDataAccess store;
+
+    @AfterEach
+    public void tearDown() throws DataAccessException {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    private FileDataAccess open(long compactBytes) throws DataAccessException {
+        var memory = new InMemoryDataAccess(new TokenLifetime(100, 10), () -> now[0]);
+        return new FileDataAccess(dir.resolve("chess.journal"), memory, MAP_BYTES, compactBytes, false);
+    }
+
+    private FileDataAccess reopen(long compactBytes) throws DataAccessException {
+        store.close();
+        store = open(compactBytes);
+        return store;
+    }
+
+    private void move(int gameID) throws Exception {
+        GameData game = store.getGame(gameID);
+        game.game().makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+        store.updateGame(new GameData(gameID, "alice", "bob", game.gameName(), game.game(), game.version()));
+    }
+
+    @Test
+    public void stateSurvivesReopen() throws Exception {
+        store = open(Long.MAX_VALUE);
+        store.createUser(new UserData("alice", "pw", "alice@email.com"));
+        store.createUsers(List.of(new UserData("bob", "pw", "bob@email.com")));
+        store.updateUserPassword("alice", "new");
+        int first = store.createGame("first").gameID();
+        store.createGames(List.of("second", "third"));
+        move(first);
+        AuthData kept = store.createAuth("alice");
+        AuthData dropped = store.createAuth("bob");
+        store.deleteAuth(dropped.authToken());
+
+        reopen(Long.MAX_VALUE);
+        assertEquals("new", store.getUser("alice").password());
+        assertEquals("bob@email.com", store.getUser("bob").email());
+        GameData game = store.getGame(first);
+        assertEquals(1, game.version());
+        assertEquals("alice", game.whiteUsername());
+        assertEquals(1, game.game().getPlyCount());
+        assertEquals(List.of(first),
+                store.listGamesForPlayer("bob", null).stream().map(s -> s.gameID()).toList());
+        assertNotNull(store.listGameSummaries(new GameQuery(GameFilter.ALL, null, 0, 10)).get(0).lastMoveAt());
+        assertEquals(kept, store.getAuth(kept.authToken()));
+        assertThrows(DataAccessException.class, () -> store.getAuth(dropped.authToken()));
+        // New games are numbered after the restored ones.
+        assertEquals(4, store.createGame("fourth").gameID());
+    }
+
+    @Test
+    public void clearIsJournaled() throws Exception {
+        store = open(Long.MAX_VALUE);
+        store.createUser(new UserData("alice", "pw", "alice@email.com"));
+        store.createGame("gone");
+        store.clear();
+        store.createGame("after");
+
+        reopen(Long.MAX_VALUE);
+        assertThrows(DataAccessException.class, () -> store.getUser("alice"));
+        assertEquals(List.of("after"), store.listGames().stream().map(GameData::gameName).toList());
+    }
+
+    @Test
+    public void damagedTailIsDropped() throws Exception {
+        store = open(Long.MAX_VALUE);
+        store.createGame("kept");
+        int before = store.journalBytes();
+        store.createGame("torn");
+        store.close();
+        try (var file = new RandomAccessFile(dir.resolve("chess.journal").toFile(), "rw")) {
+            // Flip a byte in the last record's body, as a write cut off by a crash might leave it.
+            file.seek(before + 12);
+            file.write(~file.read());
+        }
+
+        store = open(Long.MAX_VALUE);
+        assertEquals(List.of("kept"), store.listGames().stream().map(GameData::gameName).toList());
+        store.createGame("next");
+        reopen(Long.MAX_VALUE);
+        assertEquals(List.of("kept", "next"), store.listGames().stream().map(GameData::gameName).toList());
+    }
+
+    @Test
+    public void journalGrowsPastMapping() throws Exception {
+        store = open(Long.MAX_VALUE);
+        for (int i = 0; i < 200; i++) {
+            store.createGame("game " + i);
+        }
+        assertTrue(store.journalBytes() > MAP_BYTES);
+        reopen(Long.MAX_VALUE);
+        assertEquals(200, store.listGames().size());
+    }
+
+    @Test
+    public void compactionKeepsLiveRows() throws Exception {
+        store = open(2048);
+        int id = store.createGame("busy").gameID();
+        for (int i = 0; i < 200; i++) {
+            GameData game = store.getGame(id);
+            store.updateGame(game);
+        }
+        // Two hundred versions of one game compact down to one.
+        store.awaitCompaction();
+        assertTrue(store.journalBytes() < 4096, "journal is " + store.journalBytes() + " bytes");
+
+        reopen(2048);
+        assertEquals(200, store.getGame(id).version());
+    }
+
+    @Test
+    public void valueTooLongToJournalChangesNothing() throws Exception {
+        store = open(Long.MAX_VALUE);
+        String email = "x".repeat(70_000);
+        assertThrows(DataAccessException.class, () -> store.createUser(new UserData("alice", "pw", email)));
+        assertThrows(DataAccessException.class, () -> store.getUser("alice"));
+        assertThrows(DataAccessException.class, () -> store.createGame(email));
+        assertTrue(store.listGames().isEmpty());
+
+        store.createUser(new UserData("alice", "pw", "alice@email.com"));
+        reopen(Long.MAX_VALUE);
+        assertEquals("alice@email.com", store.getUser("alice").email());
+    }
+
+    @Test
+    public void failedCompactionKeepsWrites() throws Exception {
+        store = open(2048);
+        int id = store.createGame("busy").gameID();
+        // A directory where the compacted copy would go makes every attempt fail.
+        Path blocker = Files.createDirectory(dir.resolve("chess.journal.compact"));
+        Files.createFile(blocker.resolve("occupied"));
+        for (int i = 0; i < 100; i++) {
+            store.updateGame(store.getGame(id));
+        }
+        store.awaitCompaction();
+        assertTrue(store.journalBytes() > 4096, "journal is " + store.journalBytes() + " bytes");
+
+        Files.delete(blocker.resolve("occupied"));
+        Files.delete(blocker);
+        for (int i = 0; i < 100; i++) {
+            store.updateGame(store.getGame(id));
+        }
+        store.awaitCompaction();
+        assertTrue(store.journalBytes() < 4096, "journal is " + store.journalBytes() + " bytes");
+        reopen(2048);
+        assertEquals(200, store.getGame(id).version());
+    }
+
+    @Test
+    public void supersededRowsAreCompactedOnOpen() throws Exception {
+        store = open(Long.MAX_VALUE);
+        int id = store.createGame("busy").gameID();
+        for (int i = 0; i < 200; i++) {
+            store.updateGame(store.getGame(id));
+        }
+        assertTrue(store.journalBytes() > 4096, "journal is " + store.journalBytes() + " bytes");
+
+        // Replay finds one live game under two hundred versions of it.
+        reopen(2048);
+        store.awaitCompaction();
+        assertTrue(store.journalBytes() < 4096, "journal is " + store.journalBytes() + " bytes");
+        assertEquals(200, store.getGame(id).version());
+    }
+
+    @Test
+    public void writesDuringCompactionSurvive() throws Exception {
+        List<Integer> created = new ArrayList<>();
+        var memory = new InMemoryDataAccess(new TokenLifetime(100, 10), () -> now[0]);
+        FileDataAccess[] racing = new FileDataAccess[1];
+        racing[0] = new FileDataAccess(dir.resolve("chess.journal"), memory, MAP_BYTES, 2048, false, () -> {
+            // Lands after the copy is written, so only the copied tail carries it.
+            try {
+                created.add(racing[0].createGame("during " + created.size()).gameID());
+            } catch (DataAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        store = racing[0];
+        int id = store.createGame("busy").gameID();
+        for (int i = 0; i < 200; i++) {
+            store.updateGame(store.getGame(id));
+        }
+        store.awaitCompaction();
+        assertFalse(created.isEmpty());
+
+        reopen(2048);
+        assertEquals(200, store.getGame(id).version());
+        for (int i = 0; i < created.size(); i++) {
+            assertEquals("during " + i, store.getGame(created.get(i)).gameName());
+        }
+    }
+
+    @Test
+    public void expiredTokensAreNotRestored() throws Exception {
+        store = open(Long.MAX_VALUE);
+        AuthData idle = store.createAuth("alice");
+        AuthData busy = store.createAuth("bob");
+        // Renewed at 50s, so it now lasts until 150s.
+        now[0] = 50_000;
+        store.getAuth(busy.authToken());
+
+        now[0] = 120_000;
+        reopen(Long.MAX_VALUE);
+        assertThrows(DataAccessException.class, () -> store.getAuth(idle.authToken()));
+        assertEquals(busy, store.getAuth(busy.authToken()));
+    }
+}
@@ -0,0 +1,92 @@
+package dataaccess;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import model.GameData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GameCachingDataAccessTests {
+    private int reads;
+    private InMemoryDataAccess backing;
+    private GameCachingDataAccess cache;
+
+    @BeforeEach
+    public void setUp() {
+        reads = 0;
+        backing = new InMemoryDataAccess() {
+            @Override
+            public GameData getGame(int gameID) throws DataAccessException {
+                reads++;
+                return super.getGame(gameID);
+            }
+        };
+        cache = new GameCachingDataAccess(backing, 100, 60);
+    }
+
+    @Test
+    public void createdGameServedFromCache() throws DataAccessException {
+        int id = cache.createGame("cached").gameID();
+        assertEquals("cached", cache.getGame(id).gameName());
+        assertEquals("cached", cache.getGame(id).gameName());
+        assertEquals(0, reads);
+        assertEquals(2, cache.stats().hits());
+    }
+
+    @Test
+    public void updateIsWrittenThrough() throws Exception {
+        int id = cache.createGame("through").gameID();
+        GameData game = cache.getGame(id);
+        game.game().makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+        cache.updateGame(game);
+
+        GameData reread = cache.getGame(id);
+        assertEquals(1, reread.version());
+        assertEquals(ChessGame.TeamColor.BLACK, reread.game().getTeamTurn());
+        assertEquals(0, reads);
+    }
+
+    @Test
+    public void readsAreCopies() throws Exception {
+        int id = cache.createGame("copies").gameID();
+        cache.getGame(id).game().makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+        assertEquals(ChessGame.TeamColor.WHITE, cache.getGame(id).game().getTeamTurn());
+    }
+
+    @Test
+    public void staleUpdateDropsEntry() throws DataAccessException {
+        int id = cache.createGame("elsewhere").gameID();
+        // Another server moves the game on behind the cache's back.
+        backing.updateGame(backing.getGame(id));
+        GameData cached = cache.getGame(id);
+        assertEquals(0, cached.version());
+
+        assertThrows(StaleGameException.class, () -> cache.updateGame(cached));
+        assertEquals(1, cache.getGame(id).version());
+    }
+
+    @Test
+    public void olderVersionNeverReplacesNewer() {
+        var games = new BoundedCache<Integer, GameData>(10, 60, TimeUnit.SECONDS);
+        BiPredicate<GameData, GameData> keepNewer = (held, offered) -> held.version() >= offered.version();
+        games.putUnless(1, new GameData(1, null, null, "g", new ChessGame(), 3), keepNewer);
+        games.putUnless(1, new GameData(1, null, null, "g", new ChessGame(), 2), keepNewer);
+        assertEquals(3, games.get(1).version());
+    }
+
+    @Test
+    public void evictsBeyondBound() throws DataAccessException {
+        var small = new GameCachingDataAccess(backing, 16, 60);
+        for (int i = 0; i < 64; i++) {
+            small.createGame("g" + i);
+        }
+        assertTrue(small.stats().size() <= 16);
+        assertTrue(small.stats().evictions() >= 48);
+    }
+}
@@ -0,0 +1,185 @@
+package dataaccess;
+
+import chess.ChessMove;
+import chess.ChessPosition;
+import model.AuthData;
+import model.GameData;
+import model.GameFilter;
+import model.GameSummary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InMemoryDataAccessTests {
+    private static final int THREADS = 8;
+
+    private InMemoryDataAccess store;
+
+    @BeforeEach
+    public void setUp() {
+        store = new InMemoryDataAccess();
+    }
+
+    private static List<Integer> ids(List<GameSummary> summaries) {
+        return summaries.stream().map(GameSummary::gameID).toList();
+    }
+
+    @Test
+    public void concurrentCreatesGetDistinctIds() throws Exception {
+        Set<Integer> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                done.add(pool.submit(() -> {
+                    for (int i = 0; i < 250; i++) {
+                        ids.add(store.createGame("g").gameID());
+                    }
+                }));
+            }
+            for (Future<?> f : done) {
+                f.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(THREADS * 250, ids.size());
+        assertEquals(THREADS * 250, store.listGames().size());
+    }
+
+    @Test
+    public void concurrentUpdatesLoseNothing() throws Exception {
+        int id = store.createGame("contended").gameID();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                done.add(pool.submit(() -> {
+                    for (int i = 0; i < 100; i++) {
+                        while (true) {
+                            try {
+                                store.updateGame(store.getGame(id));
+                                break;
+                            } catch (StaleGameException retry) {
+                                // Someone else won this version; read again.
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : done) {
+                f.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(THREADS * 100, store.getGame(id).version());
+    }
+
+    @Test
+    public void staleUpdateRejected() throws DataAccessException {
+        int id = store.createGame("stale").gameID();
+        GameData first = store.getGame(id);
+        GameData second = store.getGame(id);
+        store.updateGame(first);
+        assertThrows(StaleGameException.class, () -> store.updateGame(second));
+        assertThrows(DataAccessException.class, () -> store.updateGame(new GameData(99, null, null, "x", null)));
+    }
+
+    @Test
+    public void playerIndexFollowsSeats() throws DataAccessException {
+        int a = store.createGame("a").gameID();
+        int b = store.createGame("b").gameID();
+        store.createGame("c");
+
+        GameData game = store.getGame(a);
+        store.updateGame(new GameData(a, "alice", "alice", game.gameName(), game.game(), game.version()));
+        game = store.getGame(b);
+        store.updateGame(new GameData(b, "bob", "alice", game.gameName(), game.game(), game.version()));
+
+        GameQuery mine = new GameQuery(GameFilter.MINE, "alice", 0, 10);
+        assertEquals(List.of(a, b), ids(store.listGameSummaries(mine)));
+
+        // Leaving one of two seats in the same game keeps it listed.
+        game = store.getGame(a);
+        store.updateGame(new GameData(a, null, "alice", game.gameName(), game.game(), game.version()));
+        assertEquals(List.of(a, b), ids(store.listGameSummaries(mine)));
+
+        game = store.getGame(b);
+        store.updateGame(new GameData(b, "bob", null, game.gameName(), game.game(), game.version()));
+        assertEquals(List.of(a), ids(store.listGameSummaries(mine)));
+        assertEquals(List.of(b), ids(store.listGameSummaries(new GameQuery(GameFilter.MINE, "bob", 0, 10))));
+    }
+
+    @Test
+    public void authIndexTracksTokens() throws DataAccessException {
+        AuthData first = store.createAuth("alice");
+        AuthData second = store.createAuth("alice");
+        store.createAuth("bob");
+        assertEquals(Set.of(first, second), Set.copyOf(store.authsFor("alice")));
+
+        store.deleteAuth(first.authToken());
+        assertEquals(List.of(second), store.authsFor("alice"));
+        assertThrows(DataAccessException.class, () -> store.deleteAuth(first.authToken()));
+        assertThrows(DataAccessException.class, () -> store.getAuth(null));
+    }
+
+    @Test
+    public void readsAreCopies() throws Exception {
+        int id = store.createGame("copies").gameID();
+        store.getGame(id).game().makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+        assertEquals(0, store.getGame(id).game().getPlyCount());
+        assertEquals(0, store.listGames().get(0).game().getPlyCount());
+    }
+
+    @Test
+    public void tokensExpireAndRenewLazily() throws DataAccessException {
+        long[] now = {0};
+        var timed = new InMemoryDataAccess(new TokenLifetime(100, 10), () -> now[0]);
+        AuthData idle = timed.createAuth("alice");
+        AuthData busy = timed.createAuth("bob");
+
+        // Within the renewal interval of issue, a lookup leaves expiry at 100s.
+        now[0] = 5_000;
+        timed.getAuth(idle.authToken());
+        // Past it, a lookup pushes expiry a full lifetime out, to 150s.
+        now[0] = 50_000;
+        timed.getAuth(busy.authToken());
+
+        now[0] = 120_000;
+        assertThrows(DataAccessException.class, () -> timed.getAuth(idle.authToken()));
+        assertEquals(busy, timed.getAuth(busy.authToken()));
+        now[0] = 400_000;
+        assertThrows(DataAccessException.class, () -> timed.getAuth(busy.authToken()));
+        assertTrue(timed.authsFor("bob").isEmpty());
+    }
+
+    @Test
+    public void sweeperDeletesExpiredInBatches() throws DataAccessException {
+        long[] now = {0};
+        var timed = new InMemoryDataAccess(new TokenLifetime(10, 1), () -> now[0]);
+        for (int i = 0; i < 25; i++) {
+            timed.createAuth("old" + i);
+        }
+        now[0] = 8_000;
+        AuthData fresh = timed.createAuth("fresh");
+        now[0] = 11_000;
+
+        try (var sweeper = new AuthSweeper(timed, 3600, 10)) {
+            assertEquals(25, sweeper.sweep());
+            assertEquals(0, sweeper.sweep());
+        }
+        assertEquals(fresh, timed.getAuth(fresh.authToken()));
+        assertEquals(List.of(fresh), timed.authsFor("fresh"));
+    }
+}
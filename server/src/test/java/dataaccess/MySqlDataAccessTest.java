@@ -2,6 +2,8 @@ package dataaccess;
 
 import model.AuthData;
 import model.GameData;
+import model.GameStatus;
+import model.GameSummary;
 import model.UserData;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -26,6 +28,14 @@ public class MySqlDataAccessTest {
         dao.clear();
     }
 
+    @Test
+    void initSchemaAgainIsHarmless() throws DataAccessException {
+        // The stored schema version is current, so this skips the DDL.
+        DatabaseManager.initSchema();
+        dao.createUser(new UserData("again", "pw", "again@email.com"));
+        assertEquals("again@email.com", dao.getUser("again").email());
+    }
+
     @Test
     void createUserSuccess() throws DataAccessException {
         UserData u = new UserData("reggi", "Pwd123", "reggi@email.com");
@@ -97,12 +107,41 @@ public class MySqlDataAccessTest {
         assertDoesNotThrow(() -> dao.updateGame(g));
     }
 
+    @Test
+    void updateGameStaleVersionThrows() throws DataAccessException {
+        GameData g = dao.createGame("contested");
+        dao.updateGame(g);
+        assertEquals(1, dao.getGame(g.gameID()).version());
+        assertThrows(StaleGameException.class, () -> dao.updateGame(g));
+    }
+
     @Test
     void updateGameNonexistentThrows() {
         GameData fake = new GameData(99999, null, null, "none", null);
         assertThrows(DataAccessException.class, () -> dao.updateGame(fake));
     }
 
+    @Test
+    void saveGamesWritesVersionsAsGiven() throws DataAccessException {
+        GameData first = dao.createGame("first");
+        GameData second = dao.createGame("second");
+        dao.saveGames(List.of(
+                new GameData(first.gameID(), "white", null, first.gameName(), first.game(), 7),
+                new GameData(second.gameID(), null, "black", second.gameName(), second.game(), 3)));
+        assertEquals(7, dao.getGame(first.gameID()).version());
+        assertEquals("white", dao.getGame(first.gameID()).whiteUsername());
+        assertEquals(3, dao.getGame(second.gameID()).version());
+        assertEquals("black", dao.getGame(second.gameID()).blackUsername());
+    }
+
+    @Test
+    void saveGamesMissingStateThrows() throws DataAccessException {
+        GameData g = dao.createGame("broken");
+        GameData noState = new GameData(g.gameID(), null, null, "broken", null, 5);
+        assertThrows(DataAccessException.class, () -> dao.saveGames(List.of(noState)));
+        assertEquals(0, dao.getGame(g.gameID()).version());
+    }
+
     @Test
     void createAuthSuccess() throws DataAccessException {
         UserData u = new UserData("authuser", "pw", "user@email.com");
@@ -157,4 +196,58 @@ public class MySqlDataAccessTest {
     void createAuthNonexistentUserThrows() {
         assertThrows(DataAccessException.class, () -> dao.createAuth("no_such_user"));
     }
+
+    @Test
+    void createUsersBatchSuccess() throws DataAccessException {
+        dao.createUsers(List.of(new UserData("batch1", "pw", "b1@email.com"),
+                new UserData("batch2", "pw", "b2@email.com")));
+        assertEquals("b1@email.com", dao.getUser("batch1").email());
+        assertEquals("b2@email.com", dao.getUser("batch2").email());
+    }
+
+    @Test
+    void createUsersTakenNameCreatesNone() throws DataAccessException {
+        dao.createUser(new UserData("taken", "pw", "taken@email.com"));
+        DataAccessException ex = assertThrows(DataAccessException.class,
+                () -> dao.createUsers(List.of(new UserData("fresh", "pw", "fresh@email.com"),
+                        new UserData("taken", "pw", "again@email.com"))));
+        assertTrue(ex.getMessage().toLowerCase().contains("taken"));
+        assertThrows(DataAccessException.class, () -> dao.getUser("fresh"));
+    }
+
+    @Test
+    void createGamesReturnsIdsInOrder() throws DataAccessException {
+        List<GameData> created = dao.createGames(List.of("first", "second", "third", "fourth", "fifth"));
+        assertEquals(5, created.size());
+        for (GameData game : created) {
+            assertEquals(game.gameName(), dao.getGame(game.gameID()).gameName());
+        }
+    }
+
+    @Test
+    void listGamesForPlayerNewestFirst() throws DataAccessException {
+        GameData first = dao.createGame("first");
+        GameData second = dao.createGame("second");
+        dao.createGame("someone else's");
+        dao.updateGame(new GameData(first.gameID(), "carol", null, "first", first.game(), 0));
+        dao.updateGame(new GameData(second.gameID(), null, "carol", "second", second.game(), 0));
+
+        List<GameSummary> mine = dao.listGamesForPlayer("carol", null);
+        assertEquals(List.of(second.gameID(), first.gameID()), mine.stream().map(GameSummary::gameID).toList());
+        assertEquals(2, dao.listGamesForPlayer("carol", GameStatus.IN_PROGRESS).size());
+        assertTrue(dao.listGamesForPlayer("carol", GameStatus.FINISHED).isEmpty());
+        assertTrue(dao.listGamesForPlayer("nobody", null).isEmpty());
+    }
+
+    @Test
+    void expiredAuthRejectedAndSwept() throws DataAccessException {
+        dao.createUser(new UserData("expiring", "pw", "expiring@email.com"));
+        var expired = new MySqlDataAccess(new TokenLifetime(0, 0)).createAuth("expiring");
+        AuthData live = dao.createAuth("expiring");
+
+        assertThrows(DataAccessException.class, () -> dao.getAuth(expired.authToken()));
+        assertEquals(1, dao.deleteExpiredAuths(10));
+        assertEquals(0, dao.deleteExpiredAuths(10));
+        assertEquals("expiring", dao.getAuth(live.authToken()).username());
+    }
 }
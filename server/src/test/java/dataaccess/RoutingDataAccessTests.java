@@ -0,0 +1,102 @@
+package dataaccess;
+
+import model.AuthData;
+import model.GameFilter;
+import model.UserData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RoutingDataAccessTests {
+    private static final GameQuery ALL = new GameQuery(GameFilter.ALL, null, 0, 10);
+
+    private final long[] now = {0};
+    private InMemoryDataAccess primary;
+    private InMemoryDataAccess replica;
+    private RoutingDataAccess routing;
+
+    @BeforeEach
+    public void setUp() {
+        primary = new InMemoryDataAccess();
+        // Stands in for a replica that has not caught up with anything yet.
+        replica = new InMemoryDataAccess();
+        routing = new RoutingDataAccess(primary, replica,
+                new BoundedCache<>(100, 5, TimeUnit.SECONDS, () -> now[0]));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        routing.unbindSession();
+    }
+
+    @Test
+    public void writePassedOnLaterStillMarksSession() throws DataAccessException {
+        primary.createGame("held elsewhere");
+        routing.bindSession("mover");
+        // As the websocket handler does after handing a move to write-behind.
+        routing.markWritten();
+        routing.unbindSession();
+
+        routing.bindSession("mover");
+        assertEquals("held elsewhere", routing.listGameSummaries(ALL).get(0).gameName());
+    }
+
+    @Test
+    public void readsGoToReplicaWritesToPrimary() throws DataAccessException {
+        replica.createGame("replicated");
+        routing.createGame("just written");
+        assertEquals(1, primary.listGames().size());
+
+        routing.bindSession("someone-else");
+        assertEquals("replicated", routing.listGameSummaries(ALL).get(0).gameName());
+    }
+
+    @Test
+    public void sessionReadsItsOwnWrites() throws DataAccessException {
+        routing.bindSession("writer");
+        routing.createGame("mine");
+        assertEquals("mine", routing.listGameSummaries(ALL).get(0).gameName());
+
+        // A later request from the same session, inside the window.
+        routing.unbindSession();
+        routing.bindSession("writer");
+        now[0] = TimeUnit.SECONDS.toNanos(4);
+        assertEquals(1, routing.listGameSummaries(ALL).size());
+
+        now[0] = TimeUnit.SECONDS.toNanos(6);
+        assertTrue(routing.listGameSummaries(ALL).isEmpty());
+    }
+
+    @Test
+    public void newTokenReadsItsOwnWrites() throws DataAccessException {
+        primary.createUser(new UserData("alice", "pw", "alice@email.com"));
+        routing.bindSession(null);
+        AuthData auth = routing.createAuth("alice");
+        primary.createGame("before login");
+
+        routing.unbindSession();
+        routing.bindSession(auth.authToken());
+        assertEquals(1, routing.listGameSummaries(ALL).size());
+    }
+
+    @Test
+    public void missingUserFallsBackToPrimary() throws DataAccessException {
+        primary.createUser(new UserData("fresh", "pw", "fresh@email.com"));
+        routing.bindSession("reader");
+        assertEquals("fresh@email.com", routing.getUser("fresh").email());
+        assertThrows(DataAccessException.class, () -> routing.getUser("nobody"));
+    }
+
+    @Test
+    public void tokensAndGamesReadFromPrimary() throws DataAccessException {
+        AuthData auth = primary.createAuth("bob");
+        int id = primary.createGame("live").gameID();
+        routing.bindSession("reader");
+        assertEquals(auth, routing.getAuth(auth.authToken()));
+        assertEquals("live", routing.getGame(id).gameName());
+    }
+}
@@ -0,0 +1,131 @@
+package dataaccess;
+
+import model.AuthData;
+import model.GameData;
+import model.GameFilter;
+import model.GameSummary;
+import model.UserData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardedDataAccessTests {
+    private static final int SHARDS = 3;
+
+    private InMemoryDataAccess global;
+    private List<InMemoryDataAccess> shards;
+    private ShardedDataAccess sharded;
+
+    @BeforeEach
+    public void setUp() {
+        global = new InMemoryDataAccess();
+        shards = new ArrayList<>();
+        for (int i = 0; i < SHARDS; i++) {
+            shards.add(new InMemoryDataAccess());
+        }
+        sharded = new ShardedDataAccess(global, List.copyOf(shards));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        sharded.close();
+    }
+
+    private static List<Integer> ids(List<GameSummary> summaries) {
+        return summaries.stream().map(GameSummary::gameID).toList();
+    }
+
+    private void seat(int gameID, String white, String black) throws DataAccessException {
+        GameData game = sharded.getGame(gameID);
+        sharded.updateGame(new GameData(gameID, white, black, game.gameName(), game.game(), game.version()));
+    }
+
+    @Test
+    public void idsInterleaveAcrossShards() throws DataAccessException {
+        List<Integer> created = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            created.add(sharded.createGame("g" + i).gameID());
+        }
+        assertEquals(List.of(1, 2, 3, 4, 5, 6, 7), created);
+        assertEquals(3, shards.get(0).listGames().size());
+        assertEquals(2, shards.get(2).listGames().size());
+
+        assertEquals("g4", sharded.getGame(5).gameName());
+        assertEquals(5, sharded.getGame(5).gameID());
+        assertThrows(DataAccessException.class, () -> sharded.getGame(8));
+        assertEquals(created, sharded.listGames().stream().map(GameData::gameID).toList());
+    }
+
+    @Test
+    public void batchKeepsOrder() throws DataAccessException {
+        sharded.createGame("first");
+        List<GameData> batch = sharded.createGames(List.of("a", "b", "c", "d", "e"));
+        assertEquals(List.of("a", "b", "c", "d", "e"), batch.stream().map(GameData::gameName).toList());
+        for (GameData game : batch) {
+            assertEquals(game.gameName(), sharded.getGame(game.gameID()).gameName());
+        }
+        assertEquals(6, sharded.listGames().size());
+    }
+
+    @Test
+    public void pagesMergeAcrossShards() throws DataAccessException {
+        for (int i = 0; i < 10; i++) {
+            sharded.createGame("g" + i);
+        }
+        // Fill game 4 so that OPEN skips it on shard 0.
+        seat(4, "alice", "bob");
+
+        var first = sharded.listGameSummaries(new GameQuery(GameFilter.OPEN, null, 0, 4));
+        assertEquals(List.of(1, 2, 3, 5), ids(first));
+        var second = sharded.listGameSummaries(new GameQuery(GameFilter.OPEN, null, 5, 4));
+        assertEquals(List.of(6, 7, 8, 9), ids(second));
+        var last = sharded.listGameSummaries(new GameQuery(GameFilter.OPEN, null, 9, 4));
+        assertEquals(List.of(10), ids(last));
+    }
+
+    @Test
+    public void playerGamesMergeNewestFirst() throws DataAccessException {
+        for (int i = 0; i < 6; i++) {
+            sharded.createGame("g" + i);
+        }
+        seat(2, "alice", null);
+        seat(3, null, "alice");
+        seat(4, "alice", "bob");
+
+        assertEquals(List.of(4, 3, 2), ids(sharded.listGamesForPlayer("alice", null)));
+        assertEquals(List.of(2, 3, 4),
+                ids(sharded.listGameSummaries(new GameQuery(GameFilter.MINE, "alice", 0, 10))));
+    }
+
+    @Test
+    public void staleUpdateNamesGlobalId() throws DataAccessException {
+        sharded.createGame("a");
+        int id = sharded.createGame("b").gameID();
+        GameData first = sharded.getGame(id);
+        GameData second = sharded.getGame(id);
+        sharded.updateGame(first);
+        var stale = assertThrows(StaleGameException.class, () -> sharded.updateGame(second));
+        assertTrue(stale.getMessage().contains("Game " + id + " "));
+    }
+
+    @Test
+    public void usersAndTokensStayGlobal() throws DataAccessException {
+        sharded.createUser(new UserData("alice", "pw", "alice@email.com"));
+        AuthData auth = sharded.createAuth("alice");
+        assertEquals(auth, global.getAuth(auth.authToken()));
+        assertEquals("alice@email.com", global.getUser("alice").email());
+        for (InMemoryDataAccess shard : shards) {
+            assertThrows(DataAccessException.class, () -> shard.getUser("alice"));
+        }
+
+        sharded.createGame("g");
+        sharded.clear();
+        assertThrows(DataAccessException.class, () -> global.getUser("alice"));
+        assertTrue(sharded.listGames().isEmpty());
+    }
+}
@@ -0,0 +1,168 @@
+package dataaccess;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import chess.InvalidMoveException;
+import model.GameData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collection;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteBehindDataAccessTests {
+    private int batches;
+    private boolean storeDown;
+    private InMemoryDataAccess backing;
+
+    @BeforeEach
+    public void setUp() {
+        batches = 0;
+        storeDown = false;
+        backing = new InMemoryDataAccess() {
+            @Override
+            public void saveGames(Collection<GameData> updates) throws DataAccessException {
+                if (storeDown) {
+                    throw new DataAccessException("store is down");
+                }
+                if (!updates.isEmpty()) {
+                    batches++;
+                }
+                super.saveGames(updates);
+            }
+        };
+    }
+
+    private WriteBehindDataAccess writeBehind(int maxDirty) {
+        return new WriteBehindDataAccess(backing, 0, maxDirty, 60_000);
+    }
+
+    private static GameData withMove(GameData game, int fromRow, int col, int toRow) throws InvalidMoveException {
+        game.game().makeMove(new ChessMove(new ChessPosition(fromRow, col), new ChessPosition(toRow, col), null));
+        return game;
+    }
+
+    @Test
+    public void moveIsHeldUntilFlushed() throws Exception {
+        var store = writeBehind(100);
+        int id = backing.createGame("held").gameID();
+
+        store.updateGame(withMove(store.getGame(id), 2, 5, 4));
+        assertEquals(1, store.getGame(id).version());
+        assertEquals(ChessGame.TeamColor.BLACK, store.getGame(id).game().getTeamTurn());
+        assertEquals(0, backing.getGame(id).version());
+
+        store.flush();
+        assertEquals(1, backing.getGame(id).version());
+        assertEquals(store.getGame(id).game(), backing.getGame(id).game());
+        assertEquals(0, store.pending());
+    }
+
+    @Test
+    public void manyGamesShareOneBatch() throws Exception {
+        var store = writeBehind(100);
+        for (int i = 0; i < 5; i++) {
+            int id = backing.createGame("g" + i).gameID();
+            store.updateGame(withMove(store.getGame(id), 2, 1, 3));
+        }
+        store.flush();
+        assertEquals(1, batches);
+    }
+
+    @Test
+    public void seatChangeIsWrittenImmediately() throws Exception {
+        var store = writeBehind(100);
+        int id = backing.createGame("seats").gameID();
+        GameData game = store.getGame(id);
+        store.updateGame(new GameData(id, "white", null, game.gameName(), game.game(), game.version()));
+        assertEquals("white", backing.getGame(id).whiteUsername());
+        assertEquals(0, store.pending());
+    }
+
+    @Test
+    public void lobbyChangeSavedLateIsAnnounced() throws Exception {
+        var store = writeBehind(100);
+        int[] announced = {0};
+        store.onLobbySaved(() -> announced[0]++);
+        int id = backing.createGame("late").gameID();
+        GameData game = store.getGame(id);
+
+        storeDown = true;
+        store.updateGame(new GameData(id, "white", null, game.gameName(), game.game(), game.version()));
+        assertNull(backing.getGame(id).whiteUsername());
+        assertEquals(0, announced[0]);
+
+        storeDown = false;
+        store.flush();
+        assertEquals("white", backing.getGame(id).whiteUsername());
+        assertEquals(1, announced[0]);
+        store.flush();
+        assertEquals(1, announced[0]);
+    }
+
+    @Test
+    public void leastRecentlyUsedCleanGamesAreEvicted() throws Exception {
+        var store = new WriteBehindDataAccess(backing, 0, 100, 60_000, 2);
+        int a = backing.createGame("a").gameID();
+        int b = backing.createGame("b").gameID();
+        int c = backing.createGame("c").gameID();
+        store.getGame(a);
+        GameData heldB = store.getGame(b);
+        store.updateGame(withMove(store.getGame(c), 2, 5, 4));
+        store.getGame(a);
+
+        store.flush();
+        assertEquals(2, store.residentCount());
+        assertEquals(1, backing.getGame(c).version());
+
+        // An evicted game is read back on its next update.
+        store.updateGame(withMove(heldB, 2, 5, 4));
+        assertEquals(1, store.getGame(b).version());
+        store.flush();
+        assertEquals(1, backing.getGame(b).version());
+        assertEquals(2, store.residentCount());
+    }
+
+    @Test
+    public void staleUpdateRejected() throws Exception {
+        var store = writeBehind(100);
+        int id = backing.createGame("stale").gameID();
+        GameData first = store.getGame(id);
+        GameData second = store.getGame(id);
+        store.updateGame(withMove(first, 2, 5, 4));
+        assertThrows(StaleGameException.class, () -> store.updateGame(withMove(second, 2, 4, 4)));
+    }
+
+    @Test
+    public void readsAreCopies() throws Exception {
+        var store = writeBehind(100);
+        int id = backing.createGame("copies").gameID();
+        withMove(store.getGame(id), 2, 5, 4);
+        assertEquals(ChessGame.TeamColor.WHITE, store.getGame(id).game().getTeamTurn());
+    }
+
+    @Test
+    public void fullQueueFlushesBeforeAccepting() throws Exception {
+        var store = writeBehind(1);
+        int a = backing.createGame("a").gameID();
+        int b = backing.createGame("b").gameID();
+        store.updateGame(withMove(store.getGame(a), 2, 5, 4));
+        store.updateGame(withMove(store.getGame(b), 2, 5, 4));
+        assertEquals(1, backing.getGame(a).version());
+        assertEquals(0, backing.getGame(b).version());
+    }
+
+    @Test
+    public void closeFlushesAndPassesThrough() throws Exception {
+        var store = writeBehind(100);
+        int id = backing.createGame("close").gameID();
+        store.updateGame(withMove(store.getGame(id), 2, 5, 4));
+        store.close();
+        assertEquals(1, backing.getGame(id).version());
+
+        store.updateGame(withMove(store.getGame(id), 7, 5, 5));
+        assertEquals(2, backing.getGame(id).version());
+    }
+}
@@ -0,0 +1,18 @@
+package server;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WarmupTests {
+    @Test
+    public void playsLegalMovesWithinBudget() {
+        long start = System.nanoTime();
+        int moves = Warmup.run(new Gson(), 200);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(moves > 0);
+        // One move past the deadline at most, and a move takes far less than a second.
+        assertTrue(elapsedMillis < 1200, "warm-up took " + elapsedMillis + " ms");
+    }
+}
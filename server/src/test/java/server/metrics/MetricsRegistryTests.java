@@ -0,0 +1,60 @@
+package server.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsRegistryTests {
+
+    @Test
+    public void bucketsStayWithinAQuarterOfTheValue() {
+        for (long nanos = 5_000; nanos < 30_000_000_000L; nanos = nanos * 7 / 5) {
+            int bucket = LatencyHistogram.bucket(nanos);
+            long upper = LatencyHistogram.upperBoundNanos(bucket);
+            long lower = bucket == 0 ? 0 : LatencyHistogram.upperBoundNanos(bucket - 1);
+            assertTrue(nanos >= lower && nanos < upper, "value " + nanos + " outside its bucket");
+            assertTrue(upper - lower <= lower / 4 + 1 || bucket == 0, "bucket too wide at " + nanos);
+        }
+        assertEquals(0, LatencyHistogram.bucket(0));
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void scrapeWritesCumulativeHistogram() {
+        var metrics = new MetricsRegistry();
+        var latency = metrics.histograms("test_seconds", "Test latency.", "route").labeled("GET /x");
+        latency.record(1_000);
+        latency.record(2_000_000);
+        latency.record(Long.MAX_VALUE / 2);
+
+        String text = metrics.scrape();
+        assertTrue(text.contains("# TYPE test_seconds histogram\n"));
+        assertTrue(text.contains("test_seconds_bucket{route=\"GET /x\",le=\"5.12E-6\"} 1\n"), text);
+        assertTrue(text.contains("test_seconds_bucket{route=\"GET /x\",le=\"+Inf\"} 3\n"));
+        assertTrue(text.contains("test_seconds_count{route=\"GET /x\"} 3\n"));
+    }
+
+    @Test
+    public void scrapeWritesCountersAndGauges() {
+        var metrics = new MetricsRegistry();
+        metrics.counter("test_total", "Things.").add(5);
+        metrics.gauge("test_ratio", "A ratio.", () -> 0.5);
+        metrics.gauge("test_broken", "Fails.", () -> {
+            throw new IllegalStateException("down");
+        });
+
+        String text = metrics.scrape();
+        assertTrue(text.contains("# TYPE test_total counter\ntest_total 5\n"));
+        assertTrue(text.contains("test_ratio 0.5\n"));
+        assertTrue(text.contains("test_broken NaN\n"));
+    }
+
+    @Test
+    public void sameNameReturnsSameCounter() {
+        var metrics = new MetricsRegistry();
+        metrics.counter("test_total", "Things.").increment();
+        metrics.counter("test_total", "Things.").increment();
+        assertTrue(metrics.scrape().contains("test_total 2\n"));
+        assertThrows(IllegalArgumentException.class, () -> metrics.gauge("test_total", "Clash.", () -> 1));
+    }
+}
@@ -0,0 +1,49 @@
+package server.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TraceRecorderTests {
+
+    private static CommandTrace finishedTrace(String command, int gameID, long delayNanos) {
+        var trace = new CommandTrace(command, gameID, System.nanoTime() - delayNanos);
+        trace.attempt();
+        trace.lap(CommandTrace.Phase.PERSIST);
+        return trace;
+    }
+
+    @Test
+    public void keepsOneInNAndEverySlowTrace() {
+        var recorder = new TraceRecorder(64, 4, 100, new MetricsRegistry());
+        for (int i = 0; i < 8; i++) {
+            recorder.finish(finishedTrace("MAKE_MOVE", i, 0));
+        }
+        recorder.finish(finishedTrace("MAKE_MOVE", 99, 200_000_000L));
+
+        List<TraceRecorder.Sample> recent = recorder.recent();
+        assertEquals(List.of(99, 4, 0), recent.stream().map(TraceRecorder.Sample::gameID).toList());
+        assertTrue(recent.get(0).phaseMillis().get("persist") >= 200);
+        assertEquals(1, recent.get(0).attempts());
+    }
+
+    @Test
+    public void ringKeepsOnlyTheNewest() {
+        var recorder = new TraceRecorder(3, 1, 10_000, new MetricsRegistry());
+        for (int i = 0; i < 5; i++) {
+            recorder.finish(finishedTrace("CONNECT", i, 0));
+        }
+        assertEquals(List.of(4, 3, 2), recorder.recent().stream().map(TraceRecorder.Sample::gameID).toList());
+    }
+
+    @Test
+    public void movesFeedPhaseHistograms() {
+        var metrics = new MetricsRegistry();
+        var recorder = new TraceRecorder(8, 1, 10_000, metrics);
+        recorder.finish(finishedTrace("MAKE_MOVE", 1, 0));
+        recorder.finish(finishedTrace("CONNECT", 1, 0));
+        assertTrue(metrics.scrape().contains("chess_move_phase_seconds_count{phase=\"persist\"} 1\n"));
+    }
+}
@@ -0,0 +1,60 @@
+package server.websocket;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConnectionRegistryTests {
+
+    private static Session fakeSession() {
+        return (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class<?>[]{Session.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    default -> null;
+                });
+    }
+
+    @Test
+    public void sameUserKeepsBothSessions() {
+        var registry = new ConnectionRegistry();
+        registry.add(new ConnectionRegistry.Connection("reginald", fakeSession(), 1));
+        registry.add(new ConnectionRegistry.Connection("reginald", fakeSession(), 1));
+        assertEquals(2, registry.inGame(1).size());
+    }
+
+    @Test
+    public void reconnectMovesSessionBetweenGames() {
+        var registry = new ConnectionRegistry();
+        Session session = fakeSession();
+        registry.add(new ConnectionRegistry.Connection("reginald", session, 1));
+        registry.add(new ConnectionRegistry.Connection("reginald", session, 2));
+        assertTrue(registry.inGame(1).isEmpty());
+        assertEquals(1, registry.inGame(2).size());
+    }
+
+    @Test
+    public void removeForgetsSession() {
+        var registry = new ConnectionRegistry();
+        Session session = fakeSession();
+        registry.add(new ConnectionRegistry.Connection("reginald", session, 3));
+        assertEquals(3, registry.remove(session).gameID());
+        assertTrue(registry.inGame(3).isEmpty());
+        assertNull(registry.remove(session));
+    }
+
+    @Test
+    public void closeDuringAddLeavesNothingBehind() {
+        Session session = fakeSession();
+        ConnectionRegistry[] registry = new ConnectionRegistry[1];
+        // The close lands after the session is indexed, before it joins its game.
+        registry[0] = new ConnectionRegistry(() -> registry[0].remove(session));
+        registry[0].add(new ConnectionRegistry.Connection("reginald", session, 4));
+        assertTrue(registry[0].inGame(4).isEmpty());
+        assertEquals(0, registry[0].gameCount());
+        assertNull(registry[0].remove(session));
+    }
+}
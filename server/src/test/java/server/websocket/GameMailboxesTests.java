@@ -0,0 +1,62 @@
+package server.websocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GameMailboxesTests {
+
+    @Test
+    public void runsOneGameInOrderWithoutOverlap() throws InterruptedException {
+        var executor = Executors.newFixedThreadPool(8);
+        var mailboxes = new GameMailboxes(executor);
+        List<Integer> seen = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(200);
+        for (int i = 0; i < 200; i++) {
+            int n = i;
+            mailboxes.submit(7, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                seen.add(n);
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertEquals(1, maxRunning.get());
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i, seen.get(i));
+        }
+    }
+
+    @Test
+    public void runsDifferentGamesInParallel() throws InterruptedException {
+        var executor = Executors.newFixedThreadPool(2);
+        var mailboxes = new GameMailboxes(executor);
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        CountDownLatch finished = new CountDownLatch(2);
+        for (int game = 1; game <= 2; game++) {
+            mailboxes.submit(game, () -> {
+                bothStarted.countDown();
+                try {
+                    bothStarted.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
+                }
+                finished.countDown();
+            });
+        }
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertEquals(0, bothStarted.getCount());
+        executor.shutdown();
+    }
+}
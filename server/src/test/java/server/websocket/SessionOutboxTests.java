@@ -0,0 +1,137 @@
+package server.websocket;
+
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionOutboxTests {
+
+    /** A session whose sends never complete until the test says so. */
+    private static final class StalledSession {
+        final List<String> sent = new ArrayList<>();
+        final List<WriteCallback> pending = new ArrayList<>();
+        boolean disconnected;
+
+        final Session session = (Session) Proxy.newProxyInstance(Session.class.getClassLoader(),
+                new Class<?>[]{Session.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "getRemote" -> remote();
+                    case "disconnect" -> {
+                        disconnected = true;
+                        yield null;
+                    }
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    default -> null;
+                });
+
+        private RemoteEndpoint remote() {
+            return (RemoteEndpoint) Proxy.newProxyInstance(RemoteEndpoint.class.getClassLoader(),
+                    new Class<?>[]{RemoteEndpoint.class}, (proxy, method, args) -> {
+                        if (method.getName().equals("sendString") && args.length == 2) {
+                            sent.add((String) args[0]);
+                            pending.add((WriteCallback) args[1]);
+                        }
+                        return null;
+                    });
+        }
+
+        void completeNext() {
+            pending.remove(0).writeSuccess();
+        }
+    }
+
+    private static SessionOutbox.Frame text(String text) {
+        return new SessionOutbox.Frame(text, null, text.length(), false);
+    }
+
+    private static SessionOutbox.Frame board(String text) {
+        return new SessionOutbox.Frame(text, null, text.length(), true);
+    }
+
+    @Test
+    public void sendsOneFrameAtATimeInOrder() {
+        var client = new StalledSession();
+        var outbox = new SessionOutbox(client.session, 8, 16, 1_000, () -> 0, new LongAdder());
+        outbox.offer(text("a"));
+        outbox.offer(text("b"));
+        outbox.offer(text("c"));
+        assertEquals(List.of("a"), client.sent);
+
+        client.completeNext();
+        client.completeNext();
+        client.completeNext();
+        assertEquals(List.of("a", "b", "c"), client.sent);
+        assertEquals(0, outbox.queued());
+    }
+
+    @Test
+    public void newerBoardReplacesQueuedBoard() {
+        var client = new StalledSession();
+        var outbox = new SessionOutbox(client.session, 8, 16, 1_000, () -> 0, new LongAdder());
+        outbox.offer(text("first"));
+        outbox.offer(board("board-1"));
+        outbox.offer(text("note"));
+        outbox.offer(board("board-2"));
+        assertEquals(3, outbox.queued() + client.pending.size());
+
+        client.completeNext();
+        client.completeNext();
+        client.completeNext();
+        // The newest board keeps the old one's place, ahead of the note queued after it.
+        assertEquals(List.of("first", "board-2", "note"), client.sent);
+    }
+
+    @Test
+    public void hardLimitDisconnects() {
+        var client = new StalledSession();
+        var outbox = new SessionOutbox(client.session, 2, 4, 1_000, () -> 0, new LongAdder());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(outbox.offer(text("m" + i)));
+        }
+        assertFalse(outbox.offer(text("m4")));
+        assertTrue(client.disconnected);
+        assertFalse(outbox.offer(text("m5")));
+    }
+
+    @Test
+    public void stayingBackedUpPastStallDisconnects() {
+        var client = new StalledSession();
+        var now = new AtomicLong();
+        var outbox = new SessionOutbox(client.session, 2, 100, 1_000, now::get, new LongAdder());
+        for (int i = 0; i < 4; i++) {
+            outbox.offer(text("m" + i));
+        }
+        now.set(999);
+        assertTrue(outbox.offer(text("late")));
+        now.set(1_000);
+        assertFalse(outbox.offer(text("later")));
+        assertTrue(client.disconnected);
+    }
+
+    @Test
+    public void catchingUpResetsStallClock() {
+        var client = new StalledSession();
+        var now = new AtomicLong();
+        var outbox = new SessionOutbox(client.session, 2, 100, 1_000, now::get, new LongAdder());
+        for (int i = 0; i < 4; i++) {
+            outbox.offer(text("m" + i));
+        }
+        while (!client.pending.isEmpty()) {
+            client.completeNext();
+        }
+        now.set(5_000);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(outbox.offer(text("n" + i)));
+        }
+        assertFalse(client.disconnected);
+    }
+}
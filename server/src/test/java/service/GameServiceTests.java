@@ -3,6 +3,9 @@ package service;
 import dataaccess.InMemoryDataAccess;
 import dataaccess.DataAccessException;
 import model.GameData;
+import model.GameFilter;
+import model.GameStatus;
+import model.GameSummary;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
@@ -25,7 +28,7 @@ public class GameServiceTests {
         var king = userService.register(
                 new RegisterRequest("King Reginald", "royalPW", "king@kinglyemails.com")
         );
-        List<GameData> games = gameService.listGames(king.authToken()).games();
+        List<GameSummary> games = gameService.listGames(king.authToken()).games();
         assertTrue(games.isEmpty());
     }
 
@@ -47,11 +50,59 @@ public class GameServiceTests {
         var gameService = new GameService(dao);
         var reg = userService.register(new RegisterRequest("Reginald II", "pw2", "r2@emails4real.com"));
         gameService.createGame(reg.authToken(), new CreateGameRequest("Reginald's Match"));
-        List<GameData> games = gameService.listGames(reg.authToken()).games();
+        List<GameSummary> games = gameService.listGames(reg.authToken()).games();
         assertEquals(1, games.size());
         assertEquals("Reginald's Match", games.get(0).gameName());
     }
 
+    @Test
+    public void listGamesPages() throws DataAccessException {
+        var dao = new InMemoryDataAccess();
+        var userService = new UserService(dao);
+        var gameService = new GameService(dao);
+        var reg = userService.register(new RegisterRequest("Reginald X", "pw10", "r10@emails.com"));
+        for (int i = 0; i < 5; i++) {
+            gameService.createGame(reg.authToken(), new CreateGameRequest("Reginald's Table " + i));
+        }
+        GamesResult first = gameService.listGames(reg.authToken(), GameFilter.ALL, 0, 3);
+        assertEquals(3, first.games().size());
+        assertNotNull(first.nextAfter());
+        GamesResult second = gameService.listGames(reg.authToken(), GameFilter.ALL, first.nextAfter(), 3);
+        assertEquals(2, second.games().size());
+        assertNull(second.nextAfter());
+        assertEquals("Reginald's Table 3", second.games().get(0).gameName());
+    }
+
+    @Test
+    public void listGamesMineFilter() throws DataAccessException {
+        var dao = new InMemoryDataAccess();
+        var userService = new UserService(dao);
+        var gameService = new GameService(dao);
+        var reg1 = userService.register(new RegisterRequest("Reginald XI", "pw11", "r11@emails.com"));
+        var reg2 = userService.register(new RegisterRequest("Reginald XII", "pw12", "r12@emails.com"));
+        gameService.createGame(reg1.authToken(), new CreateGameRequest("Reginald's Lonely Board"));
+        var gid = gameService.createGame(reg1.authToken(), new CreateGameRequest("Reginald's Rivalry")).gameID();
+        gameService.joinGame(reg2.authToken(), new JoinGameRequest(gid, "BLACK"));
+        List<GameSummary> mine = gameService.listGames(reg2.authToken(), GameFilter.MINE, 0, 10).games();
+        assertEquals(1, mine.size());
+        assertEquals(gid, mine.get(0).gameID());
+        assertTrue(gameService.listGames(reg1.authToken(), GameFilter.MINE, 0, 10).games().isEmpty());
+    }
+
+    @Test
+    public void listingTagChangesOnCreate() throws DataAccessException {
+        var dao = new InMemoryDataAccess();
+        var lobby = new LobbyVersion();
+        var userService = new UserService(dao);
+        var gameService = new GameService(dao, lobby);
+        var reg = userService.register(new RegisterRequest("Reginald XIII", "pw13", "r13@emails.com"));
+        String before = lobby.etag();
+        assertTrue(gameService.isListingCurrent(reg.authToken(), before, lobby.etag()));
+        gameService.createGame(reg.authToken(), new CreateGameRequest("Reginald's Rematch"));
+        assertFalse(gameService.isListingCurrent(reg.authToken(), before, lobby.etag()));
+        assertThrows(DataAccessException.class, () -> gameService.isListingCurrent("bad-token", before, before));
+    }
+
     @Test
     public void createGameUnauthorized() {
         var dao = new InMemoryDataAccess();
@@ -93,7 +144,7 @@ public class GameServiceTests {
         var gid = gameService.createGame(reg1.authToken(), new CreateGameRequest("Reginald's Duel")).gameID();
         var reg2 = userService.register(new RegisterRequest("Reginald V", "pw5", "r5@em.com"));
         gameService.joinGame(reg2.authToken(), new JoinGameRequest(gid, "BLACK"));
-        GameData g = gameService.listGames(reg1.authToken()).games().get(0);
+        GameSummary g = gameService.listGames(reg1.authToken()).games().get(0);
         assertEquals("Reginald V", g.blackUsername());
     }
 
@@ -112,4 +163,41 @@ public class GameServiceTests {
         );
         assertTrue(ex.getMessage().toLowerCase().contains("game full"));
     }
+
+    @Test
+    public void createGamesBatch() throws DataAccessException {
+        var dao = new InMemoryDataAccess();
+        var gameService = new GameService(dao);
+        var result = gameService.createGames(new BatchCreateGamesRequest(List.of("Board 1", "Board 2")));
+        assertEquals(2, result.gameIDs().size());
+        assertEquals("Board 2", dao.getGame(result.gameIDs().get(1)).gameName());
+
+        assertThrows(DataAccessException.class,
+                () -> gameService.createGames(new BatchCreateGamesRequest(List.of())));
+    }
+
+    @Test
+    public void listMyGamesUnfinishedFirst() throws Exception {
+        var dao = new InMemoryDataAccess();
+        var gameService = new GameService(dao);
+        var reg = new UserService(dao).register(new RegisterRequest("Reginald IX", "pw", "r9@emails.com"));
+        int finished = gameService.createGame(reg.authToken(), new CreateGameRequest("Old")).gameID();
+        int active = gameService.createGame(reg.authToken(), new CreateGameRequest("Current")).gameID();
+        int newest = gameService.createGame(reg.authToken(), new CreateGameRequest("Done")).gameID();
+        gameService.createGame(reg.authToken(), new CreateGameRequest("Unjoined"));
+        for (int id : new int[] {finished, active, newest}) {
+            gameService.joinGame(reg.authToken(), new JoinGameRequest(id, "WHITE"));
+        }
+        for (int id : new int[] {finished, newest}) {
+            GameData game = dao.getGame(id);
+            game.game().setTeamTurn(null);
+            dao.updateGame(game);
+        }
+
+        List<Integer> ids = gameService.listMyGames(reg.authToken(), null).games().stream()
+                .map(GameSummary::gameID).toList();
+        assertEquals(List.of(active, newest, finished), ids);
+        assertEquals(List.of(active), gameService.listMyGames(reg.authToken(), GameStatus.IN_PROGRESS).games()
+                .stream().map(GameSummary::gameID).toList());
+    }
 }
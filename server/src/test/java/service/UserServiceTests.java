@@ -4,6 +4,9 @@ import dataaccess.InMemoryDataAccess;
 import dataaccess.DataAccessException;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class UserServiceTests {
@@ -89,4 +92,92 @@ public class UserServiceTests {
         );
         assertTrue(ex.getMessage().toLowerCase().contains("unauthorized"));
     }
+
+    @Test
+    public void loginUpgradesOutdatedHash() throws DataAccessException {
+        var dao = new InMemoryDataAccess();
+        new UserService(dao, new PasswordHasher(1, 4, 4))
+                .register(new RegisterRequest("Reginald the Old", "oldpw", "old@realemail.com"));
+        var hasher = new PasswordHasher(1, 4, 5);
+        assertTrue(hasher.needsRehash(dao.getUser("Reginald the Old").password()));
+
+        new UserService(dao, hasher).login(new LoginRequest("Reginald the Old", "oldpw"));
+
+        String upgraded = dao.getUser("Reginald the Old").password();
+        assertFalse(hasher.needsRehash(upgraded));
+        assertTrue(hasher.verify("oldpw", upgraded));
+    }
+
+    @Test
+    public void registerRejectedWhenHasherBusy() throws Exception {
+        var hasher = new PasswordHasher(1, 1, 14);
+        var service = new UserService(new InMemoryDataAccess(), hasher);
+        // Occupy the single worker and the single queue slot.
+        for (int i = 0; i < 2; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    hasher.hash("slow");
+                } catch (DataAccessException ignored) {
+                }
+            });
+            t.setDaemon(true);
+            t.start();
+        }
+        Thread.sleep(200);
+        DataAccessException ex = assertThrows(DataAccessException.class,
+                () -> service.register(new RegisterRequest("Reginald the Late", "pw", "late@realemail.com")));
+        assertEquals(PasswordHasher.BUSY, ex.getMessage());
+    }
+
+    @Test
+    public void registerAllCreatesAccounts() throws DataAccessException {
+        var dao = new InMemoryDataAccess();
+        var service = new UserService(dao, new PasswordHasher(4, 4, 4));
+        var result = service.registerAll(new BatchRegisterRequest(List.of(
+                new RegisterRequest("Entrant 1", "pw1", "e1@realemail.com"),
+                new RegisterRequest("Entrant 2", "pw2", "e2@realemail.com"),
+                new RegisterRequest("Entrant 3", "pw3", "e3@realemail.com"))));
+
+        assertEquals(3, result.created());
+        assertEquals("Entrant 2", service.login(new LoginRequest("Entrant 2", "pw2")).username());
+    }
+
+    @Test
+    public void loginIsNotHeldBehindBatch() throws Exception {
+        var dao = new InMemoryDataAccess();
+        var hasher = new PasswordHasher(1, 4, 11, 1);
+        var service = new UserService(dao, hasher);
+        service.register(new RegisterRequest("Reginald the Prompt", "pw", "prompt@realemail.com"));
+        List<RegisterRequest> batch = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            batch.add(new RegisterRequest("Entrant " + i, "pw" + i, "e" + i + "@realemail.com"));
+        }
+        Thread importer = new Thread(() -> {
+            try {
+                service.registerAll(new BatchRegisterRequest(batch));
+            } catch (DataAccessException ignored) {
+            }
+        });
+        importer.setDaemon(true);
+        importer.start();
+        Thread.sleep(100);
+
+        service.login(new LoginRequest("Reginald the Prompt", "pw"));
+        // The login's hash ran beside the batch instead of after it.
+        assertTrue(importer.isAlive());
+        importer.join();
+        assertEquals("Entrant 11", dao.getUser("Entrant 11").username());
+    }
+
+    @Test
+    public void registerAllRepeatedNameCreatesNone() {
+        var dao = new InMemoryDataAccess();
+        var service = new UserService(dao, new PasswordHasher(2, 4, 4));
+        DataAccessException ex = assertThrows(DataAccessException.class,
+                () -> service.registerAll(new BatchRegisterRequest(List.of(
+                        new RegisterRequest("Twin", "pw", "t1@realemail.com"),
+                        new RegisterRequest("Twin", "pw", "t2@realemail.com")))));
+        assertTrue(ex.getMessage().toLowerCase().contains("taken"));
+        assertThrows(DataAccessException.class, () -> dao.getUser("Twin"));
+    }
 }
@@ -12,6 +12,7 @@ public class ChessGame {
     private boolean whiteRookAMoved, whiteRookHMoved;
     private boolean blackRookAMoved, blackRookHMoved;
     private ChessMove lastMove;
+    private int plyCount;
 
     @Override
     public boolean equals(Object o) {
@@ -253,6 +254,7 @@ public class ChessGame {
         }
 
         lastMove = move;
+        plyCount++;
         currentTurnColor = (currentTurnColor == TeamColor.WHITE ? TeamColor.BLACK : TeamColor.WHITE);
     }
 
@@ -279,12 +281,50 @@ public class ChessGame {
         whiteRookAMoved = whiteRookHMoved = false;
         blackRookAMoved = blackRookHMoved = false;
         lastMove = null;
+        plyCount = 0;
     }
 
     public ChessBoard getBoard() {
         return board;
     }
 
+    /**
+     * @return the number of half-moves played since the board was set up
+     */
+    public int getPlyCount() {
+        return plyCount;
+    }
+
+    ChessMove getLastMove() {
+        return lastMove;
+    }
+
+    /**
+     * Packs the castling-rights history into six bits, in the order white king,
+     * white a-rook, white h-rook, black king, black a-rook, black h-rook.
+     */
+    int getCastlingFlags() {
+        int flags = 0;
+        flags |= whiteKingMoved ? 1 : 0;
+        flags |= whiteRookAMoved ? 1 << 1 : 0;
+        flags |= whiteRookHMoved ? 1 << 2 : 0;
+        flags |= blackKingMoved ? 1 << 3 : 0;
+        flags |= blackRookAMoved ? 1 << 4 : 0;
+        flags |= blackRookHMoved ? 1 << 5 : 0;
+        return flags;
+    }
+
+    void restoreState(int castlingFlags, ChessMove lastMove, int plyCount) {
+        whiteKingMoved = (castlingFlags & 1) != 0;
+        whiteRookAMoved = (castlingFlags & (1 << 1)) != 0;
+        whiteRookHMoved = (castlingFlags & (1 << 2)) != 0;
+        blackKingMoved = (castlingFlags & (1 << 3)) != 0;
+        blackRookAMoved = (castlingFlags & (1 << 4)) != 0;
+        blackRookHMoved = (castlingFlags & (1 << 5)) != 0;
+        this.lastMove = lastMove;
+        this.plyCount = plyCount;
+    }
+
     public boolean canCastleKingside(TeamColor c) {
         int row = (c == TeamColor.WHITE ? 1 : 8);
         TeamColor opp = (c == TeamColor.WHITE ? TeamColor.BLACK : TeamColor.WHITE);
@@ -0,0 +1,116 @@
+package chess;
+
+/**
+ * Fixed-size binary forms of moves and games, used by the binary websocket
+ * protocol.
+ * <p>
+ * A move packs into 15 bits: start column, start row, end column and end row
+ * take three bits each, followed by three bits of promotion piece (0 for none).
+ * A game packs into {@link #GAME_BYTES} bytes: one byte of turn and castling
+ * flags, two bytes of last move, two bytes of ply count and one nibble per
+ * square.
+ */
+public final class ChessPacking {
+    public static final int GAME_BYTES = 37;
+
+    private static final int BOARD_OFFSET = 5;
+    private static final int NO_MOVE = 0xFFFF;
+    private static final int BLACK_BIT = 0x8;
+
+    private ChessPacking() {
+    }
+
+    public static int packMove(ChessMove move) {
+        int packed = packSquare(move.getStartPosition()) | packSquare(move.getEndPosition()) << 6;
+        ChessPiece.PieceType promotion = move.getPromotionPiece();
+        if (promotion != null) {
+            packed |= (promotion.ordinal() + 1) << 12;
+        }
+        return packed;
+    }
+
+    public static ChessMove unpackMove(int packed) {
+        int promotion = (packed >>> 12) & 0x7;
+        if (promotion > ChessPiece.PieceType.values().length || (packed & ~0x7FFF) != 0) {
+            throw new IllegalArgumentException("Malformed packed move: " + packed);
+        }
+        return new ChessMove(unpackSquare(packed), unpackSquare(packed >>> 6),
+                promotion == 0 ? null : ChessPiece.PieceType.values()[promotion - 1]);
+    }
+
+    public static byte[] packGame(ChessGame game) {
+        byte[] packed = new byte[GAME_BYTES];
+        ChessGame.TeamColor turn = game.getTeamTurn();
+        int turnBits = turn == null ? 0 : turn.ordinal() + 1;
+        packed[0] = (byte) (turnBits | game.getCastlingFlags() << 2);
+
+        ChessMove lastMove = game.getLastMove();
+        int move = lastMove == null ? NO_MOVE : packMove(lastMove);
+        packed[1] = (byte) (move >>> 8);
+        packed[2] = (byte) move;
+        int plyCount = Math.min(game.getPlyCount(), 0xFFFF);
+        packed[3] = (byte) (plyCount >>> 8);
+        packed[4] = (byte) plyCount;
+
+        ChessBoard board = game.getBoard();
+        for (int square = 0; square < 64; square++) {
+            ChessPiece piece = board.getPiece(new ChessPosition(square / 8 + 1, square % 8 + 1));
+            if (piece == null) {
+                continue;
+            }
+            int nibble = piece.getPieceType().ordinal() + 1;
+            if (piece.getTeamColor() == ChessGame.TeamColor.BLACK) {
+                nibble |= BLACK_BIT;
+            }
+            packed[BOARD_OFFSET + square / 2] |= (byte) (square % 2 == 0 ? nibble : nibble << 4);
+        }
+        return packed;
+    }
+
+    public static ChessGame unpackGame(byte[] packed) {
+        if (packed.length != GAME_BYTES) {
+            throw new IllegalArgumentException("Packed game must be " + GAME_BYTES + " bytes");
+        }
+        int turnBits = packed[0] & 0x3;
+        if (turnBits > ChessGame.TeamColor.values().length) {
+            throw new IllegalArgumentException("Malformed turn: " + turnBits);
+        }
+
+        ChessBoard board = new ChessBoard();
+        for (int square = 0; square < 64; square++) {
+            int bits = packed[BOARD_OFFSET + square / 2] & 0xFF;
+            int nibble = square % 2 == 0 ? bits & 0xF : bits >>> 4;
+            int type = nibble & ~BLACK_BIT;
+            if (type == 0) {
+                continue;
+            }
+            if (type > ChessPiece.PieceType.values().length) {
+                throw new IllegalArgumentException("Malformed square: " + nibble);
+            }
+            ChessGame.TeamColor color = (nibble & BLACK_BIT) != 0 ? ChessGame.TeamColor.BLACK : ChessGame.TeamColor.WHITE;
+            board.addPiece(new ChessPosition(square / 8 + 1, square % 8 + 1),
+                    new ChessPiece(color, ChessPiece.PieceType.values()[type - 1]));
+        }
+
+        ChessGame game = new ChessGame();
+        game.setBoard(board);
+        game.setTeamTurn(turnBits == 0 ? null : ChessGame.TeamColor.values()[turnBits - 1]);
+        int move = (packed[1] & 0xFF) << 8 | (packed[2] & 0xFF);
+        int plyCount = (packed[3] & 0xFF) << 8 | (packed[4] & 0xFF);
+        game.restoreState((packed[0] & 0xFF) >>> 2, move == NO_MOVE ? null : unpackMove(move), plyCount);
+        return game;
+    }
+
+    private static int packSquare(ChessPosition position) {
+        int row = position.getRow();
+        int col = position.getColumn();
+        if (row < 1 || row > 8 || col < 1 || col > 8) {
+            throw new IllegalArgumentException("Position off the board: " + row + "," + col);
+        }
+        return (row - 1) << 3 | (col - 1);
+    }
+
+    private static ChessPosition unpackSquare(int bits) {
+        return new ChessPosition((bits >>> 3 & 0x7) + 1, (bits & 0x7) + 1);
+    }
+}
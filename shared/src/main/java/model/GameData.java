@@ -1,6 +1,21 @@
 package model;
 
 import chess.ChessGame;
+import chess.ChessPacking;
 
-public record GameData(int gameID, String whiteUsername, String blackUsername, String gameName, ChessGame game) {
+/**
+ * @param version bumped by every stored update; an update only succeeds if the
+ *                stored game is still at the version it was read at
+ */
+public record GameData(int gameID, String whiteUsername, String blackUsername, String gameName, ChessGame game,
+                       int version) {
+    public GameData(int gameID, String whiteUsername, String blackUsername, String gameName, ChessGame game) {
+        this(gameID, whiteUsername, blackUsername, gameName, game, 0);
+    }
+
+    /** A copy whose board can be changed without affecting this one. */
+    public GameData copy() {
+        return new GameData(gameID, whiteUsername, blackUsername, gameName,
+                game == null ? null : ChessPacking.unpackGame(ChessPacking.packGame(game)), version);
+    }
 }
@@ -0,0 +1,18 @@
+package model;
+
+/**
+ * Lobby listing filters, passed to GET /game as {@code filter=<name>} in lower
+ * case.
+ */
+public enum GameFilter {
+    /** Every game. */
+    ALL,
+    /** Unfinished games with at least one free seat. */
+    OPEN,
+    /** Unfinished games with both seats taken. */
+    IN_PROGRESS,
+    /** Games that ended by checkmate, stalemate or resignation. */
+    FINISHED,
+    /** Games in which the caller holds a seat. */
+    MINE
+}
@@ -0,0 +1,16 @@
+package model;
+
+import chess.ChessGame;
+
+public enum GameStatus {
+    IN_PROGRESS,
+    FINISHED;
+
+    /**
+     * A game is finished once the server clears the side to move, which it does
+     * on checkmate, stalemate and resignation.
+     */
+    public static GameStatus of(ChessGame game) {
+        return game.getTeamTurn() == null ? FINISHED : IN_PROGRESS;
+    }
+}
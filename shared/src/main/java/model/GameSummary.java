@@ -0,0 +1,18 @@
+package model;
+
+import chess.ChessGame;
+
+/**
+ * The lobby's view of a game: everything a listing shows, without the board.
+ *
+ * @param lastMoveAt epoch milliseconds of the most recent move, or null if none
+ */
+public record GameSummary(int gameID, String whiteUsername, String blackUsername, String gameName,
+                          GameStatus status, ChessGame.TeamColor sideToMove, int plyCount, Long lastMoveAt) {
+
+    public static GameSummary of(GameData data, Long lastMoveAt) {
+        ChessGame game = data.game();
+        return new GameSummary(data.gameID(), data.whiteUsername(), data.blackUsername(), data.gameName(),
+                GameStatus.of(game), game.getTeamTurn(), game.getPlyCount(), lastMoveAt);
+    }
+}
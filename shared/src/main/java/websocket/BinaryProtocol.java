@@ -0,0 +1,130 @@
+package websocket;
+
+import chess.ChessPacking;
+import websocket.commands.MakeMoveCommand;
+import websocket.commands.UserGameCommand;
+import websocket.messages.ErrorMessage;
+import websocket.messages.LoadGameMessage;
+import websocket.messages.NotificationMessage;
+import websocket.messages.ServerMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary framing for websocket commands and server messages, used in
+ * place of JSON once a client has asked for it on CONNECT.
+ * <p>
+ * Every frame starts with a type byte. Commands use 0x01-0x04 followed by a
+ * varint game ID and a length-prefixed auth token; MAKE_MOVE appends a two-byte
+ * packed move. Server messages use 0x81-0x83; LOAD_GAME carries a packed game
+ * and the other two carry a length-prefixed UTF-8 string.
+ */
+public final class BinaryProtocol {
+    private static final int COMMAND_BASE = 0x01;
+    private static final int MESSAGE_BASE = 0x81;
+
+    private BinaryProtocol() {
+    }
+
+    public static byte[] encodeCommand(UserGameCommand command) {
+        var out = new ByteArrayOutputStream(48);
+        out.write(COMMAND_BASE + command.getCommandType().ordinal());
+        writeVarint(out, command.getGameID() == null ? 0 : command.getGameID());
+        writeString(out, command.getAuthToken());
+        if (command instanceof MakeMoveCommand moveCommand) {
+            int move = ChessPacking.packMove(moveCommand.getMove());
+            out.write(move >>> 8);
+            out.write(move);
+        }
+        return out.toByteArray();
+    }
+
+    public static UserGameCommand decodeCommand(ByteBuffer frame) {
+        try {
+            int type = (frame.get() & 0xFF) - COMMAND_BASE;
+            if (type < 0 || type >= UserGameCommand.CommandType.values().length) {
+                throw new IllegalArgumentException("Unknown command type");
+            }
+            var commandType = UserGameCommand.CommandType.values()[type];
+            int gameID = readVarint(frame);
+            String authToken = readString(frame);
+            if (commandType == UserGameCommand.CommandType.MAKE_MOVE) {
+                int move = (frame.get() & 0xFF) << 8 | (frame.get() & 0xFF);
+                return new MakeMoveCommand(authToken, gameID, ChessPacking.unpackMove(move));
+            }
+            return new UserGameCommand(commandType, authToken, gameID, true);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated command frame", e);
+        }
+    }
+
+    public static byte[] encodeMessage(ServerMessage message) {
+        var out = new ByteArrayOutputStream(64);
+        out.write(MESSAGE_BASE + message.getServerMessageType().ordinal());
+        switch (message.getServerMessageType()) {
+            case LOAD_GAME -> out.writeBytes(ChessPacking.packGame(((LoadGameMessage) message).getGame()));
+            case ERROR -> writeString(out, ((ErrorMessage) message).getErrorMessage());
+            case NOTIFICATION -> writeString(out, ((NotificationMessage) message).getMessage());
+        }
+        return out.toByteArray();
+    }
+
+    public static ServerMessage decodeMessage(ByteBuffer frame) {
+        try {
+            int type = (frame.get() & 0xFF) - MESSAGE_BASE;
+            if (type < 0 || type >= ServerMessage.ServerMessageType.values().length) {
+                throw new IllegalArgumentException("Unknown message type");
+            }
+            return switch (ServerMessage.ServerMessageType.values()[type]) {
+                case LOAD_GAME -> {
+                    byte[] packed = new byte[ChessPacking.GAME_BYTES];
+                    frame.get(packed);
+                    yield new LoadGameMessage(ChessPacking.unpackGame(packed));
+                }
+                case ERROR -> new ErrorMessage(readString(frame));
+                case NOTIFICATION -> new NotificationMessage(readString(frame));
+            };
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated message frame", e);
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.get() & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = readVarint(in);
+        if (length < 0 || length > in.remaining()) {
+            throw new IllegalArgumentException("Bad string length");
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
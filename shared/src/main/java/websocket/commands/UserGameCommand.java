@@ -16,10 +16,21 @@ public class UserGameCommand {
 
     private final Integer gameID;
 
+    /**
+     * Set on CONNECT by clients that can read binary frames; the server answers
+     * in {@link websocket.BinaryProtocol} frames when it supports them.
+     */
+    private final boolean binaryFrames;
+
     public UserGameCommand(CommandType commandType, String authToken, Integer gameID) {
+        this(commandType, authToken, gameID, false);
+    }
+
+    public UserGameCommand(CommandType commandType, String authToken, Integer gameID, boolean binaryFrames) {
         this.commandType = commandType;
         this.authToken = authToken;
         this.gameID = gameID;
+        this.binaryFrames = binaryFrames;
     }
 
     public enum CommandType {
@@ -41,6 +52,10 @@ public class UserGameCommand {
         return gameID;
     }
 
+    public boolean wantsBinaryFrames() {
+        return binaryFrames;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
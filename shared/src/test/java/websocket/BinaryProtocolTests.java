@@ -0,0 +1,65 @@
+package websocket;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPiece;
+import chess.ChessPosition;
+import chess.InvalidMoveException;
+import org.junit.jupiter.api.Test;
+import websocket.commands.MakeMoveCommand;
+import websocket.commands.UserGameCommand;
+import websocket.messages.ErrorMessage;
+import websocket.messages.LoadGameMessage;
+import websocket.messages.NotificationMessage;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryProtocolTests {
+
+    @Test
+    public void commandRoundTrip() {
+        var command = new UserGameCommand(UserGameCommand.CommandType.RESIGN, "token-1234", 300);
+        var decoded = BinaryProtocol.decodeCommand(ByteBuffer.wrap(BinaryProtocol.encodeCommand(command)));
+        assertEquals(command, decoded);
+    }
+
+    @Test
+    public void makeMoveRoundTrip() {
+        var move = new ChessMove(new ChessPosition(7, 2), new ChessPosition(8, 1), ChessPiece.PieceType.KNIGHT);
+        var command = new MakeMoveCommand("abc", 1, move);
+        var decoded = BinaryProtocol.decodeCommand(ByteBuffer.wrap(BinaryProtocol.encodeCommand(command)));
+        assertInstanceOf(MakeMoveCommand.class, decoded);
+        assertEquals(move, ((MakeMoveCommand) decoded).getMove());
+        assertEquals(1, decoded.getGameID());
+    }
+
+    @Test
+    public void loadGameRoundTrip() throws InvalidMoveException {
+        var game = new ChessGame();
+        game.makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+        game.makeMove(new ChessMove(new ChessPosition(8, 7), new ChessPosition(6, 6), null));
+        game.makeMove(new ChessMove(new ChessPosition(1, 5), new ChessPosition(2, 5), null));
+
+        byte[] frame = BinaryProtocol.encodeMessage(new LoadGameMessage(game));
+        var decoded = (LoadGameMessage) BinaryProtocol.decodeMessage(ByteBuffer.wrap(frame));
+        assertEquals(game, decoded.getGame());
+        assertTrue(frame.length < 40);
+    }
+
+    @Test
+    public void textMessagesRoundTrip() {
+        var error = BinaryProtocol.decodeMessage(ByteBuffer.wrap(BinaryProtocol.encodeMessage(new ErrorMessage("Error: ♔"))));
+        assertEquals("Error: ♔", ((ErrorMessage) error).getErrorMessage());
+        var note = BinaryProtocol.decodeMessage(ByteBuffer.wrap(BinaryProtocol.encodeMessage(new NotificationMessage("hi"))));
+        assertEquals("hi", ((NotificationMessage) note).getMessage());
+    }
+
+    @Test
+    public void truncatedFrameRejected() {
+        byte[] frame = BinaryProtocol.encodeCommand(new UserGameCommand(UserGameCommand.CommandType.CONNECT, "token", 5));
+        var truncated = ByteBuffer.wrap(frame, 0, frame.length - 2);
+        assertThrows(IllegalArgumentException.class, () -> BinaryProtocol.decodeCommand(truncated));
+    }
+}